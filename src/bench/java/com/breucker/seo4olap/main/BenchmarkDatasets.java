@@ -0,0 +1,68 @@
+package com.breucker.seo4olap.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.logging.Logger;
+
+/**
+ * Makes synthetic datasets (see SyntheticCubeGenerator) loadable for benchmarks: the dataset is
+ * generated into the local stand-in directory of LinkedDataCache, which is created in the temp
+ * directory unless seo4olap.ldcache.localDir is set. Network access is switched off.
+ * Synthetic datasets (config/synthetic.json) are only configured if the local stand-in directory
+ * is set before the configuration is read, see getDatasetUri().
+ *
+ * @author Daniel Breucker
+ *
+ */
+public class BenchmarkDatasets {
+
+	private static final Logger logger = Logger.getLogger(BenchmarkDatasets.class.getName());
+
+	private BenchmarkDatasets() {}
+
+	/**
+	 * Returns the uri of a configured dataset, generates synthetic datasets (see prepare()).
+	 * Has to be called before the configuration is read, so that synthetic datasets are configured.
+	 * @param datasetId id of the dataset in config.json or synthetic.json
+	 * @return dataset uri, null if not configured
+	 * @throws IOException
+	 */
+	public static synchronized URL getDatasetUri(String datasetId) throws IOException {
+		getLocalDir();
+		URL dsUri = ConfigurationManagerFactory.getConfigurationManager().getDatasetUriOfId(datasetId);
+		if(dsUri != null){
+			prepare(dsUri);
+		}
+		return dsUri;
+	}
+
+	/**
+	 * Generates the synthetic dataset, if not already there. Has to be called before the engine
+	 * of the dataset is created. Other datasets are left as they are.
+	 * @param dsUri
+	 * @throws IOException
+	 */
+	public static synchronized void prepare(URL dsUri) throws IOException {
+		SyntheticCubeGenerator generator = SyntheticCubeGenerator.fromDatasetUri(dsUri);
+		if(generator == null){
+			return;
+		}
+		String localDir = getLocalDir();
+		System.setProperty("seo4olap.ldcache.offline", "true");
+		File file = generator.getFile(new File(localDir));
+		if(!file.isFile()){
+			long observations = generator.write(new File(localDir));
+			logger.info("Generated " + observations + " observations of " + dsUri + " in " + file);
+		}
+	}
+
+	private static String getLocalDir() {
+		String localDir = System.getProperty("seo4olap.ldcache.localDir");
+		if(localDir == null){
+			localDir = new File(System.getProperty("java.io.tmpdir"), "seo4olap-bench").getAbsolutePath();
+			System.setProperty("seo4olap.ldcache.localDir", localDir);
+		}
+		return localDir;
+	}
+}
@@ -0,0 +1,101 @@
+package com.breucker.seo4olap.main;
+
+import java.io.IOException;
+import java.net.URL;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.breucker.seo4olap.main.SitemapGenerator.SitemapFormat;
+import com.breucker.seo4olap.olap.OlapRequest;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+
+/**
+ * Benchmarks of the request path handling: request list generation, path to OlapRequest
+ * conversion in both directions and sitemap generation of a configured dataset.
+ * Needs only the configuration, not the data of the dataset.
+ *
+ * @author Daniel Breucker
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RequestPathBenchmark {
+
+	// id of the dataset in config.json
+	@Param({ "synthetic-10k" })
+	public String datasetId;
+
+	private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+			new LocalDatastoreServiceTestConfig(), new LocalMemcacheServiceTestConfig());
+	private URL dsUri;
+	private List<String> paths;
+	private List<OlapRequest> olapRequests;
+
+	@Setup
+	public void setUp() throws IOException {
+		helper.setUp();
+		dsUri = BenchmarkDatasets.getDatasetUri(datasetId);
+		if (dsUri == null) {
+			throw new InvalidParameterException("dataset not configured: " + datasetId);
+		}
+		paths = new RequestListGenerator(dsUri).getURLRequestList(true);
+		olapRequests = new ArrayList<OlapRequest>();
+		for (String path : paths) {
+			OlapRequest olapRequest = PathConverter.getOlapRequest(path);
+			if (olapRequest != null) {
+				olapRequests.add(olapRequest);
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		helper.tearDown();
+	}
+
+	@Benchmark
+	public List<String> getURLRequestList() {
+		return new RequestListGenerator(dsUri).getURLRequestList(true);
+	}
+
+	@Benchmark
+	public void getOlapRequest(Blackhole blackhole) {
+		for (String path : paths) {
+			blackhole.consume(PathConverter.getOlapRequest(path));
+		}
+	}
+
+	@Benchmark
+	public void getPath(Blackhole blackhole) {
+		for (OlapRequest olapRequest : olapRequests) {
+			blackhole.consume(PathConverter.getPath(olapRequest, true));
+		}
+	}
+
+	@Benchmark
+	public String getSitemap() {
+		return new SitemapGenerator(dsUri).getSitemap(SitemapFormat.XML);
+	}
+}
@@ -0,0 +1,133 @@
+package com.breucker.seo4olap.main;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.URL;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.olap4j.OlapException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.breucker.seo4olap.olap.OlapHandler;
+import com.breucker.seo4olap.olap.OlapRequest;
+import com.breucker.seo4olap.olap.OlapResult;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Benchmarks of the result path: ResultGenerator on precomputed OlapResults and the Gson
+ * (de)serialization of Results as done by PersistenceManager.
+ * The OlapResults of the first requests of the request list are computed once in setUp().
+ *
+ * @author Daniel Breucker
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ResultBenchmark {
+
+	// id of the dataset in config.json
+	@Param({ "synthetic-10k" })
+	public String datasetId;
+
+	@Param({ "20" })
+	public int requestCount;
+
+	private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+			new LocalDatastoreServiceTestConfig(), new LocalMemcacheServiceTestConfig());
+	private final Gson gson = new Gson();
+	private final Type resultType = new TypeToken<Result>(){}.getType();
+	private PersistenceManager persistenceManager;
+	private List<OlapRequest> olapRequests;
+	private List<OlapResult> olapResults;
+	private List<Result> results;
+	private List<String> jsonResults;
+
+	@Setup
+	public void setUp() throws OlapException, IOException {
+		helper.setUp();
+		persistenceManager = new PersistenceManager();
+		URL dsUri = BenchmarkDatasets.getDatasetUri(datasetId);
+		if (dsUri == null) {
+			throw new InvalidParameterException("dataset not configured: " + datasetId);
+		}
+		olapRequests = new ArrayList<OlapRequest>();
+		for (String path : new RequestListGenerator(dsUri).getURLRequestList(true)) {
+			OlapRequest olapRequest = PathConverter.getOlapRequest(path);
+			if (olapRequest != null && olapRequests.size() < requestCount) {
+				olapRequests.add(olapRequest);
+			}
+		}
+		OlapHandler olapHandler = new OlapHandler(dsUri);
+		Map<OlapRequest, OlapResult> resultMap = olapHandler.getOlapResults(olapRequests);
+		olapHandler.release();
+		olapResults = new ArrayList<OlapResult>();
+		results = new ArrayList<Result>();
+		jsonResults = new ArrayList<String>();
+		for (OlapRequest olapRequest : olapRequests) {
+			OlapResult olapResult = resultMap.get(olapRequest);
+			olapResults.add(olapResult);
+			Result result = new ResultGenerator(olapRequest, olapResult).getResult();
+			results.add(result);
+			jsonResults.add(gson.toJson(result));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		helper.tearDown();
+	}
+
+	@Benchmark
+	public void getResult(Blackhole blackhole) {
+		for (int i = 0; i < olapRequests.size(); i++) {
+			blackhole.consume(new ResultGenerator(olapRequests.get(i), olapResults.get(i)).getResult());
+		}
+	}
+
+	@Benchmark
+	public void serializeResult(Blackhole blackhole) {
+		for (Result result : results) {
+			blackhole.consume(gson.toJson(result));
+		}
+	}
+
+	@Benchmark
+	public void deserializeResult(Blackhole blackhole) {
+		for (String json : jsonResults) {
+			blackhole.consume(gson.fromJson(json, resultType));
+		}
+	}
+
+	@Benchmark
+	public void persistResult(Blackhole blackhole) throws EntityNotFoundException {
+		for (int i = 0; i < olapRequests.size(); i++) {
+			persistenceManager.put(olapRequests.get(i).getDigest(), results.get(i), "BenchmarkResult");
+			blackhole.consume(persistenceManager.get(olapRequests.get(i).getDigest(), resultType, "BenchmarkResult"));
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package com.breucker.seo4olap.olap4ld;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.olap4j.OlapException;
+import org.olap4j.driver.olap4ld.linkeddata.Restrictions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.semanticweb.yars.nx.Literal;
+import org.semanticweb.yars.nx.Node;
+import org.semanticweb.yars.nx.Resource;
+
+import com.breucker.seo4olap.main.BenchmarkDatasets;
+import com.breucker.seo4olap.main.SyntheticCubeGenerator;
+
+/**
+ * Benchmarks of the SPARQL result path of OlapSesameEngine on synthetic cubes of several sizes
+ * (see SyntheticCubeGenerator), loaded as usual from the local stand-in directory.
+ *
+ * @author Daniel Breucker
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SparqlBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	public int observations;
+
+	private OlapSesameEngine engine;
+	private String aggregateQuery;
+	private String scanQuery;
+	private byte[] scanResultXml;
+
+	@Setup
+	public void setUp() throws OlapException, IOException {
+		// 10 members per dimension, all cells observed
+		int dimensions = (int) Math.round(Math.log10(observations));
+		SyntheticCubeGenerator generator = new SyntheticCubeGenerator(dimensions, 10, 1, 100, 1);
+		BenchmarkDatasets.prepare(generator.getDatasetUri());
+		engine = new OlapSesameEngine();
+		Restrictions restrictions = new Restrictions();
+		restrictions.cubeNamePattern = new Resource(generator.getDatasetUri().toString());
+		engine.getCubes(restrictions);
+
+		String prefixes = "PREFIX qb: <http://purl.org/linked-data/cube#> ";
+		String pattern = "?o qb:dataSet <" + generator.getDatasetUri() + "> ; <" + generator.getDimensionUri(0)
+				+ "> ?d0 ; <" + generator.getDimensionUri(1) + "> ?d1 ; <" + generator.getMeasureUri(0) + "> ?v";
+		aggregateQuery = prefixes + "select ?d0 ?d1 (sum(?v) as ?sum) where { " + pattern
+				+ " } group by ?d0 ?d1 order by ?d0 ?d1";
+		scanQuery = prefixes + "select ?o ?d0 ?d1 ?v where { " + pattern + " }";
+		scanResultXml = toSparqlXml(engine.sparql(scanQuery, false)).getBytes();
+	}
+
+	@TearDown
+	public void tearDown() {
+		engine.shutDown();
+	}
+
+	@Benchmark
+	public List<Node[]> sparqlAggregate() {
+		return engine.sparql(aggregateQuery, false);
+	}
+
+	@Benchmark
+	public List<Node[]> sparqlScan() {
+		return engine.sparql(scanQuery, false);
+	}
+
+	@Benchmark
+	public List<Node[]> sparqlCached() {
+		return engine.sparql(aggregateQuery, true);
+	}
+
+	@Benchmark
+	public long transformSparqlXmlToNx() throws IOException {
+		InputStream nx = Olap4ldLinkedDataUtil.transformSparqlXmlToNx(new ByteArrayInputStream(scanResultXml));
+		long length = 0;
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = nx.read(buffer)) != -1) {
+			length += read;
+		}
+		return length;
+	}
+
+	/**
+	 * Serializes a sparql() result (first row header) to SPARQL Query Results XML.
+	 */
+	private static String toSparqlXml(List<Node[]> result) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<?xml version=\"1.0\"?>\n<sparql xmlns=\"http://www.w3.org/2005/sparql-results#\">\n<head>\n");
+		Node[] header = result.get(0);
+		for (Node variable : header) {
+			sb.append("<variable name=\"").append(variable.toString()).append("\"/>\n");
+		}
+		sb.append("</head>\n<results>\n");
+		for (int i = 1; i < result.size(); i++) {
+			sb.append("<result>");
+			Node[] row = result.get(i);
+			for (int j = 0; j < row.length; j++) {
+				sb.append("<binding name=\"").append(header[j].toString()).append("\">");
+				if (row[j] instanceof Resource) {
+					sb.append("<uri>").append(escape(row[j].toString())).append("</uri>");
+				} else if (row[j] instanceof Literal && ((Literal) row[j]).getDatatype() != null) {
+					sb.append("<literal datatype=\"").append(((Literal) row[j]).getDatatype().toString()).append("\">")
+							.append(escape(row[j].toString())).append("</literal>");
+				} else {
+					sb.append("<literal>").append(escape(row[j].toString())).append("</literal>");
+				}
+				sb.append("</binding>");
+			}
+			sb.append("</result>\n");
+		}
+		sb.append("</results>\n</sparql>\n");
+		return sb.toString();
+	}
+
+	private static String escape(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+}
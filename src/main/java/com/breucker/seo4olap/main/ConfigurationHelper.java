@@ -4,6 +4,8 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,6 +35,10 @@ class ConfigurationHelper {
 		} catch(JsonSyntaxException e){
 			logger.log(Level.SEVERE, "Failed reading Configuration", e);
 		}
+		//synthetic datasets (see SyntheticCubeGenerator) exist in a local stand-in directory of the LinkedDataCache only
+		if(config != null && System.getProperty("seo4olap.ldcache.localDir") != null){
+			addDatasets(config, "synthetic.json");
+		}
 		return config;
 	}
 
@@ -42,6 +48,32 @@ class ConfigurationHelper {
 	 * 
 	 *#############------------####################*/
 	
+	/**
+	 * Appends the datasets of another configuration file to config.
+	 */
+	private static void addDatasets(Configuration config, String name) {
+		if(ConfigurationHelper.class.getResource("/config/" + name) == null){
+			return;
+		}
+		String jsonConfig = readInConfiguration(name);
+		if(jsonConfig == null){
+			return;
+		}
+		try{
+			Configuration datasets = new Gson().fromJson(jsonConfig, Configuration.class);
+			if(datasets != null && datasets.getDatasets() != null){
+				List<DatasetConfiguration> allDatasets = new ArrayList<DatasetConfiguration>();
+				if(config.getDatasets() != null){
+					allDatasets.addAll(config.getDatasets());
+				}
+				allDatasets.addAll(datasets.getDatasets());
+				config.setDatasets(allDatasets);
+			}
+		} catch(JsonSyntaxException e){
+			logger.log(Level.SEVERE, "Failed reading Configuration " + name, e);
+		}
+	}
+	
 	private static String readInConfiguration(String name) {
 		InputStream inputStream = null;
 		InputStreamReader reader = null;
@@ -1,8 +1,15 @@
 package com.breucker.seo4olap.main;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
 
+import org.olap4j.OlapException;
+
+import com.breucker.seo4olap.olap.OlapRequest;
 import com.breucker.seo4olap.server.RequestParameter;
 import com.google.appengine.api.taskqueue.Queue;
 import com.google.appengine.api.taskqueue.QueueFactory;
@@ -10,6 +17,9 @@ import com.google.appengine.api.taskqueue.TaskOptions;
 
 public class DatabaseManager {
 	
+	private static final Logger logger = Logger.getLogger(DatabaseManager.class.getName());
+	//characters of the requests of one task, the payload of a push task is limited to 100 KB
+	private static final int MAX_TASK_PAYLOAD = 64 * 1024;
 	private final ConfigurationManager configManager;
 	private final RequestHandler requestHandler;
 	private final String baseUri;
@@ -27,18 +37,122 @@ public class DatabaseManager {
 		}
 	}
 	
+	/**
+	 * Queues one task per group of requests of the dataset, that share one OlapQuery (see OlapHandler.groupOlapRequests()).
+	 * The task carries the requests of its group, so that the request list is converted and grouped once per dataset.
+	 * Each task computes and persists the results of its group (see fillDatabaseWithRequestGroup()), so that a task 
+	 * stays within the deadline and memory of a request and a failed task loses its group only. Groups exceeding 
+	 * the payload of a task are split into several tasks.
+	 * Requests that cannot be grouped are queued and recomputed one by one.
+	 * @param datasetUri
+	 */
 	public void fillDatabaseWithDatasetRequests(URL datasetUri){
-		List<String> requests = requestHandler.getUrlRequestList(datasetUri, false, true);
 		Queue queue = QueueFactory.getQueue("setup-database-queue");
-		int size = requests.size();
-		for(int i = 0; i < size; i++){
-			String request = requests.get(i);
-			//request Uri has to be relative 
-			String relativeUri = getRelativeUri(request);
-			if(relativeUri != null){
-				queue.add(TaskOptions.Builder.withUrl(relativeUri).param(RequestParameter.RECOMPUTE, "true"));
+		Map<OlapRequest, String> olapRequests = getOlapRequests(datasetUri, queue);
+		Map<String, List<OlapRequest>> groups;
+		try {
+			groups = requestHandler.groupOlapRequests(datasetUri, olapRequests.keySet());
+		} catch (OlapException e) {
+			logger.warning("Failed to group requests of dataset " + datasetUri + ". OlapException: " + e.getMessage());
+			for(String request : olapRequests.values()){
+				queueRequest(queue, request);
+			}
+			return;
+		}
+		
+		Queue initQueue = QueueFactory.getQueue("init-queue");
+		String datasetId = configManager.getDatasetId(datasetUri);
+		int tasks = 0;
+		for(Map.Entry<String, List<OlapRequest>> group : groups.entrySet()){
+			TaskOptions task = null;
+			int payloadSize = 0;
+			for(OlapRequest olapRequest : group.getValue()){
+				String request = olapRequests.get(olapRequest);
+				if(task != null && payloadSize + request.length() > MAX_TASK_PAYLOAD){
+					initQueue.add(task);
+					tasks++;
+					task = null;
+				}
+				if(task == null){
+					task = TaskOptions.Builder.withUrl("/admin/init")
+							.param(RequestParameter.DATASET_ID, datasetId)
+							.param(RequestParameter.TASK, "initDatabaseGroup")
+							.param(RequestParameter.SIGNATURE, group.getKey());
+					payloadSize = group.getKey().length();
+				}
+				task.param(RequestParameter.REQUEST, request);
+				payloadSize += request.length();
+			}
+			if(task != null){
+				initQueue.add(task);
+				tasks++;
+			}
+		}
+		logger.info("Queued " + groups.size() + " groups of " + olapRequests.size() + " requests of dataset " + datasetUri 
+				+ " in " + tasks + " tasks");
+		requestHandler.checkPendingWrites();
+	}
+	
+	/**
+	 * Computes and persists the results of one group of requests of the dataset in one batch.
+	 * Requests that cannot be computed in the batch are queued and recomputed one by one.
+	 * @param datasetUri
+	 * @param signature signature of the group (see OlapHandler.groupOlapRequests())
+	 * @param requests requests of the group, as queued by fillDatabaseWithDatasetRequests()
+	 */
+	public void fillDatabaseWithRequestGroup(URL datasetUri, String signature, List<String> requests){
+		Queue queue = QueueFactory.getQueue("setup-database-queue");
+		Map<OlapRequest, String> olapRequests = new LinkedHashMap<OlapRequest, String>();
+		for(String request : requests){
+			OlapRequest olapRequest = PathConverter.getOlapRequest(request);
+			if(olapRequest != null){
+				olapRequests.put(olapRequest, request);
+			}
+			else {
+				queueRequest(queue, request);
 			}
 		}
+		if(olapRequests.isEmpty()){
+			logger.warning("No requests of group [" + signature + "] in dataset " + datasetUri);
+			return;
+		}
+		
+		List<OlapRequest> group = new ArrayList<OlapRequest>(olapRequests.keySet());
+		List<OlapRequest> failedRequests = requestHandler.computeOlapResults(group);
+		logger.info("Filled database with " + (group.size() - failedRequests.size()) + " of " 
+				+ group.size() + " requests of group [" + signature + "] of dataset " + datasetUri);
+		for(OlapRequest failedRequest : failedRequests){
+			queueRequest(queue, olapRequests.get(failedRequest));
+		}
+		requestHandler.checkPendingWrites();
+	}
+	
+	/**
+	 * Converts the request list of the dataset to OlapRequests.
+	 * @param queue queue for requests that cannot be converted
+	 * @return OlapRequest -> request
+	 */
+	private Map<OlapRequest, String> getOlapRequests(URL datasetUri, Queue queue){
+		List<String> requests = requestHandler.getUrlRequestList(datasetUri, false, true);
+		Map<OlapRequest, String> olapRequests = new LinkedHashMap<OlapRequest, String>();
+		for(String request : requests){
+			OlapRequest olapRequest = PathConverter.getOlapRequest(request);
+			if(olapRequest != null){
+				olapRequests.put(olapRequest, request);
+			}
+			else {
+				queueRequest(queue, request);
+			}
+		}
+		return olapRequests;
+	}
+	
+	private void queueRequest(Queue queue, String request){
+		//request Uri has to be relative 
+		String relativeUri = getRelativeUri(request);
+		if(relativeUri != null){
+			queue.add(TaskOptions.Builder.withUrl(relativeUri).param(RequestParameter.RECOMPUTE, "true"));
+		}
 	}
 	
 	private String getRelativeUri(String uri){
@@ -0,0 +1,133 @@
+package com.breucker.seo4olap.main;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * In-process LRU cache of the json of persisted objects, shared by all PersistenceManagers of the JVM.
+ * Saves the cache or datastore round trip and the decompression; every hit is deserialized again, so
+ * that callers get their own objects and may change them.
+ * The cache is bounded by the weight of the entries (length of their json) and entries
+ * expire after a fixed time to live, since other instances may change memcache and datastore.
+ *
+ * @author Daniel Breucker
+ *
+ */
+class JsonCache {
+
+	private final long maxWeight;
+	private final long ttlMillis;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private long weight = 0;
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long evictionCount = 0;
+	private long expirationCount = 0;
+	private long invalidationCount = 0;
+
+	/**
+	 * @param maxWeight maximum weight of all cached json, 0 or less disables the cache
+	 * @param ttlMillis time to live of an entry in milliseconds
+	 */
+	JsonCache(long maxWeight, long ttlMillis) {
+		this.maxWeight = maxWeight;
+		this.ttlMillis = ttlMillis;
+	}
+
+	boolean isEnabled() {
+		return maxWeight > 0 && ttlMillis > 0;
+	}
+
+	/**
+	 * Returns the cached json or null, if it is not cached or expired.
+	 * @param key storage key
+	 * @return cached json
+	 */
+	synchronized String get(String key) {
+		if (!isEnabled()) {
+			return null;
+		}
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+		if (entry.expires < System.currentTimeMillis()) {
+			entries.remove(key);
+			weight -= entry.weight;
+			expirationCount++;
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return entry.json;
+	}
+
+	/**
+	 * Caches the json. Json heavier than the whole cache is not cached.
+	 * @param key storage key
+	 * @param json json of the object
+	 */
+	synchronized void put(String key, String json) {
+		if (!isEnabled()) {
+			return;
+		}
+		long weight = json.length();
+		if (weight > maxWeight) {
+			remove(key);
+			return;
+		}
+		Entry old = entries.put(key, new Entry(json, System.currentTimeMillis() + ttlMillis));
+		if (old != null) {
+			this.weight -= old.weight;
+		}
+		this.weight += weight;
+
+		// evict least recently used objects
+		Iterator<Entry> it = entries.values().iterator();
+		while (this.weight > maxWeight && it.hasNext()) {
+			Entry eldest = it.next();
+			it.remove();
+			this.weight -= eldest.weight;
+			evictionCount++;
+		}
+	}
+
+	synchronized void remove(String key) {
+		Entry old = entries.remove(key);
+		if (old != null) {
+			weight -= old.weight;
+		}
+	}
+
+	/**
+	 * Removes all cached json.
+	 */
+	synchronized void invalidate() {
+		if (!entries.isEmpty()) {
+			entries.clear();
+			weight = 0;
+			invalidationCount++;
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "JsonCache [entries=" + entries.size() + ", weight=" + weight + ", maxWeight=" + maxWeight
+				+ ", ttlMillis=" + ttlMillis + ", hits=" + hitCount + ", misses=" + missCount
+				+ ", evictions=" + evictionCount + ", expirations=" + expirationCount
+				+ ", invalidations=" + invalidationCount + "]";
+	}
+
+	private static class Entry {
+		private final String json;
+		private final long weight;
+		private final long expires;
+
+		private Entry(String json, long expires) {
+			this.json = json;
+			this.weight = json.length();
+			this.expires = expires;
+		}
+	}
+}
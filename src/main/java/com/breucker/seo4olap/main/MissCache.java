@@ -0,0 +1,107 @@
+package com.breucker.seo4olap.main;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Short-lived set of keys known to be missing in the datastore, kept per kind.
+ * Saves the datastore round trip for repeated lookups of values that are not computed yet.
+ * Entries expire after a short time to live, since other instances may store the values meanwhile.
+ * Each kind holds at most maxEntries keys, the least recently added are dropped first.
+ *
+ * @author Daniel Breucker
+ *
+ */
+class MissCache {
+
+	private final int maxEntries;
+	private final long ttlMillis;
+	//kind -> storeKey -> expiration time
+	private final Map<String, LinkedHashMap<Object, Long>> kinds = new HashMap<String, LinkedHashMap<Object, Long>>();
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long evictionCount = 0;
+
+	/**
+	 * @param maxEntries maximum number of keys per kind, 0 or less disables the cache
+	 * @param ttlMillis time to live of an entry in milliseconds
+	 */
+	MissCache(int maxEntries, long ttlMillis) {
+		this.maxEntries = maxEntries;
+		this.ttlMillis = ttlMillis;
+	}
+
+	boolean isEnabled() {
+		return maxEntries > 0 && ttlMillis > 0;
+	}
+
+	/**
+	 * @return true, if the key was recently found to be missing
+	 */
+	synchronized boolean isMissing(String kind, Object storeKey) {
+		if (!isEnabled()) {
+			return false;
+		}
+		LinkedHashMap<Object, Long> keys = kinds.get(kind);
+		Long expires = keys == null ? null : keys.get(storeKey);
+		if (expires == null) {
+			missCount++;
+			return false;
+		}
+		if (expires < System.currentTimeMillis()) {
+			keys.remove(storeKey);
+			missCount++;
+			return false;
+		}
+		hitCount++;
+		return true;
+	}
+
+	synchronized void add(String kind, Object storeKey) {
+		if (!isEnabled()) {
+			return;
+		}
+		LinkedHashMap<Object, Long> keys = kinds.get(kind);
+		if (keys == null) {
+			keys = new LinkedHashMap<Object, Long>();
+			kinds.put(kind, keys);
+		}
+		keys.remove(storeKey);
+		keys.put(storeKey, System.currentTimeMillis() + ttlMillis);
+
+		// drop the oldest keys
+		Iterator<Object> it = keys.keySet().iterator();
+		while (keys.size() > maxEntries && it.hasNext()) {
+			it.next();
+			it.remove();
+			evictionCount++;
+		}
+	}
+
+	/**
+	 * To be called when a value is stored.
+	 */
+	synchronized void remove(String kind, Object storeKey) {
+		LinkedHashMap<Object, Long> keys = kinds.get(kind);
+		if (keys != null) {
+			keys.remove(storeKey);
+		}
+	}
+
+	synchronized void invalidate() {
+		kinds.clear();
+	}
+
+	@Override
+	public synchronized String toString() {
+		int entries = 0;
+		for (LinkedHashMap<Object, Long> keys : kinds.values()) {
+			entries += keys.size();
+		}
+		return "MissCache [kinds=" + kinds.size() + ", entries=" + entries + ", maxEntries=" + maxEntries
+				+ ", ttlMillis=" + ttlMillis + ", hits=" + hitCount + ", misses=" + missCount
+				+ ", evictions=" + evictionCount + "]";
+	}
+}
@@ -34,9 +34,9 @@ class PathConverter {
 		if(dsUri == null || baseUri == null || endpoint == null){
 			return null;
 		}
-		List<String> measures2project = olapRequest.getMeasures2project();
+		List<String> measures2project = new ArrayList<String>(olapRequest.getMeasures2project());
 		List<String> dimensions2keep = olapRequest.getDimensions2keep();
-		List<String> members2dice = olapRequest.getMembers2dice();
+		List<String> members2dice = new ArrayList<String>(olapRequest.getMembers2dice());
 		
 		
 		//preprocess measures with measureMembers
@@ -89,7 +89,7 @@ class PathConverter {
 		}
 		
 		String ids = "";
-		List<String> measures = olapRequest.getMeasures2project();
+		List<String> measures = new ArrayList<String>(olapRequest.getMeasures2project());
 		Collections.sort(measures);
 		for(String uniqueName : measures){
 			String id = configManager.getId(dsUri, uniqueName);
@@ -97,7 +97,7 @@ class PathConverter {
 				ids += "/" + id;
 			}
 		}
-		List<String> dimensions = olapRequest.getDimensions2keep();
+		List<String> dimensions = new ArrayList<String>(olapRequest.getDimensions2keep());
 		Collections.sort(dimensions);
 		for(String uniqueName : dimensions){
 			String id = configManager.getId(dsUri, uniqueName);
@@ -105,7 +105,7 @@ class PathConverter {
 				ids += "/" + id;
 			}
 		}
-		List<String> members = olapRequest.getMembers2dice();
+		List<String> members = new ArrayList<String>(olapRequest.getMembers2dice());
 		Collections.sort(members);
 		for(String uniqueName : members){
 			String id = configManager.getId(dsUri, uniqueName);
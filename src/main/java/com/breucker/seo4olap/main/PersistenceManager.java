@@ -1,15 +1,35 @@
 package com.breucker.seo4olap.main;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.charset.Charset;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import javax.cache.Cache;
 import javax.cache.CacheException;
 import javax.cache.CacheFactory;
 import javax.cache.CacheManager;
 
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.Blob;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
@@ -22,6 +42,11 @@ import com.google.gson.Gson;
 /**
  * PersistenceManager manages Data storage and retrieval. 
  * Stored objects should be serializable in json-Format.
+ * The json is stored deflate-compressed. Values that are still larger than the 1MB limit of
+ * cache and datastore are split into ordered chunks below a manifest entity.
+ * The json of read and written objects is kept in an in-process JsonCache in front of cache and datastore,
+ * every get deserializes its own objects. Keys recently found missing in the datastore are 
+ * kept in a MissCache and not looked up again until they expire or are put.
  * 
  * @author Daniel Breucker
  *
@@ -29,11 +54,47 @@ import com.google.gson.Gson;
 class PersistenceManager {
 
 	private static final Logger logger = Logger.getLogger(PersistenceManager.class.getName());	
-	private Cache cache = null;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	//max value size of cache and datastore is 1MB, leave room for key and entity overhead
+	private static final int CHUNK_SIZE = 900000;
+	//at most 9 chunks (~8MB compressed) per value, so that manifest and chunks stay within the 10MB limit
+	//of a datastore commit, larger values are not stored
+	private static final int MAX_CHUNKS = 9;
+	private static final String CHUNK_KIND_SUFFIX = "-chunk";
+	//limits of a datastore batch get or put
+	private static final int MAX_BATCH_ENTITIES = 500;
+	private static final long MAX_BATCH_BYTES = 8L * 1024 * 1024;
+	
+	/*#############------------####################
+	 * Caches shared by all PersistenceManagers
+	 */
+	private static final JsonCache localCache = new JsonCache(
+			Long.getLong("seo4olap.localCache.maxBytes", 16L * 1024 * 1024),
+			Long.getLong("seo4olap.localCache.ttlSeconds", 300) * 1000);
+	private static final MissCache missCache = new MissCache(
+			Integer.getInteger("seo4olap.missCache.maxEntries", 10000),
+			Long.getLong("seo4olap.missCache.ttlSeconds", 30) * 1000);
+	private static Cache cache = null;
+	private static boolean cacheCreated = false;
+	
+	/*#############------------####################
+	 * Metrics over all PersistenceManagers
+	 */
+	private static final AtomicLong storedValueCount = new AtomicLong();
+	private static final AtomicLong chunkedValueCount = new AtomicLong();
+	private static final AtomicLong chunkCount = new AtomicLong();
+	private static final AtomicLong skippedValueCount = new AtomicLong();
+	private static final AtomicLong uncompressedBytes = new AtomicLong();
+	private static final AtomicLong compressedBytes = new AtomicLong();
+	private static final AtomicLong failedWriteCount = new AtomicLong();
+	
 	private final DatastoreService datastore;
+	private final AsyncDatastoreService asyncDatastore;
 	private final Gson gson = new Gson();
 	private final ConfigurationManager configManager;
 	private final String domain;
+	//asynchronous writes of this PersistenceManager, see checkPendingWrites()
+	private final List<PendingWrite> pendingWrites = new ArrayList<PendingWrite>();
 	
 	/**
 	 * PersistenceManager manages Data storage and retrieval. 
@@ -41,47 +102,230 @@ class PersistenceManager {
 	 * 
 	 */
 	public PersistenceManager() {
+		createCache();
+		this.datastore = DatastoreServiceFactory.getDatastoreService();
+		this.asyncDatastore = DatastoreServiceFactory.getAsyncDatastoreService();
+		this.configManager = ConfigurationManagerFactory.getConfigurationManager();
+		this.domain = configManager.getBaseUri() + "/" + configManager.getVersion();
+	}
+
+	private static synchronized void createCache() {
+		if(cacheCreated){
+			return;
+		}
 		try {
 			CacheFactory cacheFactory = CacheManager.getInstance().getCacheFactory();
 		    cache = cacheFactory.createCache(Collections.emptyMap());
 		} catch (CacheException e) {
 			//cache stays null
 		}
-		this.datastore = DatastoreServiceFactory.getDatastoreService();
-		this.configManager = ConfigurationManagerFactory.getConfigurationManager();
-		this.domain = configManager.getBaseUri() + "/" + configManager.getVersion();
+		cacheCreated = true;
 	}
 
 	/**
 	 * Store an Object to Persistence Layer.
-	 * Keys are generated through key.hashCode(). Make sure the KeyObject has a proper hashCode()-Function
+	 * Keys are generated through key.hashCode(). Make sure the KeyObject has a proper hashCode()-Function.
+	 * String keys are used as they are.
 	 * @param key a key
 	 * @param value the Object to persist.  
 	 * @param kind Any String describing the valueObject. key and kind define the final key
 	 */
-	@SuppressWarnings("unchecked")
 	public void put(Object key, Object value, String kind){
 		if(key == null || value == null || kind == null){
 			throw new InvalidParameterException("Inputparameter cannot be null");
 		}
-		kind = this.domain + "-" + kind;
-		int storeKey = key.hashCode() + kind.hashCode();
-		
-		String jsonResultString = gson.toJson(value);
-		int length = jsonResultString.getBytes().length;
-		
-		//max string size of cache and datastore is 1MB
-		if(length < 1000000){
-			logger.info("Put result to datastore. key: " + storeKey + " kind: " + kind);
-			Text jsonResultText = new Text(jsonResultString);
-			Entity resultEntity = new Entity(kind, storeKey);
-			resultEntity.setProperty("json", jsonResultText);
-			datastore.put(resultEntity);
+		putAll(Collections.singletonMap(key, value), kind);
+	}
+	
+	/**
+	 * Store many Objects of one kind to Persistence Layer with batch puts.
+	 * @param values key -> the Object to persist
+	 * @param kind Any String describing the valueObjects. key and kind define the final key
+	 */
+	public void putAll(Map<?, ?> values, String kind){
+		for(List<Entity> batch : toBatches(prepare(values, kind))){
+			datastore.put(batch);
+		}
+	}
+	
+	/**
+	 * Store an Object like put(), but write it to the datastore asynchronously, so that the write overlaps
+	 * the remaining work of the request. The Object is available from the caches at once. The write is still
+	 * part of the request: App Engine completes outstanding writes before the request ends and
+	 * checkPendingWrites() waits for them and reports failed writes.
+	 * @param key a key
+	 * @param value the Object to persist.  
+	 * @param kind Any String describing the valueObject. key and kind define the final key
+	 * @return the pending datastore writes
+	 */
+	public List<Future<List<Key>>> putAsync(Object key, Object value, String kind){
+		if(key == null || value == null || kind == null){
+			throw new InvalidParameterException("Inputparameter cannot be null");
+		}
+		return putAllAsync(Collections.singletonMap(key, value), kind);
+	}
+	
+	/**
+	 * Store many Objects like putAll(), but write them to the datastore asynchronously (see putAsync()).
+	 * @param values key -> the Object to persist
+	 * @param kind Any String describing the valueObjects. key and kind define the final key
+	 * @return the pending datastore writes
+	 */
+	public List<Future<List<Key>>> putAllAsync(Map<?, ?> values, String kind){
+		List<PreparedValue> prepared = prepare(values, kind);
+		Map<Key, PreparedValue> valuesByKey = new HashMap<Key, PreparedValue>();
+		for(PreparedValue value : prepared){
+			valuesByKey.put(value.manifestKey, value);
+		}
+		List<Future<List<Key>>> futures = new ArrayList<Future<List<Key>>>();
+		for(List<Entity> batch : toBatches(prepared)){
+			Future<List<Key>> future = asyncDatastore.put(batch);
+			futures.add(future);
+			//values with entities in the batch
+			Set<PreparedValue> batchValues = new LinkedHashSet<PreparedValue>();
+			for(Entity entity : batch){
+				Key manifestKey = entity.getParent() == null ? entity.getKey() : entity.getParent();
+				batchValues.add(valuesByKey.get(manifestKey));
+			}
+			pendingWrites.add(new PendingWrite(future, batchValues));
+		}
+		return futures;
+	}
+	
+	/**
+	 * Waits for the asynchronous writes of this PersistenceManager (see putAsync()) and logs the failed ones.
+	 * Values of failed writes are removed from the caches, so that they are not served without being stored.
+	 * To be called at the end of a request.
+	 * @return number of values that failed to be written
+	 */
+	public int checkPendingWrites(){
+		Set<PreparedValue> failedValues = new LinkedHashSet<PreparedValue>();
+		for(PendingWrite pendingWrite : pendingWrites){
+			try {
+				pendingWrite.future.get();
+			} catch (ExecutionException e) {
+				logger.warning("Failed asynchronous put to datastore. " + e.getCause());
+				failedValues.addAll(pendingWrite.values);
+			} catch (InterruptedException e) {
+				logger.warning("Interrupted while waiting for asynchronous put to datastore.");
+				failedValues.addAll(pendingWrite.values);
+				Thread.currentThread().interrupt();
+			}
+		}
+		pendingWrites.clear();
+		for(PreparedValue value : failedValues){
+			logger.warning("Value not stored. key: " + value.storeKey + " kind: " + value.kind);
+			localCache.remove(getLocalCacheKey(value.storeKey, value.kind));
 			if(cache != null){
-				cache.put(storeKey, jsonResultString);
+				cache.remove(getCacheKey(value.storeKey, value.kind));
 			}
 		}
-		
+		failedWriteCount.addAndGet(failedValues.size());
+		return failedValues.size();
+	}
+	
+	/**
+	 * Serializes and compresses the values, fills the caches and returns the entities to put.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<PreparedValue> prepare(Map<?, ?> values, String kind){
+		if(values == null || kind == null){
+			throw new InvalidParameterException("Inputparameter cannot be null");
+		}
+		kind = this.domain + "-" + kind;
+		List<PreparedValue> prepared = new ArrayList<PreparedValue>(values.size());
+		Map<Object, Object> cacheEntries = new HashMap<Object, Object>();
+		Map<Object, Object> cacheManifests = new HashMap<Object, Object>();
+		for(Map.Entry<?, ?> entry : values.entrySet()){
+			if(entry.getKey() == null || entry.getValue() == null){
+				throw new InvalidParameterException("Inputparameter cannot be null");
+			}
+			Object storeKey = getStoreKey(entry.getKey(), kind);
+			Object cacheKey = getCacheKey(storeKey, kind);
+			//the next get reads the new value
+			localCache.remove(getLocalCacheKey(storeKey, kind));
+			missCache.remove(kind, storeKey);
+			
+			byte[] json = gson.toJson(entry.getValue()).getBytes(UTF8);
+			byte[] deflated = deflate(json);
+			int chunks = (deflated.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+			if(chunks > MAX_CHUNKS){
+				skippedValueCount.incrementAndGet();
+				logger.warning("Value too large to persist. key: " + storeKey + " kind: " + kind 
+						+ " bytes: " + json.length + " compressed: " + deflated.length);
+				continue;
+			}
+			storedValueCount.incrementAndGet();
+			uncompressedBytes.addAndGet(json.length);
+			compressedBytes.addAndGet(deflated.length);
+			
+			Entity resultEntity = new Entity(createKey(kind, storeKey));
+			List<Entity> entities = new ArrayList<Entity>(chunks + 1);
+			if(chunks <= 1){
+				logger.info("Put result to datastore. key: " + storeKey + " kind: " + kind 
+						+ " bytes: " + json.length + " compressed: " + deflated.length);
+				resultEntity.setUnindexedProperty("deflated", new Blob(deflated));
+				cacheEntries.put(cacheKey, deflated);
+			} else {
+				logger.info("Put chunked result to datastore. key: " + storeKey + " kind: " + kind 
+						+ " bytes: " + json.length + " compressed: " + deflated.length + " chunks: " + chunks);
+				chunkedValueCount.incrementAndGet();
+				chunkCount.addAndGet(chunks);
+				//manifest and chunks share an entity group, the manifest is written last
+				resultEntity.setUnindexedProperty("chunks", (long) chunks);
+				for(int i = 0; i < chunks; i++){
+					byte[] chunk = getChunk(deflated, i);
+					Entity chunkEntity = new Entity(kind + CHUNK_KIND_SUFFIX, i + 1, resultEntity.getKey());
+					chunkEntity.setUnindexedProperty("data", new Blob(chunk));
+					entities.add(chunkEntity);
+					cacheEntries.put(getChunkCacheKey(cacheKey, i), chunk);
+				}
+				cacheManifests.put(cacheKey, chunks);
+			}
+			entities.add(resultEntity);
+			prepared.add(new PreparedValue(storeKey, kind, resultEntity.getKey(), entities, deflated.length));
+		}
+		if(cache != null){
+			//manifests last, so that a cached manifest implies cached chunks (unless evicted)
+			cache.putAll(cacheEntries);
+			cache.putAll(cacheManifests);
+		}
+		return prepared;
+	}
+	
+	/**
+	 * Splits the entities into batches within the datastore limits. The entities of a value stay in one batch, 
+	 * unless the value exceeds the limits of a batch by itself. Then its chunks are split across batches and 
+	 * the manifest is in the last one, so that put() writes the manifest after all chunks.
+	 * (Batches of putAsync() are written concurrently, a manifest written before its chunks is read as missing.)
+	 */
+	private static List<List<Entity>> toBatches(List<PreparedValue> prepared){
+		List<List<Entity>> batches = new ArrayList<List<Entity>>();
+		List<Entity> batch = new ArrayList<Entity>();
+		long batchBytes = 0;
+		for(PreparedValue value : prepared){
+			if(!batch.isEmpty() && (batch.size() + value.entities.size() > MAX_BATCH_ENTITIES
+					|| batchBytes + value.bytes > MAX_BATCH_BYTES)){
+				batches.add(batch);
+				batch = new ArrayList<Entity>();
+				batchBytes = 0;
+			}
+			for(Entity entity : value.entities){
+				long entityBytes = getBlobBytes(entity);
+				if(!batch.isEmpty() && (batch.size() + 1 > MAX_BATCH_ENTITIES 
+						|| batchBytes + entityBytes > MAX_BATCH_BYTES)){
+					batches.add(batch);
+					batch = new ArrayList<Entity>();
+					batchBytes = 0;
+				}
+				batch.add(entity);
+				batchBytes += entityBytes;
+			}
+		}
+		if(!batch.isEmpty()){
+			batches.add(batch);
+		}
+		return batches;
 	}
 	
 	/**
@@ -98,23 +342,213 @@ class PersistenceManager {
 			kind = "default";
 		}
 		kind = this.domain + "-" + kind;
-		int storeKey = key.hashCode() + kind.hashCode();
+		Object storeKey = getStoreKey(key, kind);
+		String localJson = localCache.get(getLocalCacheKey(storeKey, kind));
+		if(localJson != null){
+			return gson.fromJson(localJson, valueType);
+		}
+		Key datastoreKey = createKey(kind, storeKey);
 		
-		if(cache != null && cache.containsKey(storeKey)){
-			logger.info("Retrieve result from cache. key: " + storeKey + " kind: " + kind);
-			String json = (String) cache.get(storeKey);
-			return gson.fromJson(json, valueType);
-		}
-		Key datastoreKey = KeyFactory.createKey(kind, storeKey);
-		Entity resultEntity = datastore.get(datastoreKey);
-		logger.info("Retrieve result from datastore. key: " + storeKey + " kind: " + kind);
-		Text jsonText = (Text) resultEntity.getProperty("json");
-		String json = jsonText.getValue();
-		//store in Cache
 		if(cache != null){
-			cache.put(storeKey, json);
+			Object cacheKey = getCacheKey(storeKey, kind);
+			String json = getFromCache(cache.get(cacheKey), cacheKey, datastoreKey);
+			if(json != null){
+				logger.info("Retrieve result from cache. key: " + storeKey + " kind: " + kind);
+				return toValue(json, storeKey, kind, valueType);
+			}
+		}
+		if(missCache.isMissing(kind, storeKey)){
+			throw new EntityNotFoundException(datastoreKey);
+		}
+		try {
+			Entity resultEntity = datastore.get(datastoreKey);
+			logger.info("Retrieve result from datastore. key: " + storeKey + " kind: " + kind);
+			return toValue(readEntity(resultEntity, storeKey, kind), storeKey, kind, valueType);
+		} catch (EntityNotFoundException e) {
+			missCache.add(kind, storeKey);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Retrieve many Objects of one kind from Persistence Layer. Objects that are not cached
+	 * are read with batch gets from the datastore.
+	 * @param keys the keys
+	 * @param valueType The Class of the returned valueObjects
+	 * @param kind Any String describing the valueObjects. key and kind define the final key
+	 * @return key -> valueObject of all keys that were found
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<Object, Object> getAll(Collection<?> keys, Type valueType, String kind){
+		if(kind == null){
+			kind = "default";
+		}
+		kind = this.domain + "-" + kind;
+		Map<Object, Object> values = new HashMap<Object, Object>();
+		//storeKey -> key of the values not found so far
+		Map<Object, Object> missing = new LinkedHashMap<Object, Object>();
+		for(Object key : keys){
+			Object storeKey = getStoreKey(key, kind);
+			String localJson = localCache.get(getLocalCacheKey(storeKey, kind));
+			if(localJson != null){
+				values.put(key, gson.fromJson(localJson, valueType));
+			} else {
+				missing.put(storeKey, key);
+			}
+		}
+		
+		if(cache != null && !missing.isEmpty()){
+			List<Object> cacheKeys = new ArrayList<Object>(missing.size());
+			for(Object storeKey : missing.keySet()){
+				cacheKeys.add(getCacheKey(storeKey, kind));
+			}
+			Map<Object, Object> cached;
+			try {
+				cached = cache.getAll(cacheKeys);
+			} catch (CacheException e) {
+				cached = Collections.emptyMap();
+			}
+			Iterator<Map.Entry<Object, Object>> it = missing.entrySet().iterator();
+			while(it.hasNext()){
+				Map.Entry<Object, Object> entry = it.next();
+				Object storeKey = entry.getKey();
+				Object cacheKey = getCacheKey(storeKey, kind);
+				try {
+					String json = getFromCache(cached.get(cacheKey), cacheKey, createKey(kind, storeKey));
+					if(json != null){
+						values.put(entry.getValue(), toValue(json, storeKey, kind, valueType));
+						it.remove();
+					}
+				} catch (EntityNotFoundException e) {
+					//read from datastore
+				}
+			}
+			logger.info("Retrieve " + (keys.size() - missing.size()) + " of " + keys.size() + " results from cache. kind: " + kind);
+		}
+		
+		List<Object> storeKeys = new ArrayList<Object>();
+		for(Object storeKey : missing.keySet()){
+			if(!missCache.isMissing(kind, storeKey)){
+				storeKeys.add(storeKey);
+			}
+		}
+		for(int from = 0; from < storeKeys.size(); from += MAX_BATCH_ENTITIES){
+			List<Key> datastoreKeys = new ArrayList<Key>();
+			for(Object storeKey : storeKeys.subList(from, Math.min(storeKeys.size(), from + MAX_BATCH_ENTITIES))){
+				datastoreKeys.add(createKey(kind, storeKey));
+			}
+			Map<Key, Entity> entities = datastore.get(datastoreKeys);
+			logger.info("Retrieve " + entities.size() + " of " + datastoreKeys.size() + " results from datastore. kind: " + kind);
+			for(int i = 0; i < datastoreKeys.size(); i++){
+				Object storeKey = storeKeys.get(from + i);
+				Entity resultEntity = entities.get(datastoreKeys.get(i));
+				if(resultEntity == null){
+					missCache.add(kind, storeKey);
+					continue;
+				}
+				try {
+					values.put(missing.get(storeKey), toValue(readEntity(resultEntity, storeKey, kind), storeKey, kind, valueType));
+				} catch (EntityNotFoundException e) {
+					//incomplete value, treated as not found
+					missCache.add(kind, storeKey);
+				}
+			}
+		}
+		return values;
+	}
+	
+	private Object toValue(String json, Object storeKey, String kind, Type valueType){
+		Object value = gson.fromJson(json, valueType);
+		localCache.put(getLocalCacheKey(storeKey, kind), json);
+		return value;
+	}
+	
+	/**
+	 * Reads the json of a stored entity and puts it to the cache.
+	 * @throws EntityNotFoundException if a chunk is missing or the value cannot be inflated
+	 */
+	@SuppressWarnings("unchecked")
+	private String readEntity(Entity resultEntity, Object storeKey, String kind) throws EntityNotFoundException{
+		Key datastoreKey = resultEntity.getKey();
+		Object cacheKey = getCacheKey(storeKey, kind);
+		String json;
+		if(resultEntity.hasProperty("json")){
+			//stored before compression was introduced
+			json = ((Text) resultEntity.getProperty("json")).getValue();
+			if(cache != null){
+				cache.put(cacheKey, json);
+			}
+		} else if(resultEntity.hasProperty("chunks")){
+			int chunks = ((Long) resultEntity.getProperty("chunks")).intValue();
+			List<Key> chunkKeys = new ArrayList<Key>(chunks);
+			for(int i = 0; i < chunks; i++){
+				chunkKeys.add(KeyFactory.createKey(datastoreKey, kind + CHUNK_KIND_SUFFIX, i + 1));
+			}
+			Map<Key, Entity> chunkEntities = datastore.get(chunkKeys);
+			List<byte[]> chunkData = new ArrayList<byte[]>(chunks);
+			for(Key chunkKey : chunkKeys){
+				Entity chunkEntity = chunkEntities.get(chunkKey);
+				if(chunkEntity == null){
+					logger.warning("Missing chunk of result. key: " + storeKey + " kind: " + kind);
+					throw new EntityNotFoundException(chunkKey);
+				}
+				chunkData.add(((Blob) chunkEntity.getProperty("data")).getBytes());
+			}
+			json = inflate(concat(chunkData), datastoreKey);
+			if(cache != null){
+				for(int i = 0; i < chunks; i++){
+					cache.put(getChunkCacheKey(cacheKey, i), chunkData.get(i));
+				}
+				cache.put(cacheKey, chunks);
+			}
+		} else {
+			byte[] deflated = ((Blob) resultEntity.getProperty("deflated")).getBytes();
+			json = inflate(deflated, datastoreKey);
+			if(cache != null){
+				cache.put(cacheKey, deflated);
+			}
 		}
-		return gson.fromJson(json, valueType);
+		return json;
+	}
+	
+	/**
+	 * Reads the json of a value from a cache entry. The cache holds the json (legacy), the compressed
+	 * json or the number of chunks, which are cached under their own keys.
+	 * @param cached the cache entry of cacheKey, may be null
+	 * @return json or null, if not (completely) cached
+	 * @throws EntityNotFoundException if the cached value cannot be inflated
+	 */
+	private String getFromCache(Object cached, Object cacheKey, Key datastoreKey) throws EntityNotFoundException{
+		if(cached instanceof String){
+			return (String) cached;
+		}
+		if(cached instanceof byte[]){
+			return inflate((byte[]) cached, datastoreKey);
+		}
+		if(cached instanceof Integer){
+			int chunks = (Integer) cached;
+			List<String> chunkKeys = new ArrayList<String>(chunks);
+			for(int i = 0; i < chunks; i++){
+				chunkKeys.add(getChunkCacheKey(cacheKey, i));
+			}
+			Map<Object, Object> cachedChunks;
+			try {
+				cachedChunks = cache.getAll(chunkKeys);
+			} catch (CacheException e) {
+				return null;
+			}
+			List<byte[]> chunkData = new ArrayList<byte[]>(chunks);
+			for(String chunkKey : chunkKeys){
+				Object chunk = cachedChunks.get(chunkKey);
+				if(!(chunk instanceof byte[])){
+					//chunk evicted, read from datastore
+					return null;
+				}
+				chunkData.add((byte[]) chunk);
+			}
+			return inflate(concat(chunkData), datastoreKey);
+		}
+		return null;
 	}
 	
 	public boolean delete(Object key, String kind){
@@ -122,14 +556,32 @@ class PersistenceManager {
 		if(key == null || kind == null){
 			return result;
 		}
-		int storeKey = key.hashCode() + kind.hashCode();
-		if(cache != null && cache.containsKey(storeKey)){
+		Object storeKey = getStoreKey(key, kind);
+		Object cacheKey = getCacheKey(storeKey, kind);
+		localCache.remove(getLocalCacheKey(storeKey, kind));
+		if(cache != null && cache.containsKey(cacheKey)){
 			logger.info("Removed object from Cache. key: " + storeKey + " kind: " + kind);
-			cache.remove(storeKey);
+			cache.remove(cacheKey);
 		}
-		Key datastoreKey = KeyFactory.createKey(kind, storeKey);
+		Key datastoreKey = createKey(kind, storeKey);
 		try{
-			datastore.delete(datastoreKey);
+			List<Key> keys = new ArrayList<Key>();
+			keys.add(datastoreKey);
+			try{
+				Entity resultEntity = datastore.get(datastoreKey);
+				if(resultEntity.hasProperty("chunks")){
+					int chunks = ((Long) resultEntity.getProperty("chunks")).intValue();
+					for(int i = 0; i < chunks; i++){
+						keys.add(KeyFactory.createKey(datastoreKey, kind + CHUNK_KIND_SUFFIX, i + 1));
+						if(cache != null){
+							cache.remove(getChunkCacheKey(cacheKey, i));
+						}
+					}
+				}
+			} catch(EntityNotFoundException e){
+				//nothing stored, no chunks to remove
+			}
+			datastore.delete(keys);
 			result = true;
 			logger.info("Removed object from Datastore. key: " + storeKey + " kind: " + kind);
 		} catch(Exception e){
@@ -139,9 +591,227 @@ class PersistenceManager {
 	}
 	
 	public void clearCache(){
+		localCache.invalidate();
+		missCache.invalidate();
 		if(cache != null){
 			cache.clear();
 		}
 		logger.info("Cache cleared");
 	}
+	
+	/**
+	 * Removes all objects and known misses of the in-process caches of this instance. 
+	 * Cache and datastore are kept.
+	 */
+	public static void clearLocalCache(){
+		localCache.invalidate();
+		missCache.invalidate();
+		logger.info("Local cache cleared");
+	}
+	
+	private static String getLocalCacheKey(Object storeKey, String kind){
+		return kind + "#" + storeKey;
+	}
+	
+	/**
+	 * Size of the compressed data of an entity (value or chunk), 0 for a manifest.
+	 */
+	private static long getBlobBytes(Entity entity){
+		if(entity.hasProperty("data")){
+			return ((Blob) entity.getProperty("data")).getBytes().length;
+		}
+		if(entity.hasProperty("deflated")){
+			return ((Blob) entity.getProperty("deflated")).getBytes().length;
+		}
+		return 0;
+	}
+	
+	/*#############------------####################
+	 * Keys
+	 */
+	
+	/**
+	 * String keys (e.g. OlapRequest.getDigest()) are used as key name of the entity, all other keys 
+	 * are combined with the kind to an id through key.hashCode() + kind.hashCode().
+	 */
+	private static Object getStoreKey(Object key, String kind){
+		if(key instanceof String){
+			return key;
+		}
+		return key.hashCode() + kind.hashCode();
+	}
+	
+	private static Key createKey(String kind, Object storeKey){
+		if(storeKey instanceof String){
+			return KeyFactory.createKey(kind, (String) storeKey);
+		}
+		return KeyFactory.createKey(kind, ((Integer) storeKey).longValue());
+	}
+	
+	/**
+	 * Key of a value in the cache, which is shared by all kinds. Ids already contain the kind.
+	 */
+	private static Object getCacheKey(Object storeKey, String kind){
+		if(storeKey instanceof String){
+			return kind + "#" + storeKey;
+		}
+		return storeKey;
+	}
+	
+	/*#############------------####################
+	 * Compression and chunking
+	 */
+	
+	private static byte[] deflate(byte[] data){
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+			byte[] buffer = new byte[8192];
+			while(!deflater.finished()){
+				int length = deflater.deflate(buffer);
+				out.write(buffer, 0, length);
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+	
+	/**
+	 * Inflates stored json. Corrupt data is reported as not found, so that the value gets recomputed.
+	 */
+	private static String inflate(byte[] data, Key datastoreKey) throws EntityNotFoundException{
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(data);
+			ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+			byte[] buffer = new byte[8192];
+			while(!inflater.finished()){
+				int length = inflater.inflate(buffer);
+				if(length == 0 && (inflater.needsInput() || inflater.needsDictionary())){
+					throw new DataFormatException("truncated data");
+				}
+				out.write(buffer, 0, length);
+			}
+			return new String(out.toByteArray(), UTF8);
+		} catch (DataFormatException e) {
+			logger.warning("Failed to inflate result. key: " + datastoreKey + " " + e.getMessage());
+			throw new EntityNotFoundException(datastoreKey);
+		} finally {
+			inflater.end();
+		}
+	}
+	
+	private static byte[] getChunk(byte[] data, int index){
+		int from = index * CHUNK_SIZE;
+		int to = Math.min(data.length, from + CHUNK_SIZE);
+		byte[] chunk = new byte[to - from];
+		System.arraycopy(data, from, chunk, 0, chunk.length);
+		return chunk;
+	}
+	
+	private static byte[] concat(List<byte[]> chunks){
+		ByteArrayOutputStream out = new ByteArrayOutputStream(chunks.size() * CHUNK_SIZE);
+		for(byte[] chunk : chunks){
+			try {
+				out.write(chunk);
+			} catch (IOException e) {
+				//ByteArrayOutputStream does not throw
+			}
+		}
+		return out.toByteArray();
+	}
+	
+	private static String getChunkCacheKey(Object cacheKey, int index){
+		return cacheKey + CHUNK_KIND_SUFFIX + "-" + index;
+	}
+	
+	/*#############------------####################
+	 * Metrics
+	 */
+	
+	/**
+	 * @return number of values stored since startup
+	 */
+	public static long getStoredValueCount(){
+		return storedValueCount.get();
+	}
+	
+	/**
+	 * @return number of stored values that needed more than one chunk
+	 */
+	public static long getChunkedValueCount(){
+		return chunkedValueCount.get();
+	}
+	
+	/**
+	 * @return number of chunks written for chunked values
+	 */
+	public static long getChunkCount(){
+		return chunkCount.get();
+	}
+	
+	/**
+	 * @return number of values not stored, because they exceeded the maximum number of chunks
+	 */
+	public static long getSkippedValueCount(){
+		return skippedValueCount.get();
+	}
+	
+	/**
+	 * @return number of values whose asynchronous write failed (see checkPendingWrites())
+	 */
+	public static long getFailedWriteCount(){
+		return failedWriteCount.get();
+	}
+	
+	/**
+	 * @return uncompressed json bytes divided by compressed bytes of all stored values, 0 if nothing was stored
+	 */
+	public static double getCompressionRatio(){
+		long compressed = compressedBytes.get();
+		return compressed == 0 ? 0 : (double) uncompressedBytes.get() / compressed;
+	}
+	
+	public static String getMetrics(){
+		return "PersistenceManager [stored=" + storedValueCount.get() + ", chunked=" + chunkedValueCount.get()
+				+ ", chunks=" + chunkCount.get() + ", skipped=" + skippedValueCount.get()
+				+ ", failedWrites=" + failedWriteCount.get()
+				+ ", bytes=" + uncompressedBytes.get() + ", compressed=" + compressedBytes.get()
+				+ ", ratio=" + String.format("%.2f", getCompressionRatio()) + "] " + localCache + " " + missCache;
+	}
+	
+	/**
+	 * Entities of a value to put, manifest last, and the compressed size of the value
+	 */
+	private static class PreparedValue {
+		private final Object storeKey;
+		private final String kind;
+		private final Key manifestKey;
+		private final List<Entity> entities;
+		private final long bytes;
+		
+		private PreparedValue(Object storeKey, String kind, Key manifestKey, List<Entity> entities, long bytes){
+			this.storeKey = storeKey;
+			this.kind = kind;
+			this.manifestKey = manifestKey;
+			this.entities = entities;
+			this.bytes = bytes;
+		}
+	}
+	
+	/**
+	 * Asynchronous put of a batch and the values with entities in the batch
+	 */
+	private static class PendingWrite {
+		private final Future<List<Key>> future;
+		private final Set<PreparedValue> values;
+		
+		private PendingWrite(Future<List<Key>> future, Set<PreparedValue> values){
+			this.future = future;
+			this.values = values;
+		}
+	}
 }
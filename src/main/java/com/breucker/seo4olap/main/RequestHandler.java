@@ -4,6 +4,9 @@ import java.lang.reflect.Type;
 import java.net.URL;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -27,6 +30,7 @@ import com.google.gson.reflect.TypeToken;
 public class RequestHandler {
 
 	private static final Logger logger = Logger.getLogger(RequestHandler.class.getName());	
+	private static final String DATASET_BEAN_KIND = "DatasetBean";
 	private final PersistenceManager persistenceManager = new PersistenceManager();
 	private final ConfigurationManager configManager = ConfigurationManagerFactory.getConfigurationManager();
 	
@@ -45,12 +49,8 @@ public class RequestHandler {
 		if(olapRequest == null){
 			throw new InvalidParameterException("olapRequest cannot be null");
 		}
-		int key = olapRequest.hashCode();
-		
-		String kind = "OlapResult-";
-		if(olapRequest.getDatasetUri() != null){
-			kind += olapRequest.getDatasetUri().toString();
-		}
+		String key = olapRequest.getDigest();
+		String kind = getOlapResultKind(olapRequest);
 		if(!recompute){
 			try {
 				Type resultType = new TypeToken<Result>(){}.getType();
@@ -61,14 +61,23 @@ public class RequestHandler {
 			}
 		}
 		try {
+			configureAggregateLattice(olapRequest.getDatasetUri());
 			OlapHandler olapHandler = new OlapHandler(olapRequest.getDatasetUri());				
-			OlapResult olapResult = olapHandler.getOlapResult(olapRequest);
-			olapHandler = null;
+			OlapResult olapResult;
+			try {
+				olapResult = olapHandler.getOlapResult(olapRequest);
+			} finally {
+				olapHandler.release();
+			}
 			
 			ResultGenerator generator = new ResultGenerator(olapRequest, olapResult);
 			Result result = generator.getResult();
+			if(getRuntimeContext(false).isDebugMode()){
+				result.getDebugInformation().setQueryProfile(olapResult.getQueryProfile());
+			}
 			
-			persistenceManager.put(key, result, kind);
+			//the datastore write overlaps rendering the result, checkPendingWrites() waits for it
+			persistenceManager.putAsync(key, result, kind);
 			
 			return result;
 			
@@ -79,6 +88,83 @@ public class RequestHandler {
 		
 	}
 	
+	/**
+	 * Groups OLAP-Requests of a dataset, the requests of a group are evaluated together by computeOlapResults() 
+	 * (see OlapHandler.groupOlapRequests()).
+	 * @param datasetUri
+	 * @param olapRequests OLAP-Requests of the dataset
+	 * @return signature of the group -> OLAP-Requests of the group
+	 * @throws OlapException
+	 */
+	public Map<String, List<OlapRequest>> groupOlapRequests(final URL datasetUri, final Collection<OlapRequest> olapRequests) 
+			throws OlapException {
+		OlapHandler olapHandler = new OlapHandler(datasetUri);
+		try {
+			return olapHandler.groupOlapRequests(olapRequests);
+		} finally {
+			olapHandler.release();
+		}
+	}
+	
+	/**
+	 * Computes and persists the Results of many OLAP-Requests. The requests of each dataset are 
+	 * evaluated together (see OlapHandler.getOlapResults()).
+	 * @param olapRequests
+	 * @return the OlapRequests that could not be computed
+	 */
+	public List<OlapRequest> computeOlapResults(final Collection<OlapRequest> olapRequests) {
+		List<OlapRequest> failedRequests = new ArrayList<OlapRequest>();
+		
+		//group by dataset
+		Map<URL, List<OlapRequest>> datasetRequests = new LinkedHashMap<URL, List<OlapRequest>>();
+		for(OlapRequest olapRequest : olapRequests){
+			List<OlapRequest> requests = datasetRequests.get(olapRequest.getDatasetUri());
+			if(requests == null){
+				requests = new ArrayList<OlapRequest>();
+				datasetRequests.put(olapRequest.getDatasetUri(), requests);
+			}
+			requests.add(olapRequest);
+		}
+		
+		boolean debugMode = getRuntimeContext(false).isDebugMode();
+		for(Map.Entry<URL, List<OlapRequest>> entry : datasetRequests.entrySet()){
+			//all requests of a dataset share the kind
+			Map<Object, Object> results = new LinkedHashMap<Object, Object>();
+			Map<OlapRequest, OlapResult> olapResults;
+			try {
+				configureAggregateLattice(entry.getKey());
+				OlapHandler olapHandler = new OlapHandler(entry.getKey());
+				try {
+					olapHandler.buildAggregateLattice();
+					olapResults = olapHandler.getOlapResults(entry.getValue());
+				} finally {
+					olapHandler.release();
+				}
+			} catch (OlapException e) {
+				logger.warning("failed computeOlapResults for dataset " + entry.getKey() + ". OlapException: " + e.getMessage());
+				failedRequests.addAll(entry.getValue());
+				continue;
+			}
+			for(OlapRequest olapRequest : entry.getValue()){
+				OlapResult olapResult = olapResults.get(olapRequest);
+				if(olapResult == null){
+					failedRequests.add(olapRequest);
+					continue;
+				}
+				ResultGenerator generator = new ResultGenerator(olapRequest, olapResult);
+				Result result = generator.getResult();
+				if(debugMode){
+					result.getDebugInformation().setQueryProfile(olapResult.getQueryProfile());
+				}
+				results.put(olapRequest.getDigest(), result);
+			}
+			if(!results.isEmpty()){
+				persistenceManager.putAll(results, getOlapResultKind(entry.getValue().get(0)));
+			}
+		}
+		return failedRequests;
+	}
+	
 	/**
 	 * Get a List of all possible Requests for the given datasetUri
 	 * @param datasetUri
@@ -106,7 +192,7 @@ public class RequestHandler {
 		RequestListGenerator generator = new RequestListGenerator(datasetUri);
 		requests = generator.getURLRequestList(absolutePath);
 		
-		persistenceManager.put(key, requests, kind);
+		persistenceManager.putAsync(key, requests, kind);
 		
 		return requests;
 		
@@ -133,13 +219,9 @@ public class RequestHandler {
 			}
 		}
 		
-		List<DatasetBean> datasets = new ArrayList<DatasetBean>();
-		for(URL datasetUri: configManager.getDatasetUris()){
-			datasets.add(this.getDatasetBean(datasetUri, recompute));
-		}
-		indexBean.setDatasets(datasets);
+		indexBean.setDatasets(this.getDatasetBeans(configManager.getDatasetUris(), recompute));
 		
-		persistenceManager.put(key, indexBean, kind);
+		persistenceManager.putAsync(key, indexBean, kind);
 		
 		return indexBean;
 	}
@@ -154,8 +236,8 @@ public class RequestHandler {
 		if(datasetUri == null){
 			throw new InvalidParameterException("datasetUri cannot be null");
 		}
-		String kind = "DatasetBean";
-		int key = datasetUri.hashCode() + kind.hashCode();
+		String kind = DATASET_BEAN_KIND;
+		int key = getDatasetBeanKey(datasetUri);
 		DatasetBean dsBean = new DatasetBean();
 		if(!recompute){
 			try {
@@ -168,6 +250,51 @@ public class RequestHandler {
 			}
 		}
 		
+		dsBean = computeDatasetBean(datasetUri);
+		persistenceManager.putAsync(key, dsBean, kind);
+		
+		return dsBean;
+	}
+	
+	/**
+	 * Get the DatasetBeans of many Datasets. Stored DatasetBeans are retrieved with one batch get,
+	 * missing ones are computed and stored with one batch put.
+	 * @param datasetUris
+	 * @param recompute If true the DatasetBeans will be recomputed and not retrieved from Datastore
+	 * @return The DatasetBeans in the order of datasetUris
+	 */
+	public List<DatasetBean> getDatasetBeans(final List<URL> datasetUris, final boolean recompute) {
+		List<Integer> keys = new ArrayList<Integer>(datasetUris.size());
+		for(URL datasetUri : datasetUris){
+			if(datasetUri == null){
+				throw new InvalidParameterException("datasetUri cannot be null");
+			}
+			keys.add(getDatasetBeanKey(datasetUri));
+		}
+		Map<Object, Object> storedBeans = new HashMap<Object, Object>();
+		if(!recompute){
+			Type type = new TypeToken<DatasetBean>(){}.getType();
+			storedBeans = persistenceManager.getAll(keys, type, DATASET_BEAN_KIND);
+		}
+		
+		List<DatasetBean> dsBeans = new ArrayList<DatasetBean>(datasetUris.size());
+		Map<Object, Object> computedBeans = new LinkedHashMap<Object, Object>();
+		for(int i = 0; i < datasetUris.size(); i++){
+			DatasetBean dsBean = (DatasetBean) storedBeans.get(keys.get(i));
+			if(dsBean == null){
+				dsBean = computeDatasetBean(datasetUris.get(i));
+				computedBeans.put(keys.get(i), dsBean);
+			}
+			dsBeans.add(dsBean);
+		}
+		if(!computedBeans.isEmpty()){
+			persistenceManager.putAllAsync(computedBeans, DATASET_BEAN_KIND);
+		}
+		return dsBeans;
+	}
+	
+	private DatasetBean computeDatasetBean(final URL datasetUri) {
+		DatasetBean dsBean = new DatasetBean();
 		dsBean.setTitle(configManager.getDatasetTitle(datasetUri));
 		dsBean.setDescription(configManager.getDatasetDescription(datasetUri));
 		dsBean.setLicence(configManager.getDatasetLicenceLink(datasetUri));
@@ -182,11 +309,13 @@ public class RequestHandler {
 		}
 		dsBean.setLinks(links.subList(1, size));
 		
-		persistenceManager.put(key, dsBean, kind);
-		
 		return dsBean;
 	}
 	
+	private static int getDatasetBeanKey(final URL datasetUri) {
+		return datasetUri.hashCode() + DATASET_BEAN_KIND.hashCode();
+	}
+	
 	/**
 	 * Get the RuntimeContext
 	 * @param recompute If true the RuntimeContext will be recomputed and not retrieved from Datastore
@@ -225,13 +354,46 @@ public class RequestHandler {
 		persistenceManager.put(key, context, kind);
 	}
 	
+	/**
+	 * Compression, chunking, local cache and miss cache metrics of the PersistenceManager since startup
+	 * @return metrics as String
+	 */
+	public String getPersistenceMetrics() {
+		return PersistenceManager.getMetrics();
+	}
+	
+	/**
+	 * Waits for the results, lists and beans written asynchronously by this RequestHandler and logs the failed writes 
+	 * (see PersistenceManager.checkPendingWrites()). To be called at the end of a request, the request is not 
+	 * complete before its writes are.
+	 * @return number of values that failed to be written
+	 */
+	public int checkPendingWrites() {
+		return persistenceManager.checkPendingWrites();
+	}
+	
+	/**
+	 * Removes all json and known misses cached in this instance, memcache and datastore are kept.
+	 */
+	public void clearLocalCache() {
+		PersistenceManager.clearLocalCache();
+	}
+	
 	public String getMetadata(final URL datasetUri) throws OlapException{
 		
 		OlapHandler olapHandler = new OlapHandler(datasetUri);
-		String dimensions = PresentationHelper.generateMetadata(olapHandler.getDimensions());
-		String measures = PresentationHelper.generateMetadata(olapHandler.getMeasures());
-		String members = PresentationHelper.generateMetadata(olapHandler.getMembers());
-		String datsetInformation = PresentationHelper.generateMetadata(olapHandler.getDatasetInformation());
+		String dimensions;
+		String measures;
+		String members;
+		String datsetInformation;
+		try {
+			dimensions = PresentationHelper.generateMetadata(olapHandler.getDimensions());
+			measures = PresentationHelper.generateMetadata(olapHandler.getMeasures());
+			members = PresentationHelper.generateMetadata(olapHandler.getMembers());
+			datsetInformation = PresentationHelper.generateMetadata(olapHandler.getDatasetInformation());
+		} finally {
+			olapHandler.release();
+		}
 		
 		String resultHtml = "";
 		resultHtml += "<div>";
@@ -266,10 +428,14 @@ public class RequestHandler {
 		try {
 			OlapHandler olapHandler;
 			olapHandler = new OlapHandler(datasetUri);
-			List<Node[]> result = olapHandler.sparql(query);
+			List<Node[]> result;
+			try {
+				result = olapHandler.sparql(query);
+			} finally {
+				olapHandler.release();
+			}
 			
 			String output = PresentationHelper.generateHtmlTable(result);
-			olapHandler = null;
 			return output;
 		} catch (OlapException e) {
 			//TODO exception lieber werfen
@@ -295,18 +461,51 @@ public class RequestHandler {
 		}
 		
 		OlapHandler	olapHandler = new OlapHandler(datasetUri);
-		Map<String, String> labelMap = olapHandler.getLabelMap();
-		olapHandler = null;
+		Map<String, String> labelMap;
+		try {
+			labelMap = olapHandler.getLabelMap();
+		} finally {
+			olapHandler.release();
+		}
 		persistenceManager.put(key, labelMap, kind);
 		
 		return labelMap;
 	}
 	
+	/**
+	 * The view space of the sitemap configuration: requests keep at most maxDimensionCount free 
+	 * dimensions and maxMemberCount dimensions of diced members.
+	 */
+	private void configureAggregateLattice(final URL datasetUri){
+		SitemapConfiguration sitemap = configManager.getSitemapConfiguration(datasetUri);
+		if(sitemap == null){
+			return;
+		}
+		List<String> dimensions = new ArrayList<String>();
+		for(String dimension : configManager.getDimensions(datasetUri)){
+			if(!configManager.isMeasureDimension(datasetUri, dimension)){
+				dimensions.add(dimension);
+			}
+		}
+		OlapHandler.configureAggregateLattice(datasetUri, dimensions, 
+				sitemap.getMaxDimensionCount() + sitemap.getMaxMemberCount());
+	}
+	
+	private static String getOlapResultKind(final OlapRequest olapRequest){
+		String kind = "OlapResult-";
+		if(olapRequest.getDatasetUri() != null){
+			kind += olapRequest.getDatasetUri().toString();
+		}
+		return kind;
+	}
+	
 	public Model getRdfDataset(final URL datasetUri) throws OlapException{
 		OlapHandler	olapHandler = new OlapHandler(datasetUri);
-		Model dataset = olapHandler.getRdfModel();
-		olapHandler = null;
-		return dataset;
+		try {
+			return olapHandler.getRdfModel();
+		} finally {
+			olapHandler.release();
+		}
 	}
 	
 }
@@ -206,10 +206,10 @@ class RequestListGenerator {
 	 * @param requests List of requests, in which duplicates should be removed
 	 */
 	private List<Request> removeDuplicates(List<Request> requests){
-		Set<Integer> pathHashSet = new HashSet<Integer>();
+		Set<String> pathDigestSet = new HashSet<String>();
 		List<Request> paths2remove = new ArrayList<Request>();
 		for(Request request : requests){
-			boolean isUnique = pathHashSet.add(request.requestHash());
+			boolean isUnique = pathDigestSet.add(request.requestDigest());
 			if(!isUnique){
 				paths2remove.add(request);
 			}
@@ -273,15 +273,15 @@ class RequestListGenerator {
 			return new Request(this.olapRequest.copy(), this.actualPattern.copy(), this.targetPattern.copy(), newDimensions);
 		}
 		
-		public int requestHash(){
-			return olapRequest.hashCode();
+		public String requestDigest(){
+			return olapRequest.getDigest();
 		}
 		
 		public void addToRequest(String uniqueName, MetadataType type){
 			if(uniqueName != null){
-				List<String> measures = olapRequest.getMeasures2project();
-				List<String> dimensions = olapRequest.getDimensions2keep();
-				List<String> members = olapRequest.getMembers2dice();
+				List<String> measures = new ArrayList<String>(olapRequest.getMeasures2project());
+				List<String> dimensions = new ArrayList<String>(olapRequest.getDimensions2keep());
+				List<String> members = new ArrayList<String>(olapRequest.getMembers2dice());
 				if(type == MetadataType.MEASURE){
 					measures.add(uniqueName);
 				}
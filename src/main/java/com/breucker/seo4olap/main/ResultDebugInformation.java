@@ -13,6 +13,7 @@ public class ResultDebugInformation {
 	private List<String> dicedMembers;
 	private List<String> projectedMeasures;
 	private List<String> freeDimensions;
+	private String queryProfile;
 
 	public ResultDebugInformation() {}
 	
@@ -55,5 +56,16 @@ public class ResultDebugInformation {
 	public String getDatasetUri() {
 		return datasetUri;
 	}
+
+	/**
+	 * @return EXPLAIN ANALYZE tree of the OlapQuery (only set in debug mode)
+	 */
+	public String getQueryProfile() {
+		return queryProfile;
+	}
+
+	public void setQueryProfile(String queryProfile) {
+		this.queryProfile = queryProfile;
+	}
 	
 }
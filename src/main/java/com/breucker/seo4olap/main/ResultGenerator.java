@@ -174,8 +174,8 @@ class ResultGenerator {
 			if(members != null){
 				for(String member: members){
 					String label = getLabel(member);
-					OlapRequest request = this.olapRequest.copy();
-					List<String> newMembers = request.getMembers2dice();
+					OlapRequest request = this.olapRequest;
+					List<String> newMembers = new ArrayList<String>(request.getMembers2dice());
 					String member2delete = "XYZ";
 					boolean isDicedMember = false;
 					for(String newMember: newMembers){
@@ -308,8 +308,8 @@ public class ResultTextGenerator {
 	
 	private List<String> initProjectedMeasures() {
 		List<String> projMeasures = new ArrayList<String>();
-		List<String> measures2project = olapRequest.getMeasures2project();
-		List<String> members2dice = olapRequest.getMembers2dice();
+		List<String> measures2project = new ArrayList<String>(olapRequest.getMeasures2project());
+		List<String> members2dice = new ArrayList<String>(olapRequest.getMembers2dice());
 		
 		//preprocess measures with measureMembers
 		List<String> measures2remove = new ArrayList<String>();
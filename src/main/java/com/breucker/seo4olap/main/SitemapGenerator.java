@@ -54,6 +54,7 @@ public class SitemapGenerator {
 			}
 		}
 		this.relativeLinks = relativeLinks;
+		handler.checkPendingWrites();
 	}
 	
 	/**
@@ -0,0 +1,377 @@
+package com.breucker.seo4olap.main;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.gson.GsonBuilder;
+
+/**
+ * Generates synthetic datasets in the RDF Data Cube Vocabulary (dataset, data structure definition,
+ * code lists and observations) for scale testing without the live endpoints, and the matching
+ * DatasetConfiguration for config.json.<br>
+ * All resources of a dataset are hash uris of one document http://synthetic.seo4olap.org/cube/name,
+ * which is written to localDir/synthetic.seo4olap.org/cube/name.ttl. With the system properties
+ * seo4olap.ldcache.localDir=localDir and seo4olap.ldcache.offline=true, OlapSesameEngine loads the
+ * dataset from this file (see LinkedDataCache).<br>
+ * The name encodes all parameters (e.g. d4-m10-k2-p100-s1: 4 dimensions, 10 members per dimension,
+ * 2 measures, 100% of all cells observed, seed 1), so a dataset can be regenerated from its uri.
+ * All measures are decimals aggregated by sum. Datasets with mixed measures (name suffix -mixed) cycle
+ * through the datatypes decimal, integer, double and the aggregate functions sum, avg, count, min, max,
+ * so that 15 measures cover every combination.
+ *
+ * Usage: SyntheticCubeGenerator localDir dimensions members measures densityPercent [seed]
+ *
+ * @author Daniel Breucker
+ *
+ */
+public class SyntheticCubeGenerator {
+
+	private static final Logger logger = Logger.getLogger(SyntheticCubeGenerator.class.getName());
+	public static final String HOST = "synthetic.seo4olap.org";
+	private static final String PATH = "/cube/";
+	private static final Pattern NAME_PATTERN = Pattern.compile("d(\\d+)-m(\\d+)-k(\\d+)-p([0-9.]+)-s(-?\\d+)(-mixed)?");
+	private static final String MIXED_SUFFIX = "-mixed";
+	private static final String[] MIXED_DATATYPES = { "decimal", "integer", "double" };
+	private static final String[] MIXED_AGGREGATE_FUNCTIONS = { "sum", "avg", "count", "min", "max" };
+
+	private final int dimensionCount;
+	private final int membersPerDimension;
+	private final int measureCount;
+	private final double densityPercent;
+	private final long seed;
+	private final boolean mixedMeasures;
+	private final String name;
+	private final String base;
+
+	/**
+	 * @param dimensionCount number of dimensions
+	 * @param membersPerDimension number of members (codes) of each dimension
+	 * @param measureCount number of measures of each observation
+	 * @param densityPercent percentage of all member combinations having an observation
+	 * @param seed seed for the selection of cells and the measure values
+	 */
+	public SyntheticCubeGenerator(int dimensionCount, int membersPerDimension, int measureCount,
+			double densityPercent, long seed) {
+		this(dimensionCount, membersPerDimension, measureCount, densityPercent, seed, false);
+	}
+
+	/**
+	 * @param dimensionCount number of dimensions
+	 * @param membersPerDimension number of members (codes) of each dimension
+	 * @param measureCount number of measures of each observation
+	 * @param densityPercent percentage of all member combinations having an observation
+	 * @param seed seed for the selection of cells and the measure values
+	 * @param mixedMeasures if true, the measures have different datatypes and aggregate functions
+	 */
+	public SyntheticCubeGenerator(int dimensionCount, int membersPerDimension, int measureCount,
+			double densityPercent, long seed, boolean mixedMeasures) {
+		if(dimensionCount < 1 || membersPerDimension < 1 || measureCount < 1
+				|| densityPercent <= 0 || densityPercent > 100){
+			throw new InvalidParameterException("invalid synthetic cube parameters");
+		}
+		this.dimensionCount = dimensionCount;
+		this.membersPerDimension = membersPerDimension;
+		this.measureCount = measureCount;
+		this.densityPercent = densityPercent;
+		this.seed = seed;
+		this.mixedMeasures = mixedMeasures;
+		String density = densityPercent == Math.rint(densityPercent) ?
+				String.valueOf((long) densityPercent) : String.valueOf(densityPercent);
+		this.name = "d" + dimensionCount + "-m" + membersPerDimension + "-k" + measureCount
+				+ "-p" + density + "-s" + seed + (mixedMeasures ? MIXED_SUFFIX : "");
+		this.base = "http://" + HOST + PATH + name + "#";
+	}
+
+	/**
+	 * @param dsUri
+	 * @return the generator of a synthetic dataset uri, null if dsUri is not synthetic
+	 */
+	public static SyntheticCubeGenerator fromDatasetUri(URL dsUri){
+		if(dsUri == null || !HOST.equals(dsUri.getHost()) || !dsUri.getPath().startsWith(PATH)){
+			return null;
+		}
+		Matcher matcher = NAME_PATTERN.matcher(dsUri.getPath().substring(PATH.length()));
+		if(!matcher.matches()){
+			return null;
+		}
+		return new SyntheticCubeGenerator(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)),
+				Integer.parseInt(matcher.group(3)), Double.parseDouble(matcher.group(4)), Long.parseLong(matcher.group(5)),
+				matcher.group(6) != null);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 5){
+			System.err.println("Usage: SyntheticCubeGenerator localDir dimensions members measures densityPercent [seed]");
+			return;
+		}
+		long seed = args.length > 5 ? Long.parseLong(args[5]) : 1;
+		SyntheticCubeGenerator generator = new SyntheticCubeGenerator(Integer.parseInt(args[1]),
+				Integer.parseInt(args[2]), Integer.parseInt(args[3]), Double.parseDouble(args[4]), seed);
+		long observations = generator.write(new File(args[0]));
+		logger.info("Generated " + observations + " observations of " + generator.getDatasetUri()
+				+ " in " + generator.getFile(new File(args[0])));
+
+		//dataset entry for config.json
+		System.out.println(new GsonBuilder().setPrettyPrinting().create()
+				.toJson(generator.getDatasetConfiguration("synthetic-" + generator.name)));
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getDimensionCount() {
+		return dimensionCount;
+	}
+
+	public int getMembersPerDimension() {
+		return membersPerDimension;
+	}
+
+	public int getMeasureCount() {
+		return measureCount;
+	}
+
+	public URL getDatasetUri() {
+		return toUrl(base + "ds");
+	}
+
+	/**
+	 * @param localDir local stand-in directory of LinkedDataCache
+	 * @return the file of the dataset in localDir
+	 */
+	public File getFile(File localDir) {
+		return new File(new File(localDir, HOST), PATH.substring(1) + name + ".ttl");
+	}
+
+	public String getDimensionUri(int dimension) {
+		return base + "dim" + dimension;
+	}
+
+	public String getMemberUri(int dimension, int member) {
+		return base + "dim" + dimension + "-" + member;
+	}
+
+	public String getMeasureUri(int measure) {
+		return base + "measure" + measure;
+	}
+
+	/**
+	 * @param measure
+	 * @return local name of the XSD datatype of the measure, e.g. decimal
+	 */
+	public String getDatatype(int measure){
+		return mixedMeasures ? MIXED_DATATYPES[measure % MIXED_DATATYPES.length] : "decimal";
+	}
+
+	/**
+	 * @param measure
+	 * @return local name of the qb4o aggregate function of the measure, e.g. sum
+	 */
+	public String getAggregateFunction(int measure){
+		return mixedMeasures ? MIXED_AGGREGATE_FUNCTIONS[measure % MIXED_AGGREGATE_FUNCTIONS.length] : "sum";
+	}
+
+	/**
+	 * Writes the dataset in Turtle to its file in localDir.
+	 * @param localDir local stand-in directory of LinkedDataCache
+	 * @return number of observations
+	 * @throws IOException
+	 */
+	public long write(File localDir) throws IOException {
+		File file = getFile(localDir);
+		if(!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()){
+			throw new IOException("Cannot create directory " + file.getParentFile());
+		}
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 1 << 16);
+		try {
+			return write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the dataset in Turtle. Observations are streamed, so that large datasets fit.
+	 * @param out
+	 * @return number of observations
+	 * @throws IOException
+	 */
+	public long write(Writer out) throws IOException {
+		out.write("@prefix rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> .\n");
+		out.write("@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n");
+		out.write("@prefix skos: <http://www.w3.org/2004/02/skos/core#> .\n");
+		out.write("@prefix xsd: <http://www.w3.org/2001/XMLSchema#> .\n");
+		out.write("@prefix qb: <http://purl.org/linked-data/cube#> .\n");
+		out.write("@prefix qb4o: <http://purl.org/olap#> .\n");
+		out.write("@prefix c: <" + base + "> .\n\n");
+
+		//dataset and data structure definition
+		out.write("c:ds a qb:DataSet ;\n\trdfs:label \"Synthetic cube " + name + "\"@en ;\n\tqb:structure c:dsd .\n\n");
+		out.write("c:dsd a qb:DataStructureDefinition");
+		for(int d = 0; d < dimensionCount; d++){
+			out.write(" ;\n\tqb:component [ qb:dimension c:dim" + d + " ; qb:order " + (d + 1) + " ]");
+		}
+		for(int k = 0; k < measureCount; k++){
+			out.write(" ;\n\tqb:component [ qb:measure c:measure" + k + " ; qb4o:hasAggregateFunction qb4o:"
+					+ getAggregateFunction(k) + " ]");
+		}
+		out.write(" .\n\n");
+
+		//dimensions and code lists
+		for(int d = 0; d < dimensionCount; d++){
+			out.write("c:dim" + d + " a rdf:Property, qb:DimensionProperty, qb:CodedProperty ;\n\trdfs:label \""
+					+ getDimensionLabel(d) + "\"@en ;\n\tqb:codeList c:codelist" + d + " .\n");
+			out.write("c:codelist" + d + " a skos:ConceptScheme ;\n\trdfs:label \"Code list " + d + "\"@en");
+			for(int m = 0; m < membersPerDimension; m++){
+				out.write(" ;\n\tskos:hasTopConcept c:dim" + d + "-" + m);
+			}
+			out.write(" .\n");
+			for(int m = 0; m < membersPerDimension; m++){
+				out.write("c:dim" + d + "-" + m + " a skos:Concept ; skos:inScheme c:codelist" + d
+						+ " ; skos:topConceptOf c:codelist" + d + " ;\n\tskos:notation \"" + getMemberId(d, m)
+						+ "\" ; rdfs:label \"" + getMemberLabel(d, m) + "\"@en .\n");
+			}
+			out.write("\n");
+		}
+
+		//measures
+		for(int k = 0; k < measureCount; k++){
+			out.write("c:measure" + k + " a rdf:Property, qb:MeasureProperty ;\n\trdfs:label \""
+					+ getMeasureLabel(k) + "\"@en ;\n\trdfs:range xsd:" + getDatatype(k) + " .\n");
+		}
+		out.write("\n");
+
+		//observations of the selected cells
+		Random random = new Random(seed);
+		double density = densityPercent / 100;
+		int[] members = new int[dimensionCount];
+		long cells = 1;
+		for(int d = 0; d < dimensionCount; d++){
+			cells *= membersPerDimension;
+		}
+		long observations = 0;
+		StringBuilder sb = new StringBuilder();
+		for(long cell = 0; cell < cells; cell++){
+			if(cell > 0){
+				//next member combination
+				for(int d = dimensionCount - 1; d >= 0; d--){
+					if(++members[d] < membersPerDimension){
+						break;
+					}
+					members[d] = 0;
+				}
+			}
+			if(density < 1 && random.nextDouble() >= density){
+				continue;
+			}
+			sb.setLength(0);
+			sb.append("c:obs").append(cell).append(" a qb:Observation ; qb:dataSet c:ds");
+			for(int d = 0; d < dimensionCount; d++){
+				sb.append(" ; c:dim").append(d).append(" c:dim").append(d).append('-').append(members[d]);
+			}
+			for(int k = 0; k < measureCount; k++){
+				int value = random.nextInt(1000000);
+				sb.append(" ; c:measure").append(k).append(" \"");
+				String datatype = getDatatype(k);
+				if(datatype.equals("integer")){
+					sb.append(value);
+				} else if(datatype.equals("double")){
+					sb.append(value / 100.0);
+				} else {
+					sb.append(value / 100).append('.').append(value % 100 < 10 ? "0" : "").append(value % 100);
+				}
+				sb.append("\"^^xsd:").append(datatype);
+			}
+			sb.append(" .\n");
+			out.write(sb.toString());
+			observations++;
+		}
+		return observations;
+	}
+
+	/**
+	 * @param id id of the dataset in config.json, also used as sitemap endpoint
+	 * @return the configuration of the dataset with all dimensions, members and measures
+	 */
+	public DatasetConfiguration getDatasetConfiguration(String id) {
+		DatasetConfiguration config = new DatasetConfiguration();
+		config.setId(id);
+		config.setUri(getDatasetUri().toString());
+		config.setLoadOnStartup(false);
+		config.setTitle("Synthetic cube " + name);
+		config.setDescription("Synthetic dataset with " + dimensionCount + " dimensions of " + membersPerDimension
+				+ " members and " + measureCount + " measures for scale testing. ");
+		config.setLicence(new Link("http://example.org/licence", "Synthetic data"));
+		config.setSource(new Link("http://" + HOST + PATH + name, "SyntheticCubeGenerator"));
+
+		SitemapConfiguration sitemap = new SitemapConfiguration();
+		sitemap.setEndpoint(id);
+		sitemap.setMaxDimensionCount(2);
+		sitemap.setMaxMeasureCount(1);
+		sitemap.setMaxMemberCount(2);
+		config.setSitemap(sitemap);
+
+		List<DimensionConfiguration> dimensions = new ArrayList<DimensionConfiguration>();
+		for(int d = 0; d < dimensionCount; d++){
+			DimensionConfiguration dimension = new DimensionConfiguration(getDimensionUri(d), "dim" + d, getDimensionLabel(d));
+			List<MetadataConfiguration> members = new ArrayList<MetadataConfiguration>();
+			for(int m = 0; m < membersPerDimension; m++){
+				members.add(new MetadataConfiguration(getMemberUri(d, m), getMemberId(d, m), getMemberLabel(d, m)));
+			}
+			dimension.setMembers(members);
+			dimensions.add(dimension);
+		}
+		config.setDimensions(dimensions);
+
+		List<MeasureConfiguration> measures = new ArrayList<MeasureConfiguration>();
+		for(int k = 0; k < measureCount; k++){
+			measures.add(new MeasureConfiguration(getMeasureUri(k), "measure" + k, getMeasureLabel(k)));
+		}
+		config.setMeasures(measures);
+		return config;
+	}
+
+	/*#############------------####################
+	 *
+	 * Private Methods
+	 *
+	 *#############------------####################*/
+
+	private static String getDimensionLabel(int dimension){
+		return "Dimension " + dimension;
+	}
+
+	private static String getMemberId(int dimension, int member){
+		return "d" + dimension + "m" + member;
+	}
+
+	private static String getMemberLabel(int dimension, int member){
+		return "Member " + member + " of dimension " + dimension;
+	}
+
+	private static String getMeasureLabel(int measure){
+		return "Measure " + measure;
+	}
+
+	private static URL toUrl(String uri){
+		try {
+			return new URL(uri);
+		} catch (MalformedURLException e) {
+			throw new InvalidParameterException("invalid uri " + uri);
+		}
+	}
+}
@@ -0,0 +1,641 @@
+package com.breucker.seo4olap.olap;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import org.olap4j.driver.olap4ld.helper.Olap4ldLinkedDataUtil;
+import org.semanticweb.yars.nx.Node;
+import org.semanticweb.yars.nx.Resource;
+import org.semanticweb.yars.nx.Variable;
+
+import com.breucker.seo4olap.olap4ld.OlapSesameEngine;
+import com.breucker.seo4olap.olap4ld.SparqlValues;
+import com.breucker.seo4olap.olap4ld.SparqlValues.NumericType;
+
+/**
+ * Materialized aggregates (cuboids) of a dataset for every combination of at most maxDimensions of the
+ * configured dimensions, on the lowest level of each dimension. The finest cuboid is the result of one
+ * OlapQuery keeping all configured dimensions; every coarser cuboid is rolled up from its smallest parent.
+ * Cuboids store dictionary codes of members and exact measure values (BigDecimal) in arrays, values are
+ * returned in the type and form of the SPARQL aggregate (see SparqlValues).<br>
+ * Only measures aggregated by sum, count, min or max can be rolled up. Requests with other measures, other
+ * dimensions or members above the lowest level are not answered by the lattice (see lookup()).<br>
+ * A lattice is built by the tasks filling the database (see build()), never while answering a request, and
+ * only if the finest cuboid cannot exceed the maximum number of cells. It belongs to the data version of the
+ * engine and is ignored after data is inserted, deleted or updated.
+ * @author Daniel Breucker
+ */
+final class AggregateLattice {
+
+	private static final Logger logger = Logger.getLogger(AggregateLattice.class.getName());
+	//maximum number of cells of all cuboids, 0 disables the lattice
+	private static final long MAX_CELLS = Long.getLong("seo4olap.lattice.maxCells", 1000000);
+
+	private static final Map<String, Bounds> boundsByDataset = new ConcurrentHashMap<String, Bounds>();
+	private static final Map<OlapSesameEngine, AggregateLattice> lattices = new WeakHashMap<OlapSesameEngine, AggregateLattice>();
+
+	private enum Aggregator { SUM, COUNT, MIN, MAX }
+
+	private final OlapMetadata metadata;
+	//configured dimensions contained in the finest cuboid, in the order of the result columns
+	private final List<String> dimensions = new ArrayList<String>();
+	private final Node[][] dictionaries;
+	private final List<Map<String, Integer>> lookups = new ArrayList<Map<String, Integer>>();
+	//measures: header variable, aggregator, promoted type of the values, original value of min and max values
+	private final List<Variable> measureVariables = new ArrayList<Variable>();
+	private final List<Aggregator> aggregators = new ArrayList<Aggregator>();
+	private final List<NumericType> types = new ArrayList<NumericType>();
+	private final List<Map<BigDecimal, Node>> extremeValues = new ArrayList<Map<BigDecimal, Node>>();
+	//measure variables of the finest cuboid that cannot be rolled up
+	private final List<String> unsupportedMeasureVariables = new ArrayList<String>();
+	//cuboids by bit mask of the dimensions
+	private final Map<Integer, Cuboid> cuboids = new HashMap<Integer, Cuboid>();
+	//data version of the engine the lattice was built from (see SparqlResultCache.getVersion())
+	private final long version;
+
+	/**
+	 * Configures the lattice of a dataset.
+	 * @param dsUri
+	 * @param dimensions uniqueNames of the dimensions of the view space
+	 * @param maxDimensions maximum number of dimensions kept by a request (free and diced)
+	 */
+	static void configure(String dsUri, List<String> dimensions, int maxDimensions) {
+		Bounds bounds = new Bounds(dimensions, maxDimensions);
+		Bounds old = boundsByDataset.put(dsUri, bounds);
+		if (old != null && !old.equals(bounds)) {
+			synchronized (lattices) {
+				lattices.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns the bounds of a dataset, or null if no lattice is configured.
+	 * @param dsUri
+	 * @return Bounds
+	 */
+	static Bounds getBounds(String dsUri) {
+		if (MAX_CELLS <= 0) {
+			return null;
+		}
+		return boundsByDataset.get(dsUri);
+	}
+
+	/**
+	 * Returns the lattice of the engine, null if it has not been built for the current data of the engine.
+	 * @param lde
+	 * @return AggregateLattice
+	 */
+	static AggregateLattice getLattice(OlapSesameEngine lde) {
+		AggregateLattice lattice = getCurrent(lde);
+		return lattice == null || lattice.cuboids.isEmpty() ? null : lattice;
+	}
+
+	/**
+	 * @param lde
+	 * @return true if the lattice of the current data of the engine has been built (or failed to build)
+	 */
+	static boolean isBuilt(OlapSesameEngine lde) {
+		return getCurrent(lde) != null;
+	}
+
+	/**
+	 * Returns the data version of the engine, to be read before the finest cuboid is queried.
+	 * @param lde
+	 * @return version
+	 */
+	static long getDataVersion(OlapSesameEngine lde) {
+		return lde.getSparqlResultCache().getVersion();
+	}
+
+	/**
+	 * Returns the maximum number of cells of the finest cuboid: the product of the number of members on the
+	 * lowest level of the dimensions of bounds.
+	 * @param bounds
+	 * @param metadata
+	 * @return number of cells, Long.MAX_VALUE if unknown
+	 */
+	static long getMaxFinestCells(Bounds bounds, OlapMetadata metadata) {
+		if (metadata.memberDimensionUniqueNameField == null) {
+			return Long.MAX_VALUE;
+		}
+		Map<String, Long> memberCounts = new HashMap<String, Long>();
+		for (String memberUniqueName : metadata.baseLevelMembers) {
+			Node[] member = metadata.membersByUniqueName.get(memberUniqueName);
+			if (member == null) {
+				continue;
+			}
+			String dimension = member[metadata.memberDimensionUniqueNameField].toString();
+			Long count = memberCounts.get(dimension);
+			memberCounts.put(dimension, count == null ? 1 : count + 1);
+		}
+		long cells = 1;
+		for (String dimension : bounds.dimensions) {
+			Long count = memberCounts.get(dimension);
+			if (count == null) {
+				return Long.MAX_VALUE;
+			}
+			if (count > 0 && cells > Long.MAX_VALUE / count) {
+				return Long.MAX_VALUE;
+			}
+			cells *= Math.max(1, count);
+		}
+		return cells;
+	}
+
+	/**
+	 * @return maximum number of cells of all cuboids
+	 */
+	static long getMaxCells() {
+		return MAX_CELLS;
+	}
+
+	/**
+	 * Builds the lattice of the engine from the finest cuboid.
+	 * @param lde
+	 * @param version data version of the engine before the finest cuboid was queried
+	 * @param bounds
+	 * @param metadata
+	 * @param finest result of an OlapQuery keeping all dimensions of bounds and projecting all measures, null if failed or too large
+	 * @return AggregateLattice, null if it cannot be built
+	 */
+	static AggregateLattice build(OlapSesameEngine lde, long version, Bounds bounds, OlapMetadata metadata, List<Node[]> finest) {
+		AggregateLattice lattice = new AggregateLattice(version);
+		if (finest != null && finest.size() > 1) {
+			if (finest.size() - 1 > MAX_CELLS) {
+				logger.warning("Finest cuboid exceeds " + MAX_CELLS + " cells, no aggregate lattice is built.");
+			} else {
+				long time = System.currentTimeMillis();
+				lattice = new AggregateLattice(version, bounds, metadata, finest);
+				if (!lattice.cuboids.isEmpty()) {
+					logger.info("Built aggregate lattice of " + lattice.cuboids.size() + " cuboids, " + lattice.getCellCount()
+							+ " cells in " + (System.currentTimeMillis() - time) + " ms.");
+				}
+			}
+		}
+		synchronized (lattices) {
+			lattices.put(lde, lattice);
+		}
+		return lattice.cuboids.isEmpty() ? null : lattice;
+	}
+
+	/**
+	 * Removes the lattice of an engine, e.g., when the engine is reloaded.
+	 * @param lde
+	 */
+	static void invalidate(OlapSesameEngine lde) {
+		synchronized (lattices) {
+			lattices.remove(lde);
+		}
+	}
+
+	/**
+	 * Returns the lattice (or the empty lattice, if building failed) of the current data version of the engine.
+	 */
+	private static AggregateLattice getCurrent(OlapSesameEngine lde) {
+		AggregateLattice lattice;
+		synchronized (lattices) {
+			lattice = lattices.get(lde);
+		}
+		if (lattice == null || lattice.version != getDataVersion(lde)) {
+			return null;
+		}
+		return lattice;
+	}
+
+	/**
+	 * Empty lattice, marks engines whose lattice failed to build.
+	 */
+	private AggregateLattice(long version) {
+		this.metadata = null;
+		this.dictionaries = new Node[0][];
+		this.version = version;
+	}
+
+	private AggregateLattice(long version, Bounds bounds, OlapMetadata metadata, List<Node[]> finest) {
+		this.version = version;
+		this.metadata = metadata;
+		Node[] header = finest.get(0);
+		int rowCount = finest.size() - 1;
+
+		//dimension columns
+		List<Integer> dimensionColumns = new ArrayList<Integer>();
+		for (int i = 0; i < header.length; i++) {
+			String variable = header[i].toString();
+			for (String dimension : bounds.dimensions) {
+				if (variable.equals(toVariable(dimension) + "0") && !dimensions.contains(dimension)) {
+					dimensions.add(dimension);
+					dimensionColumns.add(i);
+				}
+			}
+		}
+		int n = dimensions.size();
+		this.dictionaries = new Node[n][];
+		if (n > 30) {
+			logger.warning("Too many dimensions for an aggregate lattice: " + n);
+			return;
+		}
+
+		//measure columns
+		List<Integer> measureColumns = new ArrayList<Integer>();
+		for (int i = 0; i < header.length; i++) {
+			String variable = header[i].toString();
+			if (!variable.endsWith("_new")) {
+				continue;
+			}
+			Aggregator aggregator = getAggregator(variable.substring(0, variable.length() - 4));
+			NumericType type = getNumericType(finest, i);
+			if (aggregator == null || type == null) {
+				unsupportedMeasureVariables.add(variable);
+				continue;
+			}
+			measureColumns.add(i);
+			measureVariables.add(new Variable(variable));
+			aggregators.add(aggregator);
+			types.add(type);
+		}
+		int m = measureColumns.size();
+
+		//encode finest cuboid
+		int[] keys = new int[rowCount * n];
+		BigDecimal[] values = new BigDecimal[rowCount * m];
+		for (int d = 0; d < n; d++) {
+			Map<String, Integer> lookup = new HashMap<String, Integer>();
+			List<Node> dictionary = new ArrayList<Node>();
+			int column = dimensionColumns.get(d);
+			for (int r = 0; r < rowCount; r++) {
+				Node member = finest.get(r + 1)[column];
+				Integer code = lookup.get(member.toString());
+				if (code == null) {
+					code = dictionary.size();
+					lookup.put(member.toString(), code);
+					dictionary.add(member);
+				}
+				keys[r * n + d] = code;
+			}
+			dictionaries[d] = dictionary.toArray(new Node[dictionary.size()]);
+			lookups.add(lookup);
+		}
+		for (int j = 0; j < m; j++) {
+			boolean extreme = aggregators.get(j) == Aggregator.MIN || aggregators.get(j) == Aggregator.MAX;
+			Map<BigDecimal, Node> originals = extreme ? new HashMap<BigDecimal, Node>() : null;
+			for (int r = 0; r < rowCount; r++) {
+				Node value = finest.get(r + 1)[measureColumns.get(j)];
+				values[r * m + j] = SparqlValues.parse(value);
+				if (extreme && !originals.containsKey(values[r * m + j])) {
+					originals.put(values[r * m + j], value);
+				}
+			}
+			extremeValues.add(originals);
+		}
+		int all = (1 << n) - 1;
+		Cuboid top = new Cuboid(all, n, m, keys, values, rowCount);
+
+		//roll up level by level, each cuboid from its smallest parent
+		long cells = 0;
+		int maxDimensions = Math.min(n, bounds.maxDimensions);
+		for (int size = maxDimensions; size >= 0; size--) {
+			for (int mask = 0; mask <= all; mask++) {
+				if (Integer.bitCount(mask) != size) {
+					continue;
+				}
+				Cuboid parent = top;
+				if (size < maxDimensions) {
+					parent = null;
+					for (int d = 0; d < n; d++) {
+						Cuboid candidate = cuboids.get(mask | (1 << d));
+						if ((mask & (1 << d)) == 0 && candidate != null
+								&& (parent == null || candidate.rowCount < parent.rowCount)) {
+							parent = candidate;
+						}
+					}
+					if (parent == null) {
+						parent = top;
+					}
+				}
+				Cuboid cuboid = parent.mask == mask ? parent : rollup(parent, mask);
+				cells += cuboid.rowCount;
+				if (cells > MAX_CELLS) {
+					logger.warning("Aggregate lattice exceeds " + MAX_CELLS + " cells, cuboids with " + size
+							+ " dimensions are not materialized completely.");
+					return;
+				}
+				cuboids.put(mask, cuboid);
+			}
+		}
+	}
+
+	/**
+	 * Returns the result of a request (header encoded as of an OlapQuery), or null if the request cannot be
+	 * answered by the lattice.
+	 * @param dimensions2keep uniqueNames of free dimensions and dimensions of diced members
+	 * @param olapRequest
+	 * @return result list or null
+	 */
+	List<Node[]> lookup(List<String> dimensions2keep, OlapRequest olapRequest) {
+		//cuboid
+		int mask = 0;
+		for (String dimension : dimensions2keep) {
+			int d = dimensions.indexOf(dimension);
+			if (d < 0) {
+				return null;
+			}
+			mask |= 1 << d;
+		}
+		Cuboid cuboid = cuboids.get(mask);
+		if (cuboid == null) {
+			return null;
+		}
+		int[] cuboidDimensions = cuboid.getDimensions();
+
+		//dice: member code per dimension of the cuboid (-1: not diced)
+		int[] diceCodes = new int[cuboidDimensions.length];
+		Arrays.fill(diceCodes, -1);
+		boolean empty = false;
+		for (String memberUniqueName : olapRequest.getMembers2dice()) {
+			Node[] member = metadata.membersByUniqueName.get(memberUniqueName);
+			if (member == null || !metadata.baseLevelMembers.contains(memberUniqueName)) {
+				return null;
+			}
+			int d = dimensions.indexOf(member[metadata.memberDimensionUniqueNameField].toString());
+			if (d < 0) {
+				return null;
+			}
+			int i = Arrays.binarySearch(cuboidDimensions, d);
+			if (i < 0) {
+				return null;
+			}
+			Integer code = lookups.get(d).get(memberUniqueName);
+			if (code == null || (diceCodes[i] >= 0 && diceCodes[i] != code)) {
+				empty = true;
+			} else {
+				diceCodes[i] = code;
+			}
+		}
+
+		//measures
+		List<Integer> measures = new ArrayList<Integer>();
+		if (olapRequest.getMeasures2project().isEmpty()) {
+			if (!unsupportedMeasureVariables.isEmpty()) {
+				return null;
+			}
+			for (int j = 0; j < measureVariables.size(); j++) {
+				measures.add(j);
+			}
+		} else {
+			for (String measureUniqueName : olapRequest.getMeasures2project()) {
+				String variable = toVariable(measureUniqueName) + "_new";
+				if (unsupportedMeasureVariables.contains(variable)) {
+					return null;
+				}
+				int j = measureVariables.indexOf(new Variable(variable));
+				if (j >= 0 && !measures.contains(j)) {
+					measures.add(j);
+				}
+			}
+		}
+
+		//header
+		List<Node[]> result = new ArrayList<Node[]>();
+		Node[] header = new Node[cuboidDimensions.length + measures.size()];
+		for (int i = 0; i < cuboidDimensions.length; i++) {
+			header[i] = new Variable(toVariable(dimensions.get(cuboidDimensions[i])) + "0");
+		}
+		for (int j = 0; j < measures.size(); j++) {
+			header[cuboidDimensions.length + j] = measureVariables.get(measures.get(j));
+		}
+		result.add(header);
+		if (empty) {
+			return result;
+		}
+
+		//rows, ordered by members
+		final Cuboid rows = cuboid;
+		final int[] orderDimensions = cuboidDimensions;
+		List<Integer> selected = new ArrayList<Integer>();
+		for (int r = 0; r < cuboid.rowCount; r++) {
+			boolean diced = true;
+			for (int i = 0; i < diceCodes.length && diced; i++) {
+				diced = diceCodes[i] < 0 || cuboid.keys[r * cuboid.dimensionCount + i] == diceCodes[i];
+			}
+			if (diced) {
+				selected.add(r);
+			}
+		}
+		Collections.sort(selected, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer r1, Integer r2) {
+				for (int i = 0; i < orderDimensions.length; i++) {
+					Node[] dictionary = dictionaries[orderDimensions[i]];
+					int c = SparqlValues.compare(dictionary[rows.keys[r1 * rows.dimensionCount + i]],
+							dictionary[rows.keys[r2 * rows.dimensionCount + i]]);
+					if (c != 0) {
+						return c;
+					}
+				}
+				return 0;
+			}
+		});
+		for (Integer r : selected) {
+			Node[] row = new Node[header.length];
+			for (int i = 0; i < cuboidDimensions.length; i++) {
+				row[i] = dictionaries[cuboidDimensions[i]][cuboid.keys[r * cuboid.dimensionCount + i]];
+			}
+			for (int j = 0; j < measures.size(); j++) {
+				int measure = measures.get(j);
+				row[cuboidDimensions.length + j] = toNode(cuboid.values[r * cuboid.measureCount + measure], measure);
+			}
+			result.add(row);
+		}
+		return result;
+	}
+
+	long getCellCount() {
+		long cells = 0;
+		for (Cuboid cuboid : cuboids.values()) {
+			cells += cuboid.rowCount;
+		}
+		return cells;
+	}
+
+	/*#############------------####################
+	 *
+	 * Private Methods
+	 *
+	 *#############------------####################*/
+
+	private Cuboid rollup(Cuboid parent, int mask) {
+		int m = parent.measureCount;
+		int[] parentDimensions = parent.getDimensions();
+		//positions of the dimensions of mask in the keys of parent
+		List<Integer> positions = new ArrayList<Integer>();
+		for (int i = 0; i < parentDimensions.length; i++) {
+			if ((mask & (1 << parentDimensions[i])) != 0) {
+				positions.add(i);
+			}
+		}
+		int n = positions.size();
+
+		Map<List<Integer>, Integer> slots = new HashMap<List<Integer>, Integer>();
+		List<Integer> keys = new ArrayList<Integer>();
+		BigDecimal[] values = new BigDecimal[Math.max(1, parent.rowCount) * m];
+		int rowCount = 0;
+		for (int r = 0; r < parent.rowCount; r++) {
+			Integer[] key = new Integer[n];
+			for (int i = 0; i < n; i++) {
+				key[i] = parent.keys[r * parent.dimensionCount + positions.get(i)];
+			}
+			List<Integer> keyList = Arrays.asList(key);
+			Integer slot = slots.get(keyList);
+			if (slot == null) {
+				slot = rowCount++;
+				slots.put(keyList, slot);
+				keys.addAll(keyList);
+				System.arraycopy(parent.values, r * m, values, slot * m, m);
+				continue;
+			}
+			for (int j = 0; j < m; j++) {
+				BigDecimal value = parent.values[r * m + j];
+				int index = slot * m + j;
+				switch (aggregators.get(j)) {
+				case MIN:
+					values[index] = value.compareTo(values[index]) < 0 ? value : values[index];
+					break;
+				case MAX:
+					values[index] = value.compareTo(values[index]) > 0 ? value : values[index];
+					break;
+				default:
+					//sum, and counts are summed up
+					values[index] = values[index].add(value);
+				}
+			}
+		}
+		int[] keyArray = new int[keys.size()];
+		for (int i = 0; i < keyArray.length; i++) {
+			keyArray[i] = keys.get(i);
+		}
+		return new Cuboid(mask, n, m, keyArray, Arrays.copyOf(values, rowCount * m), rowCount);
+	}
+
+	private Aggregator getAggregator(String measureVariable) {
+		if (metadata.measureUniqueNameField == null || metadata.measureAggregatorField == null) {
+			return null;
+		}
+		for (Node[] measure : metadata.measures) {
+			if (!toVariable(measure[metadata.measureUniqueNameField].toString()).equals(measureVariable)) {
+				continue;
+			}
+			String aggregator = measure[metadata.measureAggregatorField].toString()
+					.replace("http://purl.org/olap#", "").toUpperCase();
+			for (Aggregator candidate : Aggregator.values()) {
+				if (candidate.name().equals(aggregator)) {
+					return candidate;
+				}
+			}
+			return null;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the promoted type of a column if all values are numeric literals, else null.
+	 */
+	private static NumericType getNumericType(List<Node[]> result, int column) {
+		NumericType type = NumericType.INTEGER;
+		for (int r = 1; r < result.size(); r++) {
+			Node value = result.get(r)[column];
+			NumericType valueType = SparqlValues.getNumericType(value);
+			if (valueType == null || SparqlValues.parse(value) == null) {
+				return null;
+			}
+			type = type.promote(valueType);
+		}
+		return type;
+	}
+
+	private Node toNode(BigDecimal value, int measure) {
+		switch (aggregators.get(measure)) {
+		case COUNT:
+			return SparqlValues.toNode(value, NumericType.INTEGER);
+		case MIN:
+		case MAX:
+			//the value itself, as in SPARQL
+			return extremeValues.get(measure).get(value);
+		default:
+			return SparqlValues.toNode(value, types.get(measure));
+		}
+	}
+
+	private static String toVariable(String uniqueName) {
+		return Olap4ldLinkedDataUtil.makeUriToVariable(new Resource(uniqueName)).toString();
+	}
+
+	/**
+	 * Cells of a cuboid: keys (member codes of the dimensions in mask, ascending by dimension) and
+	 * values (of all measures) per row.
+	 */
+	private static class Cuboid {
+		final int mask;
+		final int dimensionCount;
+		final int measureCount;
+		final int[] keys;
+		final BigDecimal[] values;
+		final int rowCount;
+
+		Cuboid(int mask, int dimensionCount, int measureCount, int[] keys, BigDecimal[] values, int rowCount) {
+			this.mask = mask;
+			this.dimensionCount = dimensionCount;
+			this.measureCount = measureCount;
+			this.keys = keys;
+			this.values = values;
+			this.rowCount = rowCount;
+		}
+
+		int[] getDimensions() {
+			int[] dimensions = new int[dimensionCount];
+			int i = 0;
+			for (int d = 0; d < 31 && i < dimensionCount; d++) {
+				if ((mask & (1 << d)) != 0) {
+					dimensions[i++] = d;
+				}
+			}
+			return dimensions;
+		}
+	}
+
+	/**
+	 * View space of a dataset: dimensions and the maximum number of dimensions kept by a request.
+	 */
+	static class Bounds {
+		final List<String> dimensions;
+		final int maxDimensions;
+
+		Bounds(List<String> dimensions, int maxDimensions) {
+			this.dimensions = Collections.unmodifiableList(new ArrayList<String>(dimensions));
+			this.maxDimensions = maxDimensions;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Bounds)) {
+				return false;
+			}
+			Bounds other = (Bounds) obj;
+			return maxDimensions == other.maxDimensions && dimensions.equals(other.dimensions);
+		}
+
+		@Override
+		public int hashCode() {
+			return dimensions.hashCode() * 31 + maxDimensions;
+		}
+	}
+}
@@ -1,7 +1,18 @@
 package com.breucker.seo4olap.olap;
 
-import java.util.HashMap;
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
 import org.apache.log4j.varia.NullAppender;
@@ -12,9 +23,17 @@ import org.semanticweb.yars.nx.Node;
 import org.semanticweb.yars.nx.Resource;
 
 import com.breucker.seo4olap.olap4ld.OlapSesameEngine;
+import com.google.appengine.api.ThreadManager;
+import com.google.appengine.api.utils.SystemProperty;
 
 /**
- * Factory for managing Singleton instances of LinkedDataCubesEngines
+ * Factory for managing Singleton instances of LinkedDataCubesEngines.
+ * Each dataset is initialized exactly once, concurrent callers wait for the running initialization.
+ * Engines not used for seo4olap.engine.idleMinutes are evicted, and at most seo4olap.engine.maxEngines
+ * engines are kept (least recently used are evicted first). Both are unbounded if not set.
+ * Engines are only evicted when another engine is created, and never while an OlapHandler uses them:
+ * getEngine() acquires the engine for the caller, releaseEngine() releases it. An engine evicted through
+ * evictEngine() while in use is shut down when its last user releases it.
  * 
  * @author Daniel Breucker
  *
@@ -22,19 +41,84 @@ import com.breucker.seo4olap.olap4ld.OlapSesameEngine;
 class OlapEngineFactory {
 
 	private static final Logger logger = Logger.getLogger(OlapEngineFactory.class.getName());
-	private static Map<Integer, OlapSesameEngine> existingEngines = new HashMap<Integer, OlapSesameEngine>();
+	private static final ConcurrentHashMap<String, EngineEntry> existingEngines = new ConcurrentHashMap<String, EngineEntry>();
+	//evicted engines still in use, shut down on their last release
+	private static final ConcurrentHashMap<OlapSesameEngine, EngineEntry> evictedEngines = new ConcurrentHashMap<OlapSesameEngine, EngineEntry>();
 	private static boolean isOlap4LdLoggerOn = false;
+	private static final String STORE_TYPE_PROPERTY = "seo4olap.store.type";
+	private static final String STORE_DIR_PROPERTY = "seo4olap.store.dir";
+	private static final long IDLE_TIMEOUT = Long.getLong("seo4olap.engine.idleMinutes", 0) * 60 * 1000;
+	private static final int MAX_ENGINES = Integer.getInteger("seo4olap.engine.maxEngines", 0);
 	
 	private OlapEngineFactory() {}
 
 	/**
-	 * Returns a LinkedDataCubesEngine filled with Data from dataSetUri
+	 * Returns a LinkedDataCubesEngine filled with Data from dataSetUri and acquires it for the caller,
+	 * who has to release it with releaseEngine().
 	 * @param dataSetUri
 	 * @return LinkedDataCubesEngine
 	 * @throws OlapException in case that DataSet did not fulfill requirements
 	 */
 	public static OlapSesameEngine getEngine(final String dataSetUri) throws OlapException {
-		logger.info("LDCE get engine dsuri.hashcode: " + dataSetUri.hashCode());
+		logger.info("LDCE get engine dsuri: " + dataSetUri);
+		initOlap4LdLogger();
+		
+		OlapSesameEngine lde;
+		do {
+			lde = getEntry(dataSetUri).acquire();
+			// null if the engine was evicted and shut down meanwhile
+		} while (lde == null);
+		return lde;
+	}
+	
+	/**
+	 * Releases an engine acquired by getEngine(). Evicted engines are shut down on their last release.
+	 * @param dataSetUri
+	 * @param lde
+	 */
+	static void releaseEngine(final String dataSetUri, final OlapSesameEngine lde) {
+		EngineEntry entry = existingEngines.get(dataSetUri);
+		if (entry == null || entry.engine != lde) {
+			entry = evictedEngines.get(lde);
+		}
+		if (entry != null && entry.release()) {
+			evictedEngines.remove(lde);
+		}
+	}
+	
+	/**
+	 * Returns the state of the engine of dataSetUri.
+	 * @param dataSetUri
+	 * @return OlapEngineState
+	 */
+	static OlapEngineState getEngineState(final String dataSetUri) {
+		EngineEntry entry = existingEngines.get(dataSetUri);
+		if (entry == null) {
+			return OlapEngineState.NOT_LOADED;
+		}
+		return entry.state;
+	}
+	
+	/**
+	 * Removes the engine of dataSetUri. The next getEngine call loads the dataset again.
+	 * @param dataSetUri
+	 * @return true if an engine has been removed
+	 */
+	static boolean evictEngine(final String dataSetUri) {
+		EngineEntry entry = existingEngines.get(dataSetUri);
+		if (entry == null || entry.state == OlapEngineState.LOADING) {
+			return false;
+		}
+		return evict(dataSetUri, entry);
+	}
+	
+	/*#############------------####################
+	 * 
+	 * Private Methods
+	 * 
+	 *#############------------####################*/
+	
+	private static synchronized void initOlap4LdLogger() {
 		//on first time, initiate OLAP4LD-Logger
 		if (!isOlap4LdLoggerOn){
 			logger.info("LDCE get engine init logger");
@@ -44,28 +128,248 @@ class OlapEngineFactory {
 			org.apache.log4j.BasicConfigurator.configure(new NullAppender());
 			isOlap4LdLoggerOn = true;
 		}
-		// return existing DataCubesEngine
-		if (existingEngines.containsKey(dataSetUri.hashCode())){
-			logger.info("LDCE get engine return existing engine dsuri: " + dataSetUri);
-			return existingEngines.get(dataSetUri.hashCode());
-		}
-		// create new DataCubesEngine
-		else{
-			logger.info("LDCE get engine return new engine dsuri: " + dataSetUri);
-			//create new Engine			
-			OlapSesameEngine lde = null;
-			lde = new OlapSesameEngine();
-			
-			//fill Engine with Data
-			Restrictions restrictions = new Restrictions();
-			Node dsUriNode = new Resource(dataSetUri);
-			restrictions.cubeNamePattern = dsUriNode;
+	}
+	
+	/**
+	 * Returns the ready entry of dataSetUri, waits if it is still loading.
+	 */
+	private static EngineEntry getEntry(final String dataSetUri) throws OlapException {
+		EngineEntry entry = existingEngines.get(dataSetUri);
+		// retry failed initializations
+		if (entry != null && entry.state == OlapEngineState.FAILED) {
+			EngineEntry newEntry = new EngineEntry(dataSetUri);
+			if (existingEngines.replace(dataSetUri, entry, newEntry)) {
+				logger.info("LDCE get engine retry failed engine dsuri: " + dataSetUri);
+				newEntry.task.run();
+			}
+			entry = existingEngines.get(dataSetUri);
+		}
+		// create new DataCubesEngine, only one thread runs the initialization
+		if (entry == null) {
+			evictEngines(dataSetUri);
+			EngineEntry newEntry = new EngineEntry(dataSetUri);
+			entry = existingEngines.putIfAbsent(dataSetUri, newEntry);
+			if (entry == null) {
+				logger.info("LDCE get engine return new engine dsuri: " + dataSetUri);
+				entry = newEntry;
+				entry.task.run();
+			}
+		}
+		// return existing DataCubesEngine, wait if it is still loading
+		entry.lastAccess = System.currentTimeMillis();
+		try {
+			entry.task.get();
+			return entry;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof OlapException) {
+				throw (OlapException) e.getCause();
+			}
+			throw new OlapException("Failed to initialize engine for dsUri: " + dataSetUri, e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OlapException("Interrupted while waiting for engine of dsUri: " + dataSetUri, e);
+		}
+	}
+	
+	/**
+	 * Evicts idle engines and, if more than MAX_ENGINES are ready, the least recently used ones.
+	 * Loading engines, engines in use and the engine of the requested dataset are never evicted.
+	 * @param requestedDataSetUri dataset whose engine is created
+	 */
+	private static void evictEngines(String requestedDataSetUri) {
+		if (IDLE_TIMEOUT <= 0 && MAX_ENGINES <= 0) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		List<Map.Entry<String, EngineEntry>> readyEngines = new ArrayList<Map.Entry<String, EngineEntry>>();
+		for (Map.Entry<String, EngineEntry> mapEntry : existingEngines.entrySet()) {
+			EngineEntry entry = mapEntry.getValue();
+			if (entry.state == OlapEngineState.LOADING || entry.isInUse() 
+					|| mapEntry.getKey().equals(requestedDataSetUri)) {
+				continue;
+			}
+			if (IDLE_TIMEOUT > 0 && now - entry.lastAccess > IDLE_TIMEOUT) {
+				logger.info("LDCE evict idle engine dsuri: " + mapEntry.getKey());
+				evict(mapEntry.getKey(), entry);
+			} else if (entry.state == OlapEngineState.READY) {
+				readyEngines.add(mapEntry);
+			}
+		}
+		if (MAX_ENGINES > 0 && readyEngines.size() >= MAX_ENGINES) {
+			Collections.sort(readyEngines, new Comparator<Map.Entry<String, EngineEntry>>() {
+				@Override
+				public int compare(Map.Entry<String, EngineEntry> o1, Map.Entry<String, EngineEntry> o2) {
+					return Long.compare(o1.getValue().lastAccess, o2.getValue().lastAccess);
+				}
+			});
+			// keep room for the requested engine
+			for (int i = 0; i <= readyEngines.size() - MAX_ENGINES; i++) {
+				logger.info("LDCE evict least recently used engine dsuri: " + readyEngines.get(i).getKey());
+				evict(readyEngines.get(i).getKey(), readyEngines.get(i).getValue());
+			}
+		}
+	}
+	
+	private static boolean evict(String dataSetUri, EngineEntry entry) {
+		if (!existingEngines.remove(dataSetUri, entry)) {
+			return false;
+		}
+		OlapSesameEngine lde = entry.engine;
+		if (lde != null) {
+			OlapMetadata.invalidate(lde);
+			AggregateLattice.invalidate(lde);
+			if (!entry.evict()) {
+				logger.info("LDCE engine in use, shut down on last release dsuri: " + dataSetUri);
+				evictedEngines.put(lde, entry);
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Creates and fills an engine.
+	 */
+	private static OlapSesameEngine loadEngine(final String dataSetUri) throws OlapException {
+		//create new Engine			
+		OlapSesameEngine lde = createEngine(dataSetUri);
+		
+		//fill Engine with Data
+		Restrictions restrictions = new Restrictions();
+		Node dsUriNode = new Resource(dataSetUri);
+		restrictions.cubeNamePattern = dsUriNode;
+		if(SystemProperty.environment.value() == null){
+			// not on App Engine, keep the default thread factory of the engine
 			lde.getCubes(restrictions);
-			
-			//Store Engine in Map
-			existingEngines.put(dataSetUri.hashCode(), lde);
-			
 			return lde;
 		}
+		// App Engine only allows threads of the current request, later crawls fetch in the calling thread
+		lde.setCrawlerThreadFactory(getRequestThreadFactory());
+		try {
+			lde.getCubes(restrictions);
+		} finally {
+			lde.setCrawlerThreadFactory(null);
+		}
+		return lde;
+	}
+	
+	/**
+	 * @return thread factory of the current request or null, if no threads may be created
+	 */
+	private static ThreadFactory getRequestThreadFactory() {
+		try {
+			return ThreadManager.currentRequestThreadFactory();
+		} catch (RuntimeException e) {
+			logger.config("LDCE no request thread factory, crawl in the calling thread: " + e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Creates an engine on the store backend configured by the system properties
+	 * seo4olap.store.type (memory, persistentMemory, native) and seo4olap.store.dir.
+	 * Persistent stores get one data directory per dataSetUri.
+	 */
+	private static OlapSesameEngine createEngine(String dataSetUri) throws OlapException {
+		String storeType = System.getProperty(STORE_TYPE_PROPERTY, "memory");
+		String storeDir = System.getProperty(STORE_DIR_PROPERTY);
+		
+		OlapSesameEngine.StoreType type;
+		if(storeType.equals("native")){
+			type = OlapSesameEngine.StoreType.NATIVE;
+		}
+		else if(storeType.equals("persistentMemory")){
+			type = OlapSesameEngine.StoreType.PERSISTENT_MEMORY;
+		}
+		else {
+			type = OlapSesameEngine.StoreType.MEMORY;
+		}
+		if(type == OlapSesameEngine.StoreType.MEMORY || storeDir == null){
+			return new OlapSesameEngine();
+		}
+		try {
+			File dataDir = new File(storeDir, URLEncoder.encode(dataSetUri, "UTF-8"));
+			logger.info("LDCE get engine use " + storeType + " store in dir: " + dataDir);
+			return new OlapSesameEngine(type, dataDir);
+		} catch (UnsupportedEncodingException e) {
+			throw new OlapException("Problem with encoding dataSetUri: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Registry entry of an engine. The task initializes the engine and is run by exactly one thread.
+	 * Counts the users of the engine, so that it is shut down only after its last user released it.
+	 */
+	private static class EngineEntry {
+		final FutureTask<OlapSesameEngine> task;
+		volatile OlapEngineState state = OlapEngineState.LOADING;
+		volatile long lastAccess = System.currentTimeMillis();
+		volatile OlapSesameEngine engine = null;
+		private int users = 0;
+		private boolean evicted = false;
+		private boolean shutDown = false;
+		
+		EngineEntry(final String dataSetUri) {
+			this.task = new FutureTask<OlapSesameEngine>(new Callable<OlapSesameEngine>() {
+				@Override
+				public OlapSesameEngine call() throws Exception {
+					try {
+						OlapSesameEngine lde = loadEngine(dataSetUri);
+						engine = lde;
+						state = OlapEngineState.READY;
+						return lde;
+					} catch (Exception e) {
+						logger.warning("LDCE failed to load engine dsuri: " + dataSetUri + " Message: " + e.getMessage());
+						state = OlapEngineState.FAILED;
+						throw e;
+					}
+				}
+			});
+		}
+		
+		/**
+		 * @return the engine, null if it has been shut down
+		 */
+		synchronized OlapSesameEngine acquire() {
+			if (shutDown) {
+				return null;
+			}
+			users++;
+			lastAccess = System.currentTimeMillis();
+			return engine;
+		}
+		
+		/**
+		 * @return true if the evicted engine has been shut down by its last user
+		 */
+		synchronized boolean release() {
+			if (users > 0) {
+				users--;
+			}
+			lastAccess = System.currentTimeMillis();
+			if (evicted && users == 0 && !shutDown) {
+				shutDown = true;
+				engine.shutDown();
+				return true;
+			}
+			return false;
+		}
+		
+		synchronized boolean isInUse() {
+			return users > 0;
+		}
+		
+		/**
+		 * Marks the engine evicted and shuts it down, unless it is in use.
+		 * @return true if the engine has been shut down
+		 */
+		synchronized boolean evict() {
+			evicted = true;
+			if (users > 0) {
+				return false;
+			}
+			shutDown = true;
+			engine.shutDown();
+			return true;
+		}
 	}
 }
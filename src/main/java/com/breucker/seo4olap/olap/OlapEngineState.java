@@ -0,0 +1,9 @@
+package com.breucker.seo4olap.olap;
+
+/**
+ * State of the engine of a dataset. NOT_LOADED if no engine exists (or it has been evicted).
+ * @author Daniel Breucker
+ */
+public enum OlapEngineState {
+	NOT_LOADED, LOADING, READY, FAILED
+}
@@ -1,13 +1,19 @@
 package com.breucker.seo4olap.olap;
 
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
 
 import org.olap4j.OlapException;
 import org.olap4j.driver.olap4ld.helper.Olap4ldLinkedDataUtil;
@@ -15,13 +21,13 @@ import org.olap4j.driver.olap4ld.linkeddata.BaseCubeOp;
 import org.olap4j.driver.olap4ld.linkeddata.LogicalOlapOp;
 import org.olap4j.driver.olap4ld.linkeddata.LogicalOlapQueryPlan;
 import org.olap4j.driver.olap4ld.linkeddata.ProjectionOp;
-import org.olap4j.driver.olap4ld.linkeddata.Restrictions;
 import org.olap4j.driver.olap4ld.linkeddata.SliceOp;
 import org.openrdf.model.Model;
 import org.semanticweb.yars.nx.Node;
 import org.semanticweb.yars.nx.Resource;
 
 import com.breucker.seo4olap.olap4ld.OlapSesameEngine;
+import com.breucker.seo4olap.olap4ld.OperatorProfile;
 
 /**
  * OlapHandler manages Connection with LinkedDataCubesEngine. It allows to retrieve OlapResults
@@ -29,9 +35,10 @@ import com.breucker.seo4olap.olap4ld.OlapSesameEngine;
  */
 public class OlapHandler{
 	
-//	private static final Logger logger = Logger.getLogger(OlapHandler.class.getName());	
+	private static final Logger logger = Logger.getLogger(OlapHandler.class.getName());	
 	private final String dsUri;
 	private final OlapSesameEngine lde;
+	private final OlapMetadata metadata;
 	private final List<Node[]> members;
 	private final List<Node[]> dimensions;
 	private final List<Node[]> measures;
@@ -46,9 +53,11 @@ public class OlapHandler{
 	private final Integer measureAggregatorField;
 	private final Integer memberUniqueNameField;
 	private final Integer memberCaptionField;
+	private boolean released = false;
 	
 	/**
-	 * Constructor with custom DatasetUri.
+	 * Constructor with custom DatasetUri. Acquires the engine of the dataset, which has to be released 
+	 * with release() when the OlapHandler is not used anymore.
 	 * @param dsUri
 	 * @throws OlapException 
 	 */
@@ -59,40 +68,44 @@ public class OlapHandler{
 		this.dsUri = dsUri.toString();	
 		// init LinkedDataEngine
 		this.lde = OlapEngineFactory.getEngine(dsUri.toString());
-		Node dsUriNode = new Resource(dsUri.toString());
 		
-		//populate Metadata
-		Restrictions restrictions = new Restrictions();
-		restrictions.cubeNamePattern = dsUriNode;
-		this.dimensions = lde.getDimensions(restrictions);
-		this.measures = lde.getMeasures(restrictions);
-		this.members = lde.getMembers(restrictions);
-		this.datasetInformation = lde.getDatasetInformation();
+		//shared metadata snapshot of the engine
+		boolean acquired = false;
+		try {
+			this.metadata = OlapMetadata.getSnapshot(lde, this.dsUri);
+			acquired = true;
+		} finally {
+			if(!acquired){
+				// nobody else can release the engine
+				release();
+			}
+		}
+		this.dimensions = metadata.dimensions;
+		this.measures = metadata.measures;
+		this.members = metadata.members;
+		this.datasetInformation = metadata.datasetInformation;
+		this.resultHeaderNames = metadata.resultHeaderNames;
 	
 		//populate MetadataFields
-		dimensionUniqueNameField = OlapHelper.getMetadataMap(dimensions).get("?DIMENSION_UNIQUE_NAME");
-		dimensionCaptionField = OlapHelper.getMetadataMap(dimensions).get("?DIMENSION_CAPTION");
-		dimensionDescriptionField = OlapHelper.getMetadataMap(dimensions).get("?DESCRIPTION");
-		measureUniqueNameField = OlapHelper.getMetadataMap(measures).get("?MEASURE_UNIQUE_NAME");
-		measureCaptionField = OlapHelper.getMetadataMap(measures).get("?MEASURE_CAPTION");
-		measureIsVisibleField = OlapHelper.getMetadataMap(measures).get("?MEASURE_IS_VISIBLE");
-		measureAggregatorField = OlapHelper.getMetadataMap(measures).get("?MEASURE_AGGREGATOR");
-		memberUniqueNameField = OlapHelper.getMetadataMap(members).get("?MEMBER_UNIQUE_NAME");
-		memberCaptionField = OlapHelper.getMetadataMap(members).get("?MEMBER_CAPTION");
-		
-		//fill resultHeaderNames
-		this.resultHeaderNames = new HashMap<String, String>();		
-		for(Node[] dimension: dimensions){
-			Node uniqueNameNode = dimension[dimensionUniqueNameField];
-			String uniqueName = uniqueNameNode.toString();
-			String encodedUniqueName = Olap4ldLinkedDataUtil.makeUriToVariable(uniqueNameNode).toString();
-			resultHeaderNames.put(encodedUniqueName, uniqueName);
-		}
-		for(Node[] measure: measures){
-			Node uniqueNameNode = measure[measureUniqueNameField];
-			String uniqueName = uniqueNameNode.toString();
-			String encodedUniqueName = Olap4ldLinkedDataUtil.makeUriToVariable(uniqueNameNode).toString();
-			resultHeaderNames.put(encodedUniqueName, uniqueName);
+		dimensionUniqueNameField = metadata.dimensionUniqueNameField;
+		dimensionCaptionField = metadata.dimensionCaptionField;
+		dimensionDescriptionField = metadata.dimensionDescriptionField;
+		measureUniqueNameField = metadata.measureUniqueNameField;
+		measureCaptionField = metadata.measureCaptionField;
+		measureIsVisibleField = metadata.measureIsVisibleField;
+		measureAggregatorField = metadata.measureAggregatorField;
+		memberUniqueNameField = metadata.memberUniqueNameField;
+		memberCaptionField = metadata.memberCaptionField;
+	}
+	
+	/**
+	 * Releases the engine of the dataset (see OlapEngineFactory.releaseEngine()). The OlapHandler must not
+	 * be used afterwards. Results, metadata and models returned before stay valid.
+	 */
+	public void release() {
+		if(!released){
+			released = true;
+			OlapEngineFactory.releaseEngine(this.dsUri, this.lde);
 		}
 	}
 	
@@ -107,12 +120,104 @@ public class OlapHandler{
 	 * @throws OlapException in case of failure while executing OlapQuery
 	 */
 	public OlapResult getOlapResult(final OlapRequest olapRequest) throws OlapException {
-		LogicalOlapQueryPlan queryPlan = this.generateLogicalOlapQueryPlan(olapRequest);
-		List<Node[]> resultList = this.lde.executeOlapQuery(queryPlan);
+		List<Node[]> resultList = lookupAggregateLattice(olapRequest);
+		String queryProfile;
+		if(resultList == null){
+			LogicalOlapQueryPlan queryPlan = this.generateLogicalOlapQueryPlan(olapRequest);
+			resultList = this.lde.executeOlapQuery(queryPlan);
+			queryProfile = getLastQueryProfile();
+		} else {
+			queryProfile = "Aggregate lattice lookup (rows=" + resultList.size() + ")";
+		}
 		OlapResult result = prepareOlapResult(resultList);
+		result.setQueryProfile(queryProfile);
 		return result;
 	}
 	
+	/**
+	 * Get OlapResults of many OlapRequests of the dataset. Requests keeping the same dimensions
+	 * (including the dimensions of diced members) are evaluated by one OlapQuery without dice,
+	 * projecting all measures of the group. The result of each request is then filtered for its
+	 * members and projected to its measures.<br>
+	 * Requests dicing members above the lowest level are evaluated one by one.
+	 * @param olapRequests OlapRequests of the dataset of this OlapHandler
+	 * @return Map of OlapRequest to its OlapResult
+	 * @throws OlapException in case of failure while executing OlapQuery
+	 */
+	public Map<OlapRequest, OlapResult> getOlapResults(final Collection<OlapRequest> olapRequests) throws OlapException {
+		Map<OlapRequest, OlapResult> results = new LinkedHashMap<OlapRequest, OlapResult>();
+		
+		//group requests by their free dimensions
+		Map<Set<String>, List<OlapRequest>> groups = new LinkedHashMap<Set<String>, List<OlapRequest>>();
+		for(OlapRequest olapRequest : olapRequests){
+			if(!this.dsUri.equals(olapRequest.getDatasetUri().toString())){
+				throw new InvalidParameterException("olapRequest is not of dataset " + this.dsUri + ": " + olapRequest);
+			}
+			List<Node[]> latticeResultList = lookupAggregateLattice(olapRequest);
+			if(latticeResultList != null){
+				OlapResult result = prepareOlapResult(latticeResultList);
+				result.setQueryProfile("Aggregate lattice lookup (rows=" + latticeResultList.size() + ")");
+				results.put(olapRequest, result);
+				continue;
+			}
+			if(!isSharedScanPossible(olapRequest)){
+				results.put(olapRequest, getOlapResult(olapRequest));
+				continue;
+			}
+			Set<String> signature = new TreeSet<String>(getDimensions2keep(olapRequest));
+			List<OlapRequest> group = groups.get(signature);
+			if(group == null){
+				group = new ArrayList<OlapRequest>();
+				groups.put(signature, group);
+			}
+			group.add(olapRequest);
+		}
+		
+		for(Map.Entry<Set<String>, List<OlapRequest>> group : groups.entrySet()){
+			List<OlapRequest> groupRequests = group.getValue();
+			if(groupRequests.size() == 1){
+				results.put(groupRequests.get(0), getOlapResult(groupRequests.get(0)));
+				continue;
+			}
+			
+			//all measures of the group, all measures if any request does not project
+			Set<String> measures2project = new LinkedHashSet<String>();
+			boolean allMeasures = false;
+			for(OlapRequest olapRequest : groupRequests){
+				if(olapRequest.getMeasures2project().isEmpty()){
+					allMeasures = true;
+				}
+				measures2project.addAll(olapRequest.getMeasures2project());
+			}
+			if(allMeasures){
+				measures2project.clear();
+			}
+			OlapRequest groupRequest = new OlapRequest(olapRequests.iterator().next().getDatasetUri(), 
+					new ArrayList<String>(), new ArrayList<String>(group.getKey()), new ArrayList<String>(measures2project));
+			
+			List<Node[]> groupResultList = this.lde.executeOlapQuery(this.generateLogicalOlapQueryPlan(groupRequest));
+			logger.info("Evaluated " + groupRequests.size() + " OlapRequests with dimensions " + group.getKey() + " in one OlapQuery.");
+			String queryProfile = "Shared by " + groupRequests.size() + " OlapRequests:\n" + getLastQueryProfile();
+			
+			for(OlapRequest olapRequest : groupRequests){
+				OlapResult result = prepareOlapResult(selectResultList(groupResultList, olapRequest));
+				result.setQueryProfile(queryProfile);
+				results.put(olapRequest, result);
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Get the EXPLAIN ANALYZE tree (operators with init time, iteration time, rows, bytes and
+	 * SPARQL query) of the last OlapQuery executed by this thread.
+	 * @return the tree as text or null, if profiling is disabled
+	 */
+	public String getLastQueryProfile(){
+		OperatorProfile profile = this.lde.getLastQueryProfile();
+		return profile == null ? null : profile.toString();
+	}
+	
 	public Map<String, String> getLabelMap(){
 		Map<String, String> labelMap = new HashMap<String, String>();
 		
@@ -171,6 +276,99 @@ public class OlapHandler{
 		return this.datasetInformation;
 	}
 	
+	/**
+	 * Groups OlapRequests of the dataset like getOlapResults() does: by the dimensions they keep, 
+	 * including the dimensions of diced members. The groups can be computed independently.
+	 * @param olapRequests OlapRequests of the dataset of this OlapHandler
+	 * @return signature of the group -> OlapRequests of the group
+	 */
+	public Map<String, List<OlapRequest>> groupOlapRequests(final Collection<OlapRequest> olapRequests){
+		Map<String, List<OlapRequest>> groups = new LinkedHashMap<String, List<OlapRequest>>();
+		for(OlapRequest olapRequest : olapRequests){
+			String signature = getSignature(olapRequest);
+			List<OlapRequest> group = groups.get(signature);
+			if(group == null){
+				group = new ArrayList<OlapRequest>();
+				groups.put(signature, group);
+			}
+			group.add(olapRequest);
+		}
+		return groups;
+	}
+	
+	/**
+	 * Signature of the group of a request: the sorted uniqueNames of the dimensions it keeps, separated by spaces.
+	 */
+	private String getSignature(final OlapRequest olapRequest){
+		StringBuilder signature = new StringBuilder();
+		for(String dimension : new TreeSet<String>(getDimensions2keep(olapRequest))){
+			if(signature.length() > 0){
+				signature.append(' ');
+			}
+			signature.append(dimension);
+		}
+		return signature.toString();
+	}
+	
+	/**
+	 * Builds the aggregate lattice of the configured view space of the dataset (see configureAggregateLattice()),
+	 * unless it is built for the current data of the engine already. The finest cuboid is only queried if it
+	 * cannot exceed the maximum number of cells of the lattice. To be called by the tasks filling the database,
+	 * requests are answered from the lattice only after it has been built.
+	 */
+	public void buildAggregateLattice(){
+		AggregateLattice.Bounds bounds = AggregateLattice.getBounds(this.dsUri);
+		if(bounds == null || AggregateLattice.isBuilt(lde)){
+			return;
+		}
+		long version = AggregateLattice.getDataVersion(lde);
+		List<Node[]> finest = null;
+		long maxFinestCells = AggregateLattice.getMaxFinestCells(bounds, metadata);
+		if(maxFinestCells > AggregateLattice.getMaxCells()){
+			logger.info("No aggregate lattice for " + this.dsUri + ", finest cuboid may have " + maxFinestCells + " cells.");
+		} else {
+			try {
+				OlapRequest finestRequest = new OlapRequest(new URL(this.dsUri), new ArrayList<String>(), 
+						new ArrayList<String>(bounds.dimensions), new ArrayList<String>());
+				finest = this.lde.executeOlapQuery(this.generateLogicalOlapQueryPlan(finestRequest));
+			} catch (OlapException e) {
+				logger.warning("Failed to build aggregate lattice. OlapException: " + e.getMessage());
+			} catch (MalformedURLException e) {
+				logger.warning("Failed to build aggregate lattice. MalformedURLException: " + e.getMessage());
+			}
+		}
+		AggregateLattice.build(lde, version, bounds, metadata, finest);
+	}
+	
+	/**
+	 * Configures the view space of a dataset, for which aggregates are materialized (see AggregateLattice).
+	 * Requests keeping at most maxDimensions of the dimensions (free and diced) are answered without OlapQuery.
+	 * @param dsUri
+	 * @param dimensions UniqueNames of the dimensions of the view space
+	 * @param maxDimensions
+	 */
+	public static void configureAggregateLattice(URL dsUri, List<String> dimensions, int maxDimensions) {
+		AggregateLattice.configure(dsUri.toString(), dimensions, maxDimensions);
+	}
+	
+	/**
+	 * Returns the state of the engine of dsUri without loading it.
+	 * @param dsUri
+	 * @return OlapEngineState
+	 */
+	public static OlapEngineState getEngineState(URL dsUri) {
+		return OlapEngineFactory.getEngineState(dsUri.toString());
+	}
+	
+	/**
+	 * Removes the engine of dsUri, e.g., to free memory or to reload the dataset.
+	 * @param dsUri
+	 * @return true if an engine has been removed
+	 */
+	public static boolean evictEngine(URL dsUri) {
+		return OlapEngineFactory.evictEngine(dsUri.toString());
+	}
+	
 	/*#############------------####################
 	 * 
 	 * Private Methods
@@ -315,35 +513,123 @@ public class OlapHandler{
 		return result;
 	}
 	
-	private Node[] getDimension(String uniqueName){
-		if(uniqueName != null){
-			for(Node[] dimension : this.dimensions){
-				if(dimension[dimensionUniqueNameField].toString().equals(uniqueName)){
-					return dimension;
+	/**
+	 * Returns the result of the request from the aggregate lattice of the engine, 
+	 * or null if the lattice is not built (see buildAggregateLattice()) or the request is outside of the lattice.
+	 */
+	private List<Node[]> lookupAggregateLattice(OlapRequest olapRequest){
+		if(AggregateLattice.getBounds(this.dsUri) == null){
+			return null;
+		}
+		AggregateLattice lattice = AggregateLattice.getLattice(lde);
+		if(lattice == null){
+			return null;
+		}
+		return lattice.lookup(getDimensions2keep(olapRequest), olapRequest);
+	}
+	
+	/**
+	 * Only requests dicing members of the lowest level can be answered from the undiced result,
+	 * since the result contains the members of the lowest level only.
+	 */
+	private boolean isSharedScanPossible(OlapRequest olapRequest){
+		for(String memberUniqueName : olapRequest.getMembers2dice()){
+			Node[] member = getMember(memberUniqueName);
+			if(member == null || !metadata.baseLevelMembers.contains(memberUniqueName)
+					|| member[metadata.memberDimensionUniqueNameField].toString().equals(Olap4ldLinkedDataUtil.MEASURE_DIMENSION_NAME)){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns the rows of the result of the group, that contain the members of the request, 
+	 * with the measure columns of the request. 
+	 * @param groupResultList result of the group (header still encoded)
+	 * @param olapRequest
+	 * @return result of the request
+	 */
+	private List<Node[]> selectResultList(List<Node[]> groupResultList, OlapRequest olapRequest){
+		Node[] groupHeader = groupResultList.get(0);
+		Map<String, Integer> columnsByVariable = new HashMap<String, Integer>();
+		for(int i = 0; i < groupHeader.length; i++){
+			columnsByVariable.put(groupHeader[i].toString(), i);
+		}
+		
+		//dimension columns, then measure columns in the order of the request
+		List<Integer> columns = new ArrayList<Integer>();
+		for(int i = 0; i < groupHeader.length; i++){
+			if(!groupHeader[i].toString().endsWith("_new")){
+				columns.add(i);
+			}
+		}
+		if(olapRequest.getMeasures2project().isEmpty()){
+			for(int i = 0; i < groupHeader.length; i++){
+				if(groupHeader[i].toString().endsWith("_new")){
+					columns.add(i);
+				}
+			}
+		}
+		else{
+			for(String measureUniqueName : olapRequest.getMeasures2project()){
+				Integer column = columnsByVariable.get(
+						Olap4ldLinkedDataUtil.makeUriToVariable(new Resource(measureUniqueName)).toString() + "_new");
+				if(column != null && !columns.contains(column)){
+					columns.add(column);
 				}
 			}
 		}
+		
+		//dice: column of the dimension of each member
+		List<String> members2dice = olapRequest.getMembers2dice();
+		int[] diceColumns = new int[members2dice.size()];
+		for(int i = 0; i < diceColumns.length; i++){
+			Node dimension = getMember(members2dice.get(i))[metadata.memberDimensionUniqueNameField];
+			Integer column = columnsByVariable.get(Olap4ldLinkedDataUtil.makeUriToVariable(dimension).toString() + "0");
+			diceColumns[i] = column == null ? -1 : column;
+		}
+		
+		List<Node[]> resultList = new ArrayList<Node[]>();
+		resultList.add(selectColumns(groupHeader, columns));
+		for(int j = 1; j < groupResultList.size(); j++){
+			Node[] row = groupResultList.get(j);
+			boolean diced = true;
+			for(int i = 0; i < diceColumns.length && diced; i++){
+				diced = diceColumns[i] >= 0 && row[diceColumns[i]].toString().equals(members2dice.get(i));
+			}
+			if(diced){
+				resultList.add(selectColumns(row, columns));
+			}
+		}
+		return resultList;
+	}
+	
+	private static Node[] selectColumns(Node[] row, List<Integer> columns){
+		Node[] selection = new Node[columns.size()];
+		for(int i = 0; i < selection.length; i++){
+			selection[i] = row[columns.get(i)];
+		}
+		return selection;
+	}
+	
+	private Node[] getDimension(String uniqueName){
+		if(uniqueName != null){
+			return metadata.dimensionsByUniqueName.get(uniqueName);
+		}
 		return null;
 	}
 	
 	private Node[] getMeasure(String uniqueName){
 		if(uniqueName != null){
-			for(Node[] measure : this.measures){
-				if(measure[measureUniqueNameField].toString().equals(uniqueName)){
-					return measure;
-				}
-			}
+			return metadata.measuresByUniqueName.get(uniqueName);
 		}
 		return null;
 	}
 	
 	private Node[] getMember(String uniqueName){
 		if(uniqueName != null){
-			for(Node[] member : this.members){
-				if(member[memberUniqueNameField].toString().equals(uniqueName)){
-					return member;
-				}
-			}
+			return metadata.membersByUniqueName.get(uniqueName);
 		}
 		return null;
 	}
@@ -421,7 +707,6 @@ public class OlapHandler{
 		
 		//get requestParameter
 		List<String> reqMeasures = olapRequest.getMeasures2project();
-		List<String> reqDimensions = olapRequest.getDimensions2keep();
 		List<String> reqMembers = olapRequest.getMembers2dice();
 				
 		OlapOperationGenerator generator = new OlapOperationGenerator(this.lde);
@@ -437,13 +722,7 @@ public class OlapHandler{
 		
 		//make slices: select all chosen dimensions + all dimensions of chosen members. Slice the rest
 		LogicalOlapOp slice = new SliceOp(projection, new ArrayList<Node[]>());
-		List<String> dim2keep = new ArrayList<String>();
-		if(reqMembers != null){
-			dim2keep.addAll(this.getMemberDimensions(reqMembers));
-		}		
-		if(reqDimensions != null){
-			dim2keep.addAll(reqDimensions);
-		}
+		List<String> dim2keep = getDimensions2keep(olapRequest);
 		if(!dim2keep.isEmpty()){
 			slice = generator.selectDimensions(projection, dim2keep);
 		}
@@ -457,6 +736,22 @@ public class OlapHandler{
 		return new LogicalOlapQueryPlan(dice);
 	}
 	
+	/**
+	 * Returns the uniqueNames of the Dimensions not sliced: chosen dimensions + all dimensions of chosen members
+	 * @param olapRequest
+	 * @return List of DimensionUniqueNames
+	 */
+	private List<String> getDimensions2keep(final OlapRequest olapRequest){
+		List<String> dim2keep = new ArrayList<String>();
+		if(olapRequest.getMembers2dice() != null){
+			dim2keep.addAll(this.getMemberDimensions(olapRequest.getMembers2dice()));
+		}		
+		if(olapRequest.getDimensions2keep() != null){
+			dim2keep.addAll(olapRequest.getDimensions2keep());
+		}
+		return dim2keep;
+	}
+	
 	/**
 	 * Returns a list of uniqueNames of Dimensions corresponding to members
 	 * @param members Array of MemberUniqeNames
@@ -464,9 +759,8 @@ public class OlapHandler{
 	 */
 	private List<String> getMemberDimensions(List<String> members){
 		List<String> dimOfMembers = new ArrayList<String>();
-		Map<String, Integer> memberMap = OlapHelper.getMetadataMap(this.members);
-		Integer memberUniqueNameField = memberMap.get(OlapOperationGenerator.MEMBER_UNIQUE_NAME);
-		Integer dimensionUniqueNameField = memberMap.get(OlapOperationGenerator.DIMENSION_UNIQUE_NAME);
+		Integer memberUniqueNameField = metadata.memberUniqueNameField;
+		Integer dimensionUniqueNameField = metadata.memberDimensionUniqueNameField;
 		
 		for(String memberUniqueName : members){
 			for(Node[] member : this.members){
@@ -0,0 +1,179 @@
+package com.breucker.seo4olap.olap;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.logging.Logger;
+
+import org.olap4j.OlapException;
+import org.olap4j.driver.olap4ld.helper.Olap4ldLinkedDataUtil;
+import org.olap4j.driver.olap4ld.linkeddata.Restrictions;
+import org.semanticweb.yars.nx.Node;
+import org.semanticweb.yars.nx.Resource;
+
+import com.breucker.seo4olap.olap4ld.OlapSesameEngine;
+
+/**
+ * Immutable snapshot of the metadata of a dataset (dimensions, measures, members, dataset information,
+ * field indexes and result header names). A snapshot is built once per populated engine and shared by
+ * all OlapHandlers. Since it is bound to the engine instance, a reloaded engine gets a new snapshot.
+ * @author Daniel Breucker
+ */
+final class OlapMetadata {
+
+	private static final Logger logger = Logger.getLogger(OlapMetadata.class.getName());
+	private static final Map<OlapSesameEngine, OlapMetadata> snapshots = new WeakHashMap<OlapSesameEngine, OlapMetadata>();
+
+	final List<Node[]> members;
+	final List<Node[]> dimensions;
+	final List<Node[]> measures;
+	final List<Node[]> datasetInformation;
+	final Map<String, String> resultHeaderNames;
+	final Map<String, Node[]> dimensionsByUniqueName;
+	final Map<String, Node[]> measuresByUniqueName;
+	final Map<String, Node[]> membersByUniqueName;
+	final Set<String> baseLevelMembers;
+	final Integer dimensionUniqueNameField;
+	final Integer dimensionCaptionField;
+	final Integer dimensionDescriptionField;
+	final Integer measureUniqueNameField;
+	final Integer measureCaptionField;
+	final Integer measureIsVisibleField;
+	final Integer measureAggregatorField;
+	final Integer memberUniqueNameField;
+	final Integer memberCaptionField;
+	final Integer memberDimensionUniqueNameField;
+
+	/**
+	 * Returns the snapshot of the engine, creates it on first call.
+	 * @param lde populated engine
+	 * @param dsUri
+	 * @return OlapMetadata
+	 * @throws OlapException
+	 */
+	static OlapMetadata getSnapshot(OlapSesameEngine lde, String dsUri) throws OlapException {
+		synchronized (snapshots) {
+			OlapMetadata snapshot = snapshots.get(lde);
+			if (snapshot == null) {
+				logger.info("Create metadata snapshot for dsUri: " + dsUri);
+				snapshot = new OlapMetadata(lde, dsUri);
+				snapshots.put(lde, snapshot);
+			}
+			return snapshot;
+		}
+	}
+
+	/**
+	 * Removes the snapshot of an engine, e.g., when the engine is reloaded.
+	 * @param lde
+	 */
+	static void invalidate(OlapSesameEngine lde) {
+		synchronized (snapshots) {
+			snapshots.remove(lde);
+		}
+	}
+
+	private OlapMetadata(OlapSesameEngine lde, String dsUri) throws OlapException {
+		//populate Metadata
+		Restrictions restrictions = new Restrictions();
+		restrictions.cubeNamePattern = new Resource(dsUri);
+		this.dimensions = Collections.unmodifiableList(lde.getDimensions(restrictions));
+		this.measures = Collections.unmodifiableList(lde.getMeasures(restrictions));
+		this.members = Collections.unmodifiableList(lde.getMembers(restrictions));
+		this.datasetInformation = Collections.unmodifiableList(lde.getDatasetInformation());
+
+		//populate MetadataFields
+		Map<String, Integer> dimensionMap = OlapHelper.getMetadataMap(dimensions);
+		Map<String, Integer> measureMap = OlapHelper.getMetadataMap(measures);
+		Map<String, Integer> memberMap = OlapHelper.getMetadataMap(members);
+		dimensionUniqueNameField = dimensionMap.get("?DIMENSION_UNIQUE_NAME");
+		dimensionCaptionField = dimensionMap.get("?DIMENSION_CAPTION");
+		dimensionDescriptionField = dimensionMap.get("?DESCRIPTION");
+		measureUniqueNameField = measureMap.get("?MEASURE_UNIQUE_NAME");
+		measureCaptionField = measureMap.get("?MEASURE_CAPTION");
+		measureIsVisibleField = measureMap.get("?MEASURE_IS_VISIBLE");
+		measureAggregatorField = measureMap.get("?MEASURE_AGGREGATOR");
+		memberUniqueNameField = memberMap.get("?MEMBER_UNIQUE_NAME");
+		memberCaptionField = memberMap.get("?MEMBER_CAPTION");
+		memberDimensionUniqueNameField = memberMap.get("?DIMENSION_UNIQUE_NAME");
+
+		this.dimensionsByUniqueName = indexByUniqueName(dimensions, dimensionUniqueNameField);
+		this.measuresByUniqueName = indexByUniqueName(measures, measureUniqueNameField);
+		this.membersByUniqueName = indexByUniqueName(members, memberUniqueNameField);
+		this.baseLevelMembers = findBaseLevelMembers(members, memberMap, memberUniqueNameField);
+
+		//fill resultHeaderNames
+		Map<String, String> headerNames = new HashMap<String, String>();
+		for(Node[] dimension: dimensions){
+			Node uniqueNameNode = dimension[dimensionUniqueNameField];
+			String uniqueName = uniqueNameNode.toString();
+			String encodedUniqueName = Olap4ldLinkedDataUtil.makeUriToVariable(uniqueNameNode).toString();
+			headerNames.put(encodedUniqueName, uniqueName);
+		}
+		for(Node[] measure: measures){
+			Node uniqueNameNode = measure[measureUniqueNameField];
+			String uniqueName = uniqueNameNode.toString();
+			String encodedUniqueName = Olap4ldLinkedDataUtil.makeUriToVariable(uniqueNameNode).toString();
+			headerNames.put(encodedUniqueName, uniqueName);
+		}
+		this.resultHeaderNames = Collections.unmodifiableMap(headerNames);
+	}
+
+	/**
+	 * Returns the uniqueNames of the members on the lowest level of their hierarchy.
+	 */
+	private static Set<String> findBaseLevelMembers(List<Node[]> members, Map<String, Integer> memberMap, Integer uniqueNameField){
+		Set<String> baseLevelMembers = new HashSet<String>();
+		Integer hierarchyField = memberMap.get("?HIERARCHY_UNIQUE_NAME");
+		Integer levelNumberField = memberMap.get("?LEVEL_NUMBER");
+		if(uniqueNameField == null || hierarchyField == null || levelNumberField == null){
+			return baseLevelMembers;
+		}
+		Map<String, Integer> maxLevelNumbers = new HashMap<String, Integer>();
+		for(int i = 1; i < members.size(); i++){
+			Node[] member = members.get(i);
+			try{
+				int levelNumber = Integer.parseInt(member[levelNumberField].toString());
+				Integer maxLevelNumber = maxLevelNumbers.get(member[hierarchyField].toString());
+				if(maxLevelNumber == null || levelNumber > maxLevelNumber){
+					maxLevelNumbers.put(member[hierarchyField].toString(), levelNumber);
+				}
+			} catch(NumberFormatException e){
+				logger.warning("Invalid level number of member " + member[uniqueNameField]);
+			}
+		}
+		for(int i = 1; i < members.size(); i++){
+			Node[] member = members.get(i);
+			try{
+				int levelNumber = Integer.parseInt(member[levelNumberField].toString());
+				if(maxLevelNumbers.get(member[hierarchyField].toString()) == levelNumber){
+					baseLevelMembers.add(member[uniqueNameField].toString());
+				}
+			} catch(NumberFormatException e){
+				// not a base level member
+			}
+		}
+		return Collections.unmodifiableSet(baseLevelMembers);
+	}
+
+	/**
+	 * Maps uniqueNames to their metadata rows. For duplicate uniqueNames, the first row is kept.
+	 */
+	private static Map<String, Node[]> indexByUniqueName(List<Node[]> metadata, Integer uniqueNameField){
+		Map<String, Node[]> index = new HashMap<String, Node[]>();
+		if(uniqueNameField == null){
+			return index;
+		}
+		for(Node[] row: metadata){
+			String uniqueName = row[uniqueNameField].toString();
+			if(!index.containsKey(uniqueName)){
+				index.put(uniqueName, row);
+			}
+		}
+		return Collections.unmodifiableMap(index);
+	}
+}
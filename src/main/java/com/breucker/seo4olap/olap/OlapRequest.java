@@ -2,23 +2,38 @@ package com.breucker.seo4olap.olap;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.security.InvalidParameterException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.TreeSet;
 
 /**
  * An OlapRequest will be evaluated by e.g. OlapHandler.
  * Populate it with String[] of Unique-Names.
+ * Two OlapRequests are equal, if their canonical forms are equal, i.e. regardless of the order
+ * of Unique-Names. getDigest() is the 128-bit key of an OlapRequest for persistence.
+ * An OlapRequest is immutable: its lists are copied on construction and cannot be modified, 
+ * its canonical form is computed once.
  * 
  * @author Daniel Breucker
  *
  */
 public class OlapRequest {
 
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	
 	private URL datasetUri;
 	private List<String> members2dice;
 	private List<String> dimensions2keep;
 	private List<String> measures2project;
+	private transient String canonicalForm;
+	private transient int hashCode;
+	private transient String digest;
 	
 	public OlapRequest() {}
 	
@@ -35,28 +50,37 @@ public class OlapRequest {
 			throw new InvalidParameterException("datasetUri cannot be null");
 		}
 		this.datasetUri = datasetUri;
-		if(members2dice == null){
-			members2dice = new ArrayList<String>();
-		}
-		this.members2dice = members2dice;
-		if(dimensions2keep == null){
-			dimensions2keep = new ArrayList<String>();
-		}
-		this.dimensions2keep = dimensions2keep;
-		if(measures2project == null){
-			measures2project = new ArrayList<String>();
+		this.members2dice = unmodifiableCopy(members2dice);
+		this.dimensions2keep = unmodifiableCopy(dimensions2keep);
+		this.measures2project = unmodifiableCopy(measures2project);
+		this.canonicalForm = computeCanonicalForm();
+		this.hashCode = canonicalForm.hashCode();
+	}
+	
+	private static List<String> unmodifiableCopy(List<String> list){
+		if(list == null){
+			return Collections.emptyList();
 		}
-		this.measures2project = measures2project;
+		return Collections.unmodifiableList(new ArrayList<String>(list));
 	}
 
+	/**
+	 * @return UniqueNames of the Members to dice, unmodifiable
+	 */
 	public List<String> getMembers2dice() {
 		return members2dice;
 	}
 
+	/**
+	 * @return UniqueNames of the Dimensions to keep, unmodifiable
+	 */
 	public List<String> getDimensions2keep() {
 		return dimensions2keep;
 	}
 
+	/**
+	 * @return UniqueNames of the Measures to project, unmodifiable
+	 */
 	public List<String> getMeasures2project() {
 		return measures2project;
 	}
@@ -65,31 +89,81 @@ public class OlapRequest {
 		return datasetUri;
 	}
 
+	/**
+	 * The canonical form of the OlapRequest: the datasetUri followed by the sorted, distinct 
+	 * Unique-Names of each category. Every entry is tagged with its category and prefixed 
+	 * with its length, so different requests never share a canonical form.
+	 * @return canonical form
+	 */
+	public String getCanonicalForm(){
+		return canonicalForm;
+	}
+	
+	private String computeCanonicalForm(){
+		StringBuilder sb = new StringBuilder();
+		appendCanonical(sb, 'd', datasetUri.toString());
+		for(String item : new TreeSet<String>(members2dice)){
+			appendCanonical(sb, 'm', item);
+		}
+		for(String item : new TreeSet<String>(dimensions2keep)){
+			appendCanonical(sb, 'k', item);
+		}
+		for(String item : new TreeSet<String>(measures2project)){
+			appendCanonical(sb, 'p', item);
+		}
+		return sb.toString();
+	}
+	
+	private static void appendCanonical(StringBuilder sb, char category, String item){
+		sb.append(category).append(item.length()).append(':').append(item);
+	}
+	
+	/**
+	 * 128-bit digest (first half of SHA-256) of the canonical form as 32 hex digits.
+	 * Used as key of the OlapRequest for persistence.
+	 * @return digest
+	 */
+	public String getDigest(){
+		//racy single-check: every thread computes the same digest
+		String digest = this.digest;
+		if(digest == null){
+			digest = computeDigest();
+			this.digest = digest;
+		}
+		return digest;
+	}
+	
+	private String computeDigest(){
+		byte[] hash;
+		try {
+			hash = MessageDigest.getInstance("SHA-256").digest(canonicalForm.getBytes(UTF8));
+		} catch (NoSuchAlgorithmException e) {
+			//every Java platform supports SHA-256
+			throw new IllegalStateException(e);
+		}
+		char[] digest = new char[32];
+		for(int i = 0; i < 16; i++){
+			digest[2 * i] = HEX[(hash[i] >> 4) & 0xf];
+			digest[2 * i + 1] = HEX[hash[i] & 0xf];
+		}
+		return new String(digest);
+	}
+
 	@Override
 	public int hashCode(){
-		int h = 0;
-		for(String item : members2dice){
-			h += "members".hashCode();
-    		h += (item + item).hashCode();
-    	}
-		for(String item : dimensions2keep){
-			h += "dimensions".hashCode();
-    		h += (item + item).hashCode();
-    	}
-		for(String item : measures2project){
-			h += "measures".hashCode();
-    		h += (item + item).hashCode();
-    	}
-		h += datasetUri.hashCode();
-        return h;
+		return hashCode;
 	}
 	
 	@Override
 	public boolean equals(Object olapRequest){
-		if(olapRequest == null){
+		if(this == olapRequest){
+			return true;
+		}
+		if(!(olapRequest instanceof OlapRequest)){
 			return false;
 		}
-		return this.hashCode() == olapRequest.hashCode();
+		OlapRequest other = (OlapRequest) olapRequest;
+		return this.hashCode == other.hashCode && this.canonicalForm.equals(other.canonicalForm);
 	}
 	
 	@Override
@@ -106,8 +180,7 @@ public class OlapRequest {
 			dsUri = new URL(this.datasetUri.toString());
 		} catch (MalformedURLException e) {
 		}
-		return new OlapRequest(dsUri, new ArrayList<String>(members2dice), 
-				new ArrayList<String>(dimensions2keep), new ArrayList<String>(measures2project));
+		return new OlapRequest(dsUri, members2dice, dimensions2keep, measures2project);
 	}
 	
 }
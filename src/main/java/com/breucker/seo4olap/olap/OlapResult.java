@@ -11,6 +11,7 @@ public class OlapResult {
 	private Map<String, OlapResultColumn> columns = null;
 	private List<Node[]> rows = null;
 	private Map<String, OlapResultMember> memberMap = null;
+	private String queryProfile = null;
 	
 
 	public OlapResult() {}
@@ -55,4 +56,15 @@ public class OlapResult {
 		this.memberMap = memberMap;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * @return EXPLAIN ANALYZE tree of the OlapQuery computing this result or null
+	 */
+	public String getQueryProfile() {
+		return queryProfile;
+	}
+
+	public void setQueryProfile(String queryProfile) {
+		this.queryProfile = queryProfile;
+	}
+
+}
@@ -232,6 +232,13 @@ public class BaseCubeSparqlDerivedDatasetIterator implements
 		// nothing to do?
 	}
 
+	/**
+	 * @return the SPARQL query of the base cube (null before init)
+	 */
+	public String getQuery() {
+		return query;
+	}
+
 	public String toString() {
 		Map<String, Integer> map = Olap4ldLinkedDataUtil
 				.getNodeResultFields(cubes.get(0));
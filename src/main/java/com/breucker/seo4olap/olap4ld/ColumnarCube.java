@@ -0,0 +1,587 @@
+package com.breucker.seo4olap.olap4ld;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.olap4j.driver.olap4ld.Olap4ldUtil;
+import org.semanticweb.yars.nx.Literal;
+import org.semanticweb.yars.nx.Node;
+import org.semanticweb.yars.nx.Resource;
+
+import com.breucker.seo4olap.olap4ld.SparqlValues.NumericType;
+
+/**
+ * In-memory columnar representation of a base cube (output of BaseCubeSparqlDerivedDatasetIterator).
+ *
+ * Every dimension column is dictionary-encoded into an int[] (one code per observation), every
+ * numeric measure column is stored as long[] (integers whose sum cannot overflow), BigDecimal[]
+ * (other integers and decimals) or double[] (floats and doubles), so that aggregates are computed
+ * with the same precision and type as in SPARQL (see SparqlValues). For every member, a MemberBitmap of its observations is
+ * built, too. Slices, rollups (on the base level) and projections are executed as scans over these
+ * arrays, dices as AND/OR of member bitmaps selecting the rows to scan, see aggregate().
+ *
+ * A columnar cube is immutable and built once per base cube (see OlapSesameEngine.getColumnarCube()).
+ *
+ * @author Daniel Breucker
+ *
+ */
+public class ColumnarCube {
+
+	private static final Resource NULL_RESOURCE = new Resource("null");
+	// Up to this number of possible groups, group slots are looked up in an array instead of a map
+	private static final long MAX_DENSE_GROUPS = 1 << 20;
+
+	/**
+	 * Aggregation functions supported by the columnar engine (names as in SPARQL).
+	 */
+	public enum Aggregator {
+		SUM, AVG, COUNT, MIN, MAX;
+
+		/**
+		 * @param name aggregation function, e.g. "sum"
+		 * @return aggregator or null if not supported
+		 */
+		public static Aggregator forName(String name) {
+			for (Aggregator aggregator : values()) {
+				if (aggregator.name().equalsIgnoreCase(name)) {
+					return aggregator;
+				}
+			}
+			return null;
+		}
+	}
+
+	private final List<Node[]> source;
+	private final int rowCount;
+	private final Map<String, Integer> columns = new HashMap<String, Integer>();
+	// Dimension columns (null for measure columns)
+	private final int[][] codes;
+	private final Node[][] dictionaries;
+	private final List<Map<String, Integer>> lookups;
+	// Position of each code in the order of the members (for order by)
+	private final int[][] ranks;
+	// Observations of each member (by column and code)
+	private final MemberBitmap[][] bitmaps;
+	private long indexBuildTime = 0;
+	private long indexSizeBytes = 0;
+	private int indexedMemberCount = 0;
+	// Measure columns (null for dimension columns), only one of the arrays is used per column
+	private final long[][] longValues;
+	private final BigDecimal[][] decimalValues;
+	private final double[][] doubleValues;
+	// Promoted type of the values of a measure column, null if not all values are numbers
+	private final NumericType[] types;
+
+	/**
+	 * Builds the columnar cube.
+	 * @param baseCube rows of the base cube, first row is the header
+	 * @param dimensionVariables names of the header variables of the dimension columns, all other columns are measures
+	 */
+	public ColumnarCube(List<Node[]> baseCube, Set<String> dimensionVariables) {
+		long time = System.currentTimeMillis();
+
+		this.source = baseCube;
+		Node[] header = baseCube.get(0);
+		int columnCount = header.length;
+		this.rowCount = baseCube.size() - 1;
+
+		this.codes = new int[columnCount][];
+		this.dictionaries = new Node[columnCount][];
+		this.lookups = new ArrayList<Map<String, Integer>>(columnCount);
+		this.ranks = new int[columnCount][];
+		this.bitmaps = new MemberBitmap[columnCount][];
+		this.longValues = new long[columnCount][];
+		this.decimalValues = new BigDecimal[columnCount][];
+		this.doubleValues = new double[columnCount][];
+		this.types = new NumericType[columnCount];
+
+		for (int c = 0; c < columnCount; c++) {
+			String variable = header[c].toString();
+			if (!columns.containsKey(variable)) {
+				columns.put(variable, c);
+			}
+			if (dimensionVariables.contains(variable)) {
+				encodeDimension(baseCube, c);
+			} else {
+				lookups.add(null);
+				encodeMeasure(baseCube, c);
+			}
+		}
+
+		Olap4ldUtil._log.info("Columnar cube: " + rowCount + " observations, " + columnCount
+				+ " columns built in " + (System.currentTimeMillis() - time) + " ms. Member index: "
+				+ indexedMemberCount + " bitmaps, " + indexSizeBytes + " bytes built in "
+				+ indexBuildTime + " ms.");
+	}
+
+	private void encodeDimension(List<Node[]> baseCube, int c) {
+		Map<String, Integer> lookup = new HashMap<String, Integer>();
+		List<Node> dictionary = new ArrayList<Node>();
+		int[] column = new int[rowCount];
+		for (int r = 0; r < rowCount; r++) {
+			Node member = baseCube.get(r + 1)[c];
+			String key = member.toString();
+			Integer code = lookup.get(key);
+			if (code == null) {
+				code = dictionary.size();
+				lookup.put(key, code);
+				dictionary.add(member);
+			}
+			column[r] = code;
+		}
+		final Node[] members = dictionary.toArray(new Node[dictionary.size()]);
+
+		// Rank codes by member, the same order as "order by" on the dimension
+		Integer[] sorted = new Integer[members.length];
+		for (int i = 0; i < sorted.length; i++) {
+			sorted[i] = i;
+		}
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return SparqlValues.compare(members[o1], members[o2]);
+			}
+		});
+		int[] rank = new int[members.length];
+		for (int i = 0; i < sorted.length; i++) {
+			rank[sorted[i]] = i;
+		}
+
+		codes[c] = column;
+		dictionaries[c] = members;
+		lookups.add(lookup);
+		ranks[c] = rank;
+
+		indexDimension(c);
+	}
+
+	/**
+	 * Builds the member bitmaps of a dimension column (rows in ascending order).
+	 */
+	private void indexDimension(int c) {
+		long time = System.currentTimeMillis();
+		int[] column = codes[c];
+		int memberCount = dictionaries[c].length;
+
+		int[] cardinalities = new int[memberCount];
+		for (int r = 0; r < rowCount; r++) {
+			cardinalities[column[r]]++;
+		}
+		int[][] rows = new int[memberCount][];
+		for (int code = 0; code < memberCount; code++) {
+			rows[code] = new int[cardinalities[code]];
+		}
+		int[] positions = new int[memberCount];
+		for (int r = 0; r < rowCount; r++) {
+			int code = column[r];
+			rows[code][positions[code]++] = r;
+		}
+
+		MemberBitmap[] columnBitmaps = new MemberBitmap[memberCount];
+		for (int code = 0; code < memberCount; code++) {
+			columnBitmaps[code] = new MemberBitmap(rows[code], rowCount);
+			indexSizeBytes += columnBitmaps[code].getSizeBytes();
+		}
+		bitmaps[c] = columnBitmaps;
+		indexedMemberCount += memberCount;
+		indexBuildTime += System.currentTimeMillis() - time;
+	}
+
+	private void encodeMeasure(List<Node[]> baseCube, int c) {
+		BigDecimal[] column = new BigDecimal[rowCount];
+		NumericType type = NumericType.INTEGER;
+		BigDecimal maxAbs = BigDecimal.ZERO;
+		for (int r = 0; r < rowCount; r++) {
+			Node value = baseCube.get(r + 1)[c];
+			NumericType valueType = SparqlValues.getNumericType(value);
+			BigDecimal number = valueType == null ? null : SparqlValues.parse(value);
+			if (number == null) {
+				// Not aggregated on the columnar cube
+				return;
+			}
+			type = type.promote(valueType);
+			column[r] = number;
+			maxAbs = maxAbs.max(number.abs());
+		}
+		types[c] = type;
+
+		if (type.isFloatingPoint()) {
+			double[] doubles = new double[rowCount];
+			for (int r = 0; r < rowCount; r++) {
+				doubles[r] = column[r].doubleValue();
+			}
+			doubleValues[c] = doubles;
+		} else if (type == NumericType.INTEGER
+				&& maxAbs.compareTo(BigDecimal.valueOf(Long.MAX_VALUE / Math.max(1, rowCount))) <= 0) {
+			long[] longs = new long[rowCount];
+			for (int r = 0; r < rowCount; r++) {
+				longs[r] = column[r].setScale(0, RoundingMode.DOWN).longValue();
+			}
+			longValues[c] = longs;
+		} else {
+			decimalValues[c] = column;
+		}
+	}
+
+	/**
+	 * @param baseCube
+	 * @return true, if this columnar cube has been built from the given base cube (instance)
+	 */
+	public boolean isBuiltFrom(List<Node[]> baseCube) {
+		return source == baseCube;
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * @return time in ms to build the member bitmaps
+	 */
+	public long getIndexBuildTime() {
+		return indexBuildTime;
+	}
+
+	/**
+	 * @return estimated size of the member bitmaps in bytes
+	 */
+	public long getIndexSizeBytes() {
+		return indexSizeBytes;
+	}
+
+	public int getIndexedMemberCount() {
+		return indexedMemberCount;
+	}
+
+	/**
+	 * @param column dimension column
+	 * @param code
+	 * @return bitmap of the observations having the member
+	 */
+	public MemberBitmap getBitmap(int column, int code) {
+		return bitmaps[column][code];
+	}
+
+	/**
+	 * @param variable name of the header variable in the base cube
+	 * @return index of the column or -1
+	 */
+	public int getColumn(String variable) {
+		Integer column = columns.get(variable);
+		return column == null ? -1 : column;
+	}
+
+	public boolean isDimensionColumn(int column) {
+		return codes[column] != null;
+	}
+
+	/**
+	 * @param column
+	 * @return true, if all values of the measure column are numbers
+	 */
+	public boolean isNumericColumn(int column) {
+		return codes[column] == null && types[column] != null;
+	}
+
+	/**
+	 * @param column dimension column
+	 * @param member
+	 * @return code of the member or -1 if the member does not occur in the column
+	 */
+	public int getCode(int column, Node member) {
+		Integer code = lookups.get(column).get(member.toString());
+		return code == null ? -1 : code;
+	}
+
+	/**
+	 * Evaluates slice, rollup (on the base level), dice and projection in one scan. Rows are
+	 * the same as of the corresponding OLAP-2-SPARQL query: one row per group of the group
+	 * columns, ordered by the members of the group columns, followed by the aggregated measures.
+	 *
+	 * @param groupColumns dimension columns that are neither sliced nor rolled-up to a higher level
+	 * @param diceColumns dimension columns of the dice, empty if no dice
+	 * @param diceCombinations allowed codes of the dice columns (each in the order of diceColumns), combined by OR
+	 * @param measureColumns measure columns to aggregate
+	 * @param aggregators aggregators of the measure columns
+	 * @param header header row of the result
+	 * @return result rows, first row is the header; null if the groups cannot be encoded
+	 */
+	public List<Node[]> aggregate(int[] groupColumns, int[] diceColumns,
+			int[][] diceCombinations, int[] measureColumns,
+			Aggregator[] aggregators, Node[] header) {
+
+		// Number of possible groups (mixed radix of the dictionaries)
+		long groupSpace = 1;
+		for (int g : groupColumns) {
+			int size = Math.max(1, dictionaries[g].length);
+			if (groupSpace > Long.MAX_VALUE / size) {
+				return null;
+			}
+			groupSpace *= size;
+		}
+		boolean dense = groupSpace <= MAX_DENSE_GROUPS;
+		int[] denseSlots = null;
+		Map<Long, Integer> sparseSlots = null;
+		if (dense) {
+			denseSlots = new int[(int) groupSpace];
+			Arrays.fill(denseSlots, -1);
+		} else {
+			sparseSlots = new HashMap<Long, Integer>();
+		}
+
+		// Rows to scan (null: all rows)
+		BitSet selection = null;
+		if (diceColumns.length > 0) {
+			selection = dice(diceColumns, diceCombinations);
+		}
+
+		int measureCount = measureColumns.length;
+		int capacity = 16;
+		int groupCount = 0;
+		int[] firstRows = new int[capacity];
+		MeasureAccumulator[] accumulators = new MeasureAccumulator[measureCount];
+		for (int m = 0; m < measureCount; m++) {
+			accumulators[m] = new MeasureAccumulator(measureColumns[m], aggregators[m], capacity);
+		}
+
+		int r = selection == null ? (rowCount > 0 ? 0 : -1) : selection.nextSetBit(0);
+		for (; r >= 0; r = selection == null ? (r + 1 < rowCount ? r + 1 : -1) : selection.nextSetBit(r + 1)) {
+
+			// Group
+			long key = 0;
+			for (int g : groupColumns) {
+				key = key * Math.max(1, dictionaries[g].length) + codes[g][r];
+			}
+			int slot;
+			if (dense) {
+				slot = denseSlots[(int) key];
+			} else {
+				Integer sparseSlot = sparseSlots.get(key);
+				slot = sparseSlot == null ? -1 : sparseSlot;
+			}
+			if (slot < 0) {
+				slot = groupCount++;
+				if (dense) {
+					denseSlots[(int) key] = slot;
+				} else {
+					sparseSlots.put(key, slot);
+				}
+				if (slot == capacity) {
+					capacity *= 2;
+					firstRows = Arrays.copyOf(firstRows, capacity);
+					for (MeasureAccumulator accumulator : accumulators) {
+						accumulator.grow(capacity);
+					}
+				}
+				firstRows[slot] = r;
+			}
+
+			// Aggregate
+			for (MeasureAccumulator accumulator : accumulators) {
+				accumulator.add(slot, r);
+			}
+		}
+
+		// Order by group columns
+		final int[] orderColumns = groupColumns;
+		final int[] groupFirstRows = firstRows;
+		List<Integer> order = new ArrayList<Integer>(groupCount);
+		for (int i = 0; i < groupCount; i++) {
+			order.add(i);
+		}
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				for (int g : orderColumns) {
+					int rank1 = ranks[g][codes[g][groupFirstRows[o1]]];
+					int rank2 = ranks[g][codes[g][groupFirstRows[o2]]];
+					if (rank1 != rank2) {
+						return rank1 < rank2 ? -1 : 1;
+					}
+				}
+				return 0;
+			}
+		});
+
+		List<Node[]> result = new ArrayList<Node[]>(groupCount + 1);
+		result.add(header);
+		for (Integer slot : order) {
+			Node[] row = new Node[groupColumns.length + measureCount];
+			int first = firstRows[slot];
+			for (int i = 0; i < groupColumns.length; i++) {
+				row[i] = dictionaries[groupColumns[i]][codes[groupColumns[i]][first]];
+			}
+			for (int m = 0; m < measureCount; m++) {
+				row[groupColumns.length + m] = accumulators[m].toNode(slot);
+			}
+			result.add(row);
+		}
+
+		// Without group by, SPARQL aggregates over the empty solution, too
+		if (groupColumns.length == 0 && groupCount == 0) {
+			Node[] row = new Node[measureCount];
+			for (int m = 0; m < measureCount; m++) {
+				row[m] = accumulators[m].toNode(-1);
+			}
+			result.add(row);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Evaluates a dice as OR over the combinations of AND over the member bitmaps.
+	 * @return selected rows
+	 */
+	private BitSet dice(int[] diceColumns, int[][] diceCombinations) {
+		BitSet selection = new BitSet(rowCount);
+		for (int[] combination : diceCombinations) {
+			// Start with the smallest bitmap
+			int smallest = 0;
+			for (int d = 1; d < diceColumns.length; d++) {
+				if (bitmaps[diceColumns[d]][combination[d]].getCardinality() < bitmaps[diceColumns[smallest]][combination[smallest]]
+						.getCardinality()) {
+					smallest = d;
+				}
+			}
+			MemberBitmap first = bitmaps[diceColumns[smallest]][combination[smallest]];
+			if (diceColumns.length == 1) {
+				first.orInto(selection);
+				continue;
+			}
+			BitSet rows = first.toBitSet();
+			for (int d = 0; d < diceColumns.length && !rows.isEmpty(); d++) {
+				if (d != smallest) {
+					bitmaps[diceColumns[d]][combination[d]].andInto(rows);
+				}
+			}
+			selection.or(rows);
+		}
+		return selection;
+	}
+
+	/**
+	 * Aggregates one measure column per group, in the storage type of the column.
+	 */
+	private class MeasureAccumulator {
+		private final int column;
+		private final Aggregator aggregator;
+		private long[] counts;
+		private long[] longSums;
+		private BigDecimal[] decimalSums;
+		private double[] doubleSums;
+		// Row of the minimum or maximum of a group
+		private int[] rows;
+
+		private MeasureAccumulator(int column, Aggregator aggregator, int capacity) {
+			this.column = column;
+			this.aggregator = aggregator;
+			this.counts = new long[capacity];
+			switch (aggregator) {
+			case COUNT:
+				break;
+			case MIN:
+			case MAX:
+				rows = new int[capacity];
+				break;
+			default:
+				if (longValues[column] != null) {
+					longSums = new long[capacity];
+				} else if (decimalValues[column] != null) {
+					decimalSums = new BigDecimal[capacity];
+				} else {
+					doubleSums = new double[capacity];
+				}
+			}
+		}
+
+		private void grow(int capacity) {
+			counts = Arrays.copyOf(counts, capacity);
+			if (rows != null) {
+				rows = Arrays.copyOf(rows, capacity);
+			}
+			if (longSums != null) {
+				longSums = Arrays.copyOf(longSums, capacity);
+			}
+			if (decimalSums != null) {
+				decimalSums = Arrays.copyOf(decimalSums, capacity);
+			}
+			if (doubleSums != null) {
+				doubleSums = Arrays.copyOf(doubleSums, capacity);
+			}
+		}
+
+		private void add(int slot, int row) {
+			long count = counts[slot]++;
+			if (rows != null) {
+				if (count == 0) {
+					rows[slot] = row;
+				} else {
+					int compared = compareRows(row, rows[slot]);
+					if (aggregator == Aggregator.MIN ? compared < 0 : compared > 0) {
+						rows[slot] = row;
+					}
+				}
+			} else if (longSums != null) {
+				longSums[slot] += longValues[column][row];
+			} else if (decimalSums != null) {
+				BigDecimal sum = decimalSums[slot];
+				decimalSums[slot] = sum == null ? decimalValues[column][row] : sum.add(decimalValues[column][row]);
+			} else if (doubleSums != null) {
+				doubleSums[slot] += doubleValues[column][row];
+			}
+		}
+
+		private int compareRows(int row1, int row2) {
+			if (longValues[column] != null) {
+				long value1 = longValues[column][row1];
+				long value2 = longValues[column][row2];
+				return value1 < value2 ? -1 : (value1 == value2 ? 0 : 1);
+			}
+			if (decimalValues[column] != null) {
+				return decimalValues[column][row1].compareTo(decimalValues[column][row2]);
+			}
+			return Double.compare(doubleValues[column][row1], doubleValues[column][row2]);
+		}
+
+		/**
+		 * @param slot group or -1 for the aggregate over the empty solution
+		 * @return aggregated value as SPARQL computes it
+		 */
+		private Node toNode(int slot) {
+			long count = slot < 0 ? 0 : counts[slot];
+			NumericType type = types[column];
+			switch (aggregator) {
+			case COUNT:
+				return new Literal(Long.toString(count), SparqlValues.XSD_INTEGER);
+			case MIN:
+			case MAX:
+				// The value itself, as in SPARQL
+				return count == 0 ? NULL_RESOURCE : source.get(rows[slot] + 1)[column];
+			default:
+				break;
+			}
+			if (count == 0) {
+				return new Literal("0", SparqlValues.XSD_INTEGER);
+			}
+			if (doubleSums != null) {
+				double sum = doubleSums[slot];
+				return SparqlValues.toNode(aggregator == Aggregator.AVG ? sum / count : sum, type);
+			}
+			BigDecimal sum = longSums != null ? BigDecimal.valueOf(longSums[slot]) : decimalSums[slot];
+			if (aggregator == Aggregator.AVG) {
+				return SparqlValues.toNode(SparqlValues.divide(sum, count), NumericType.DECIMAL);
+			}
+			return SparqlValues.toNode(sum, type);
+		}
+	}
+}
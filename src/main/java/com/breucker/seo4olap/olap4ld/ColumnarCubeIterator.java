@@ -0,0 +1,364 @@
+package com.breucker.seo4olap.olap4ld;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.olap4j.OlapException;
+import org.olap4j.driver.olap4ld.Olap4ldUtil;
+import org.olap4j.driver.olap4ld.linkeddata.LogicalOlapOperatorQueryPlanVisitor;
+import org.olap4j.driver.olap4ld.linkeddata.PhysicalOlapIterator;
+import org.olap4j.driver.olap4ld.linkeddata.QueryException;
+import org.olap4j.driver.olap4ld.linkeddata.Restrictions;
+import org.semanticweb.yars.nx.Node;
+import org.semanticweb.yars.nx.Resource;
+import org.semanticweb.yars.nx.Variable;
+
+/**
+ * Alternative to the OLAP-2-SPARQL algorithm over a base cube: slice, rollup, dice and projection
+ * are evaluated as scans of the ColumnarCube of the engine instead of a SPARQL query.
+ *
+ * Only the base level of each dimension and the aggregators of ColumnarCube.Aggregator are
+ * supported. For every other query (and if the columnar cube does not contain the needed
+ * columns), the wrapped Olap2SparqlAlgorithmSesameIterator is used. Metadata is always taken
+ * from the wrapped iterator, so that both produce the same results.
+ *
+ * @author Daniel Breucker
+ *
+ */
+public class ColumnarCubeIterator implements PhysicalOlapIterator {
+
+	private final Olap2SparqlAlgorithmSesameIterator fallback;
+	private final PhysicalOlapIterator inputiterator;
+	private final OlapSesameEngine engine;
+
+	// Dimensions to group by (in the order of the result) and dimensions of the dice
+	private final List<Node> groupDimensions = new ArrayList<Node>();
+	private final List<Node> diceDimensions = new ArrayList<Node>();
+	private final List<Node[]> diceMembers = new ArrayList<Node[]>();
+	// Measures: column variable in the base cube, result variable, aggregator
+	private final List<String> measureVariables = new ArrayList<String>();
+	private final List<Variable> resultVariables = new ArrayList<Variable>();
+	private final List<ColumnarCube.Aggregator> aggregators = new ArrayList<ColumnarCube.Aggregator>();
+	private boolean supported = true;
+
+	private Iterator<?> outputiterator;
+	private boolean useFallback = false;
+
+	public ColumnarCubeIterator(Olap2SparqlAlgorithmSesameIterator fallback,
+			PhysicalOlapIterator inputiterator, OlapSesameEngine engine,
+			List<Node[]> slicesrollups, List<Integer> levelheights,
+			List<List<Node[]>> membercombinations,
+			List<Node[]> hierarchysignature) {
+		this.fallback = fallback;
+		this.inputiterator = inputiterator;
+		this.engine = engine;
+
+		try {
+			evaluateSlicesRollups(slicesrollups, levelheights);
+			evaluateDices(membercombinations, hierarchysignature);
+			evaluateProjections();
+		} catch (OlapException e) {
+			Olap4ldUtil._log.warning("Columnar evaluation not possible: " + e.getMessage());
+			supported = false;
+		}
+	}
+
+	/**
+	 * Group by all dimensions not sliced; only the base level (level height 0).
+	 */
+	private void evaluateSlicesRollups(List<Node[]> slicesrollups,
+			List<Integer> levelheights) {
+		Map<String, Integer> map = Olap4ldLinkedDataUtil
+				.getNodeResultFields(slicesrollups.get(0));
+		for (int i = 1; i < slicesrollups.size(); i++) {
+			if (levelheights.get(i) != 0) {
+				supported = false;
+			}
+			groupDimensions.add(slicesrollups.get(i)[map
+					.get("?DIMENSION_UNIQUE_NAME")]);
+		}
+	}
+
+	/**
+	 * Dice on members of the base level only.
+	 */
+	private void evaluateDices(List<List<Node[]>> membercombinations,
+			List<Node[]> hierarchysignature) {
+		if (membercombinations == null || membercombinations.isEmpty()
+				|| hierarchysignature == null || hierarchysignature.isEmpty()) {
+			return;
+		}
+		Map<String, Integer> map = Olap4ldLinkedDataUtil
+				.getNodeResultFields(membercombinations.get(0).get(0));
+		Map<String, Integer> signaturemap = Olap4ldLinkedDataUtil
+				.getNodeResultFields(hierarchysignature.get(0));
+
+		// We assume that each position has the same dimensions (as OLAP-2-SPARQL)
+		for (int i = 1; i < membercombinations.get(0).size(); i++) {
+			diceDimensions.add(membercombinations.get(0).get(i)[map
+					.get("?DIMENSION_UNIQUE_NAME")]);
+		}
+
+		for (List<Node[]> membercombination : membercombinations) {
+			Node[] members = new Node[diceDimensions.size()];
+			for (int i = 1; i < membercombination.size(); i++) {
+				int levelnumber = new Integer(membercombination.get(i)[map
+						.get("?LEVEL_NUMBER")].toString());
+				int levelmaxnumber = new Integer(hierarchysignature.get(i)[signaturemap
+						.get("?HIERARCHY_MAX_LEVEL_NUMBER")].toString());
+				if (levelmaxnumber - levelnumber != 0) {
+					supported = false;
+				}
+				members[i - 1] = membercombination.get(i)[map
+						.get("?MEMBER_UNIQUE_NAME")];
+			}
+			diceMembers.add(members);
+		}
+	}
+
+	/**
+	 * Measures as projected by the OLAP-2-SPARQL algorithm.
+	 */
+	private void evaluateProjections() throws OlapException {
+		Restrictions restrictions = new Restrictions();
+		List<Node[]> cubes = fallback.getCubes(restrictions);
+		List<Node[]> newmeasures = fallback.getMeasures(restrictions);
+
+		Map<String, Integer> cubemap = Olap4ldLinkedDataUtil
+				.getNodeResultFields(cubes.get(0));
+		Map<String, Integer> measuremap = Olap4ldLinkedDataUtil
+				.getNodeResultFields(newmeasures.get(0));
+		String cubename = cubes.get(1)[cubemap.get("?CUBE_NAME")].toString();
+
+		for (int i = 1; i < newmeasures.size(); i++) {
+			Node[] measure = newmeasures.get(i);
+			String aggregator = measure[measuremap.get("?MEASURE_AGGREGATOR")]
+					.toString().replace("http://purl.org/olap#", "");
+			ColumnarCube.Aggregator columnarAggregator = ColumnarCube.Aggregator
+					.forName(aggregator);
+			if (columnarAggregator == null) {
+				// Calculated measures and GROUP_CONCAT
+				supported = false;
+				return;
+			}
+			String measurePropertyVariableString = measure[measuremap
+					.get("?MEASURE_UNIQUE_NAME")].toString()
+					.replace("AGGFUNC" + aggregator.toUpperCase(), "")
+					.replace(cubename, "");
+			measureVariables.add(Olap4ldLinkedDataUtil.makeUriToVariable(
+					new Resource(measurePropertyVariableString)).toString());
+			resultVariables.add(new Variable(Olap4ldLinkedDataUtil
+					.makeUriToVariable(measure[measuremap
+							.get("?MEASURE_UNIQUE_NAME")]).toString() + "_new"));
+			aggregators.add(columnarAggregator);
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (outputiterator == null) {
+			try {
+				init();
+			} catch (Exception e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+			}
+		}
+		return outputiterator.hasNext();
+	}
+
+	@Override
+	public Object next() {
+		if (outputiterator == null) {
+			try {
+				init();
+			} catch (Exception e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+			}
+		}
+		return outputiterator.next();
+	}
+
+	@Override
+	public void remove() {
+		// nothing to do
+	}
+
+	@Override
+	public void init() throws Exception {
+		List<Node[]> result = null;
+		if (supported) {
+			// Makes sure the base cube has been derived
+			this.inputiterator.init();
+			result = evaluate();
+		}
+		if (result == null) {
+			useFallback = true;
+			fallback.init();
+			this.outputiterator = fallback;
+			return;
+		}
+		useFallback = false;
+		this.outputiterator = result.iterator();
+	}
+
+	/**
+	 * Evaluates the query on the columnar cube.
+	 * @return result or null, if the columnar cube cannot answer the query
+	 */
+	private List<Node[]> evaluate() throws OlapException {
+		List<Node[]> dimensions = inputiterator.getDimensions(new Restrictions());
+		ColumnarCube cube = engine.getColumnarCube(dimensions);
+		if (cube == null) {
+			return null;
+		}
+
+		List<Node> header = new ArrayList<Node>();
+		int[] groupColumns = new int[groupDimensions.size()];
+		for (int i = 0; i < groupColumns.length; i++) {
+			String variable = Olap4ldLinkedDataUtil.makeUriToVariable(
+					groupDimensions.get(i)).toString();
+			groupColumns[i] = cube.getColumn(variable);
+			if (groupColumns[i] < 0 || !cube.isDimensionColumn(groupColumns[i])) {
+				return null;
+			}
+			header.add(new Variable(variable + "0"));
+		}
+
+		int[] diceColumns = new int[diceDimensions.size()];
+		for (int i = 0; i < diceColumns.length; i++) {
+			diceColumns[i] = cube.getColumn(Olap4ldLinkedDataUtil
+					.makeUriToVariable(diceDimensions.get(i)).toString());
+			if (diceColumns[i] < 0 || !cube.isDimensionColumn(diceColumns[i])) {
+				return null;
+			}
+		}
+		List<int[]> diceCombinations = new ArrayList<int[]>();
+		for (Node[] members : diceMembers) {
+			int[] combination = new int[members.length];
+			boolean contained = true;
+			for (int i = 0; i < members.length && contained; i++) {
+				combination[i] = cube.getCode(diceColumns[i], members[i]);
+				contained = combination[i] >= 0;
+			}
+			// Members not in the cube cannot match any observation
+			if (contained) {
+				diceCombinations.add(combination);
+			}
+		}
+
+		int[] measureColumns = new int[measureVariables.size()];
+		for (int i = 0; i < measureColumns.length; i++) {
+			measureColumns[i] = cube.getColumn(measureVariables.get(i));
+			if (measureColumns[i] < 0 || !cube.isNumericColumn(measureColumns[i])) {
+				return null;
+			}
+			header.add(resultVariables.get(i));
+		}
+
+		long time = System.currentTimeMillis();
+		List<Node[]> result = cube.aggregate(groupColumns, diceColumns,
+				diceCombinations.toArray(new int[diceCombinations.size()][]),
+				measureColumns,
+				aggregators.toArray(new ColumnarCube.Aggregator[aggregators.size()]),
+				header.toArray(new Node[header.size()]));
+		if (result != null) {
+			Olap4ldUtil._log.config("Columnar scan of " + cube.getRowCount() + " observations: "
+					+ (result.size() - 1) + " rows in " + (System.currentTimeMillis() - time) + " ms.");
+		}
+		return result;
+	}
+
+	/**
+	 * Closes the wrapped iterator (and with it the input iterator).
+	 */
+	@Override
+	public void close() throws Exception {
+		this.outputiterator = null;
+		this.useFallback = false;
+		fallback.close();
+	}
+
+	@Override
+	public void accept(LogicalOlapOperatorQueryPlanVisitor v)
+			throws QueryException {
+		// Needed in case we have as arguments further exec iterators.
+		;
+	}
+
+	/**
+	 * @return the SPARQL query of the fallback or null, if evaluated on the columnar cube
+	 */
+	public String getQuery() {
+		return useFallback ? fallback.getQuery() : null;
+	}
+
+	public String toString() {
+		if (useFallback) {
+			return fallback.toString();
+		}
+		return "Columnar scan (" + groupDimensions + ", " + diceMembers.size() + " dice combinations, "
+				+ aggregators + " " + measureVariables + ") with fallback " + fallback;
+	}
+
+	@Override
+	public List<Node[]> getCubes(Restrictions restrictions)
+			throws OlapException {
+		return fallback.getCubes(restrictions);
+	}
+
+	@Override
+	public List<Node[]> getDimensions(Restrictions restrictions)
+			throws OlapException {
+		return fallback.getDimensions(restrictions);
+	}
+
+	@Override
+	public List<Node[]> getMeasures(Restrictions restrictions)
+			throws OlapException {
+		return fallback.getMeasures(restrictions);
+	}
+
+	@Override
+	public List<Node[]> getHierarchies(Restrictions restrictions)
+			throws OlapException {
+		return fallback.getHierarchies(restrictions);
+	}
+
+	@Override
+	public List<Node[]> getLevels(Restrictions restrictions)
+			throws OlapException {
+		return fallback.getLevels(restrictions);
+	}
+
+	@Override
+	public List<Node[]> getMembers(Restrictions restrictions)
+			throws OlapException {
+		return fallback.getMembers(restrictions);
+	}
+
+	/**
+	 * @return names of the header variables of the dimension columns of the base cube
+	 */
+	static Set<String> getDimensionVariables(List<Node[]> dimensions) {
+		Set<String> variables = new HashSet<String>();
+		Map<String, Integer> dimensionmap = Olap4ldLinkedDataUtil
+				.getNodeResultFields(dimensions.get(0));
+		for (int i = 1; i < dimensions.size(); i++) {
+			Node dimensionProperty = dimensions.get(i)[dimensionmap
+					.get("?DIMENSION_UNIQUE_NAME")];
+			if (dimensionProperty.toString().equals(
+					Olap4ldLinkedDataUtil.MEASURE_DIMENSION_NAME)) {
+				continue;
+			}
+			variables.add(Olap4ldLinkedDataUtil.makeUriToVariable(
+					dimensionProperty).toString());
+		}
+		return variables;
+	}
+}
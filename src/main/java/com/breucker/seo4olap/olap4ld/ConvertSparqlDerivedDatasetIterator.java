@@ -1678,8 +1678,14 @@ public class ConvertSparqlDerivedDatasetIterator implements
 
 	@Override
 	public void close() throws Exception {
-		// TODO Auto-generated method stub
-
+		// Can be initialised again afterwards (compiled plans are reused).
+		// The derived dataset stays loaded.
+		this.results = null;
+		this.outputiterator = null;
+		inputiterator1.close();
+		if (inputiterator2 != null && inputiterator2 != inputiterator1) {
+			inputiterator2.close();
+		}
 	}
 
 	public String toString() {
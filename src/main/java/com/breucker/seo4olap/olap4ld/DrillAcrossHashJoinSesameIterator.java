@@ -0,0 +1,255 @@
+package com.breucker.seo4olap.olap4ld;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.olap4j.OlapException;
+import org.olap4j.driver.olap4ld.Olap4ldUtil;
+import org.olap4j.driver.olap4ld.linkeddata.PhysicalOlapIterator;
+import org.olap4j.driver.olap4ld.linkeddata.Restrictions;
+import org.semanticweb.yars.nx.Node;
+import org.semanticweb.yars.nx.Resource;
+
+/**
+ * Drill-across as hash join of the input iterators, keyed on the tuple of dimension members.
+ *
+ * Each input is read once. The hash table is built on the smaller input and probed with the
+ * other one. Results are the same as of DrillAcrossNestedLoopJoinSesameIterator (also in the
+ * same order): each row of the first input is joined with the first row of the second input
+ * having the same members, and if all measures are the same, unmatched rows of both inputs are
+ * added (full outer join).
+ *
+ * @author Daniel Breucker
+ *
+ */
+public class DrillAcrossHashJoinSesameIterator extends DrillAcrossSesameIterator {
+
+	public DrillAcrossHashJoinSesameIterator(PhysicalOlapIterator inputiterator1,
+			PhysicalOlapIterator inputiterator2) {
+		super(inputiterator1, inputiterator2);
+	}
+
+	@Override
+	protected void createData(PhysicalOlapIterator root1,
+			PhysicalOlapIterator root2) {
+		List<Node[]> results = new ArrayList<Node[]>();
+
+		Restrictions emptyrestrictions = new Restrictions();
+		try {
+			List<Node[]> root1_dimensions = root1
+					.getDimensions(emptyrestrictions);
+			List<Node[]> root2_dimensions = root2
+					.getDimensions(emptyrestrictions);
+
+			if (!areAllDimensionsTheSame(root1_dimensions, root2_dimensions)) {
+				throw new UnsupportedOperationException(
+						"Drill-across only over equally-structured cubes!");
+			}
+
+			List<Node[]> root1_measures = root1.getMeasures(emptyrestrictions);
+			List<Node[]> root2_measures = root2.getMeasures(emptyrestrictions);
+
+			// We check if all measures are the same
+			boolean allmeasuresthesame = areAllMeasuresTheSame(root1_measures,
+					root2_measures);
+
+			// Number of member columns (without measure dimension and header)
+			int keysize1 = root1_dimensions.size() - 2;
+			int keysize2 = root2_dimensions.size() - 2;
+
+			List<Node[]> rows1 = readAll(root1);
+			List<Node[]> rows2 = readAll(root2);
+
+			// For each row of root1 the first row of root2 with the same members
+			Node[][] partners = new Node[rows1.size()][];
+			// Keys contained in both inputs
+			Set<List<String>> joinedkeys = new HashSet<List<String>>();
+
+			if (rows1.size() <= rows2.size()) {
+				// Build on root1, probe with root2
+				Map<List<String>, List<Integer>> table = new HashMap<List<String>, List<Integer>>();
+				for (int i = 0; i < rows1.size(); i++) {
+					List<String> key = createKey(rows1.get(i), keysize1);
+					List<Integer> indexes = table.get(key);
+					if (indexes == null) {
+						indexes = new ArrayList<Integer>(1);
+						table.put(key, indexes);
+					}
+					indexes.add(i);
+				}
+				for (Node[] row2 : rows2) {
+					List<String> key = createKey(row2, keysize2);
+					List<Integer> indexes = table.get(key);
+					if (indexes == null) {
+						continue;
+					}
+					joinedkeys.add(key);
+					for (Integer index : indexes) {
+						if (partners[index] == null) {
+							partners[index] = row2;
+						}
+					}
+				}
+			} else {
+				// Build on root2, probe with root1
+				Map<List<String>, Node[]> table = new HashMap<List<String>, Node[]>();
+				for (Node[] row2 : rows2) {
+					List<String> key = createKey(row2, keysize2);
+					if (!table.containsKey(key)) {
+						table.put(key, row2);
+					}
+				}
+				for (int i = 0; i < rows1.size(); i++) {
+					List<String> key = createKey(rows1.get(i), keysize1);
+					partners[i] = table.get(key);
+					if (partners[i] != null) {
+						joinedkeys.add(key);
+					}
+				}
+			}
+
+			// Inner join, in the order of root1
+			boolean firstroot1 = true;
+			for (int j = 0; j < rows1.size(); j++) {
+				Node[] root1_node = rows1.get(j);
+				Node[] root2_node = partners[j];
+				if (root2_node == null) {
+					continue;
+				}
+				List<Node> result = new ArrayList<Node>();
+
+				// Add dimensions
+				for (int i = 0; i < keysize1; i++) {
+					result.add(root1_node[i]);
+				}
+
+				if (allmeasuresthesame) {
+					// Concat measures of both cubes
+					for (int i = 0; i < root1_measures.size() - 1; i++) {
+						Resource newnode;
+						// Here, header is different, we do not want to concat.
+						if (firstroot1 == true) {
+							newnode = new Resource(root1_node[keysize1 + i]
+									.toString());
+							firstroot1 = false;
+						} else {
+							newnode = new Resource(root1_node[keysize1 + i]
+									+ " / "
+									+ root2_node[keysize1 + i]);
+						}
+						result.add(newnode);
+					}
+				} else {
+					// Add measures of cube one
+					addMeasures(result, root1_node, keysize1, root1_measures.size() - 1, 0);
+					// Add measures of cube two
+					addMeasures(result, root2_node, keysize1 + root1_measures.size() - 1,
+							root2_measures.size() - 1, root1_measures.size() - 1);
+				}
+				results.add(result.toArray(new Node[1]));
+			}
+
+			// Outer join
+			if (allmeasuresthesame) {
+
+				// Left outer
+				for (int j = 0; j < rows1.size(); j++) {
+					if (partners[j] != null) {
+						continue;
+					}
+					Node[] root1_node = rows1.get(j);
+					List<Node> result = new ArrayList<Node>();
+					for (int i = 0; i < keysize1; i++) {
+						result.add(root1_node[i]);
+					}
+					addMeasures(result, root1_node, keysize1, root1_measures.size() - 1, 0);
+					results.add(result.toArray(new Node[1]));
+				}
+
+				// Right outer
+				for (Node[] root2_node : rows2) {
+					if (joinedkeys.contains(createKey(root2_node, keysize2))) {
+						continue;
+					}
+					List<Node> result = new ArrayList<Node>();
+					for (int i = 0; i < keysize2; i++) {
+						result.add(root2_node[i]);
+					}
+					addMeasures(result, root2_node, keysize1 + root1_measures.size() - 1,
+							root2_measures.size() - 1, root1_measures.size() - 1);
+					results.add(result.toArray(new Node[1]));
+				}
+			}
+
+			Olap4ldUtil._log.config("Hash join: " + rows1.size() + " x " + rows2.size()
+					+ " rows, " + results.size() + " results.");
+
+		} catch (OlapException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+
+		this.results = results;
+	}
+
+	@Override
+	public String toString() {
+		return "Hash-Join over (" + inputiterator1 + "," + inputiterator2 + ")";
+	}
+
+	/**
+	 * For now, we assume the same ordering of dimensions (probably the case
+	 * due to the query, anyway).
+	 */
+	private boolean areAllDimensionsTheSame(List<Node[]> root1_dimensions,
+			List<Node[]> root2_dimensions) {
+		if (root1_dimensions.size() != root2_dimensions.size()) {
+			return false;
+		}
+		Map<String, Integer> dimensionmap = Olap4ldLinkedDataUtil
+				.getNodeResultFields(root1_dimensions.get(0));
+		Integer uniquenamefield = dimensionmap.get("?DIMENSION_UNIQUE_NAME");
+		for (int i = 0; i < root1_dimensions.size(); i++) {
+			// XXX: Maybe consider reasoning
+			if (!root1_dimensions.get(i)[uniquenamefield].toString().equals(
+					root2_dimensions.get(i)[uniquenamefield].toString())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the measure columns [start, start + count) of the row, shifted by offset
+	 * (the measures of cube two start after the measures of cube one in the result,
+	 * but directly after the dimensions in the row of cube two).
+	 */
+	private static void addMeasures(List<Node> result, Node[] row, int start,
+			int count, int offset) {
+		for (int i = start; i < start + count; i++) {
+			result.add(row[i - offset]);
+		}
+	}
+
+	private static List<String> createKey(Node[] row, int keysize) {
+		String[] key = new String[keysize];
+		for (int i = 0; i < keysize; i++) {
+			key[i] = row[i].toString();
+		}
+		return Arrays.asList(key);
+	}
+
+	private static List<Node[]> readAll(PhysicalOlapIterator root) {
+		List<Node[]> rows = new ArrayList<Node[]>();
+		while (root.hasNext()) {
+			rows.add((Node[]) root.next());
+		}
+		return rows;
+	}
+
+}
@@ -0,0 +1,317 @@
+package com.breucker.seo4olap.olap4ld;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+import org.olap4j.driver.olap4ld.Olap4ldUtil;
+import org.openrdf.rio.RDFFormat;
+
+/**
+ * Local cache of dereferenced Linked Data documents.
+ *
+ * For every uri, an index entry stores the redirect target (location), and for every
+ * information uri the RDF format, ETag and Last-Modified header and the hash of the body.
+ * Bodies are stored content-addressed, so documents with the same content are stored once.
+ *
+ * Additionally, a local stand-in directory can serve documents instead of the web: the uri
+ * http://host/path is looked up as file localDir/host/path (also with .rdf, .ttl or .nt appended).
+ * In offline mode, only the stand-in directory and the cache are used.
+ *
+ * Configured with the system properties seo4olap.ldcache.dir, seo4olap.ldcache.localDir
+ * and seo4olap.ldcache.offline.
+ *
+ * @author Daniel Breucker
+ *
+ */
+class LinkedDataCache {
+
+	private static final String[] LOCAL_FILE_EXTENSIONS = new String[] { "", ".rdf", ".ttl", ".nt" };
+
+	private final File indexDir;
+	private final File contentDir;
+	private final File localDir;
+	private final boolean offline;
+
+	/**
+	 * @param cacheDir directory of the cache, null to disable caching
+	 * @param localDir local stand-in directory, may be null
+	 * @param offline if true, no network requests are made
+	 */
+	LinkedDataCache(File cacheDir, File localDir, boolean offline) {
+		if (cacheDir != null) {
+			this.indexDir = new File(cacheDir, "index");
+			this.contentDir = new File(cacheDir, "content");
+			this.indexDir.mkdirs();
+			this.contentDir.mkdirs();
+		} else {
+			this.indexDir = null;
+			this.contentDir = null;
+		}
+		this.localDir = localDir;
+		this.offline = offline;
+	}
+
+	static LinkedDataCache fromSystemProperties() {
+		String cacheDir = System.getProperty("seo4olap.ldcache.dir");
+		String localDir = System.getProperty("seo4olap.ldcache.localDir");
+		return new LinkedDataCache(cacheDir != null ? new File(cacheDir) : null,
+				localDir != null ? new File(localDir) : null,
+				Boolean.getBoolean("seo4olap.ldcache.offline"));
+	}
+
+	boolean isOffline() {
+		return offline;
+	}
+
+	/**
+	 * Returns the location (information uri) of a uri, from the cache if available.
+	 * Without network, the location is the uri without fragment.
+	 * @param noninformationuri
+	 * @return location
+	 * @throws IOException
+	 */
+	URL resolveLocation(URL noninformationuri) throws IOException {
+		URL informationuri = getLocation(noninformationuri);
+		if (informationuri != null) {
+			return informationuri;
+		}
+		URL withoutFragment = new URL(noninformationuri.getProtocol(), noninformationuri.getHost(),
+				noninformationuri.getPort(), noninformationuri.getFile());
+		if (offline || getLocalDocument(withoutFragment) != null) {
+			return withoutFragment;
+		}
+		informationuri = Olap4ldLinkedDataUtil.askForLocation(noninformationuri);
+		putLocation(noninformationuri, informationuri);
+		return informationuri;
+	}
+
+	/**
+	 * Returns the cached location (information uri) of a uri or null.
+	 * @param noninformationuri
+	 * @return location
+	 */
+	URL getLocation(URL noninformationuri) {
+		Properties entry = readEntry("location-" + noninformationuri);
+		if (entry == null) {
+			return null;
+		}
+		try {
+			return new URL(entry.getProperty("location"));
+		} catch (MalformedURLException e) {
+			return null;
+		}
+	}
+
+	void putLocation(URL noninformationuri, URL informationuri) {
+		Properties entry = new Properties();
+		entry.setProperty("uri", noninformationuri.toString());
+		entry.setProperty("location", informationuri.toString());
+		writeEntry("location-" + noninformationuri, entry);
+	}
+
+	/**
+	 * Returns the document from the local stand-in directory or null.
+	 * @param informationuri
+	 * @return document
+	 */
+	Document getLocalDocument(URL informationuri) {
+		if (localDir == null) {
+			return null;
+		}
+		String path = informationuri.getPath();
+		if (path.equals("") || path.endsWith("/")) {
+			path += "index";
+		}
+		for (String extension : LOCAL_FILE_EXTENSIONS) {
+			File file = new File(new File(localDir, informationuri.getHost()), path + extension);
+			if (file.isFile()) {
+				RDFFormat format = RDFFormat.forFileName(file.getName(), RDFFormat.RDFXML);
+				return new Document(informationuri, file, format, null, null);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the cached document or null.
+	 * @param informationuri
+	 * @return document
+	 */
+	Document getDocument(URL informationuri) {
+		Properties entry = readEntry("document-" + informationuri);
+		if (entry == null) {
+			return null;
+		}
+		File body = new File(contentDir, entry.getProperty("content"));
+		RDFFormat format = RDFFormat.valueOf(entry.getProperty("format"));
+		if (!body.isFile() || format == null) {
+			return null;
+		}
+		return new Document(informationuri, body, format, entry.getProperty("etag"), entry.getProperty("lastModified"));
+	}
+
+	/**
+	 * Stores the body of a document. Returns the cached document, or null if caching is disabled.
+	 * The body stream is not closed.
+	 * @param informationuri
+	 * @param format
+	 * @param etag
+	 * @param lastModified
+	 * @param body
+	 * @return document
+	 * @throws IOException
+	 */
+	Document putDocument(URL informationuri, RDFFormat format, String etag, String lastModified, InputStream body) throws IOException {
+		if (contentDir == null) {
+			return null;
+		}
+		MessageDigest digest = newDigest();
+		File tmp = File.createTempFile("body", ".tmp", contentDir);
+		OutputStream out = new FileOutputStream(tmp);
+		try {
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = body.read(buffer)) != -1) {
+				digest.update(buffer, 0, n);
+				out.write(buffer, 0, n);
+			}
+		} finally {
+			out.close();
+		}
+		String contentHash = toHex(digest.digest());
+		File content = new File(contentDir, contentHash);
+		if (content.exists()) {
+			tmp.delete();
+		} else if (!tmp.renameTo(content)) {
+			tmp.delete();
+			throw new IOException("Could not store cached document of " + informationuri);
+		}
+
+		Properties entry = new Properties();
+		entry.setProperty("uri", informationuri.toString());
+		entry.setProperty("content", contentHash);
+		entry.setProperty("format", format.getName());
+		if (etag != null) {
+			entry.setProperty("etag", etag);
+		}
+		if (lastModified != null) {
+			entry.setProperty("lastModified", lastModified);
+		}
+		writeEntry("document-" + informationuri, entry);
+		Olap4ldUtil._log.config("Cached document: " + informationuri + " as " + contentHash);
+		return new Document(informationuri, content, format, etag, lastModified);
+	}
+
+	private Properties readEntry(String key) {
+		if (indexDir == null) {
+			return null;
+		}
+		File file = new File(indexDir, hash(key) + ".properties");
+		if (!file.isFile()) {
+			return null;
+		}
+		Properties entry = new Properties();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			entry.load(in);
+			return entry;
+		} catch (IOException e) {
+			Olap4ldUtil._log.warning("Failed to read cache entry " + file + ". Message: " + e.getMessage());
+			return null;
+		} finally {
+			try {
+				if (in != null) {
+					in.close();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void writeEntry(String key, Properties entry) {
+		if (indexDir == null) {
+			return;
+		}
+		File file = new File(indexDir, hash(key) + ".properties");
+		OutputStream out = null;
+		try {
+			// write to temporary file first, so that readers never see half written entries
+			File tmp = File.createTempFile("entry", ".tmp", indexDir);
+			out = new FileOutputStream(tmp);
+			entry.store(out, null);
+			out.close();
+			out = null;
+			if (!tmp.renameTo(file)) {
+				file.delete();
+				if (!tmp.renameTo(file)) {
+					tmp.delete();
+				}
+			}
+		} catch (IOException e) {
+			Olap4ldUtil._log.warning("Failed to write cache entry " + file + ". Message: " + e.getMessage());
+		} finally {
+			try {
+				if (out != null) {
+					out.close();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private static String hash(String key) {
+		try {
+			return toHex(newDigest().digest(key.getBytes("UTF-8")));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder();
+		for (byte b : bytes) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * A document stored in the cache or in the local stand-in directory.
+	 */
+	static class Document {
+		final URL informationuri;
+		final File file;
+		final RDFFormat format;
+		final String etag;
+		final String lastModified;
+
+		Document(URL informationuri, File file, RDFFormat format, String etag, String lastModified) {
+			this.informationuri = informationuri;
+			this.file = file;
+			this.format = format;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+	}
+}
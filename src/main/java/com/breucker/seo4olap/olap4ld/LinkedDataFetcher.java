@@ -0,0 +1,303 @@
+package com.breucker.seo4olap.olap4ld;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import org.olap4j.driver.olap4ld.Olap4ldUtil;
+import org.openrdf.model.Statement;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.StatementCollector;
+
+/**
+ * Dereferences Linked Data URIs and parses the returned documents into statements.
+ * Documents are served from the LinkedDataCache where possible.
+ * Fetching and parsing run on a bounded thread pool, with an additional limit of
+ * concurrent requests per host. The threads are created by the thread factory of the engine
+ * (see OlapSesameEngine.setCrawlerThreadFactory()). The statements are not added to any repository,
+ * this is left to the caller (OlapSesameEngine commits them in batches).
+ *
+ * @author Daniel Breucker
+ *
+ */
+class LinkedDataFetcher {
+
+	private static final int CONNECTION_TIMEOUT = 40000;
+
+	private final OlapSesameEngine engine;
+	private final LinkedDataCache cache;
+	private final int maxPerHost;
+	private final ExecutorService executor;
+	private final ConcurrentHashMap<String, Semaphore> hostPermits = new ConcurrentHashMap<String, Semaphore>();
+	//informationuris fetched (or being fetched) by this fetcher, failed fetches are removed
+	private final ConcurrentHashMap<String, Claim> claimedUris = new ConcurrentHashMap<String, Claim>();
+
+	/**
+	 * @param engine used to skip documents that are already loaded
+	 * @param cache local cache of dereferenced documents
+	 * @param threadFactory factory of the fetcher threads; if null or maxConcurrency is 1 or less,
+	 * documents are fetched in the calling thread
+	 * @param maxConcurrency number of fetcher threads
+	 * @param maxPerHost maximum number of concurrent requests per host
+	 */
+	LinkedDataFetcher(OlapSesameEngine engine, LinkedDataCache cache, ThreadFactory threadFactory, int maxConcurrency, int maxPerHost) {
+		this.engine = engine;
+		this.cache = cache;
+		this.maxPerHost = Math.max(1, maxPerHost);
+		this.executor = threadFactory != null && maxConcurrency > 1 ? Executors.newFixedThreadPool(maxConcurrency, threadFactory) : null;
+	}
+
+	/**
+	 * Starts fetching all given uris. The futures are in the order of the given uris.
+	 * @param noninformationuris
+	 * @return futures of the fetched documents
+	 */
+	List<Future<LinkedDataDocument>> fetchAll(List<URL> noninformationuris) {
+		List<Future<LinkedDataDocument>> futures = new ArrayList<Future<LinkedDataDocument>>();
+		for (final URL noninformationuri : noninformationuris) {
+			Callable<LinkedDataDocument> task = new Callable<LinkedDataDocument>() {
+				@Override
+				public LinkedDataDocument call() throws Exception {
+					return fetch(noninformationuri);
+				}
+			};
+			if (executor != null) {
+				futures.add(executor.submit(task));
+			} else {
+				FutureTask<LinkedDataDocument> future = new FutureTask<LinkedDataDocument>(task);
+				future.run();
+				futures.add(future);
+			}
+		}
+		return futures;
+	}
+
+	void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Asks for the location of the uri and, if not already loaded, loads and parses it.
+	 * If another task of this fetcher already fetches the same document, waits for it and fails if it failed,
+	 * so that the document is not set loaded without its statements.
+	 * @param noninformationuri
+	 * @return document, statements are null if nothing needs to be added
+	 * @throws IOException
+	 * @throws RDFParseException
+	 * @throws RDFHandlerException
+	 * @throws InterruptedException
+	 */
+	LinkedDataDocument fetch(URL noninformationuri) throws IOException, RDFParseException, RDFHandlerException, InterruptedException {
+		URL informationuri = cache.resolveLocation(noninformationuri);
+		LinkedDataDocument document = new LinkedDataDocument(noninformationuri, informationuri);
+
+		if (engine.isLoaded(informationuri)) {
+			// Already loaded
+			return document;
+		}
+		Claim claim = new Claim();
+		Claim firstClaim = claimedUris.putIfAbsent(informationuri.toString(), claim);
+		if (firstClaim != null) {
+			// Fetched by another task, its statements are added by its caller
+			firstClaim.done.await();
+			if (firstClaim.failed) {
+				throw new IOException("Failed to load informationuri: " + informationuri);
+			}
+			return document;
+		}
+		boolean failed = true;
+		try {
+			fetch(document);
+			failed = false;
+			return document;
+		} finally {
+			if (failed) {
+				// may be fetched again later
+				claimedUris.remove(informationuri.toString(), claim);
+			}
+			claim.failed = failed;
+			claim.done.countDown();
+		}
+	}
+
+	private void fetch(LinkedDataDocument document) throws IOException, RDFParseException, RDFHandlerException, InterruptedException {
+		URL informationuri = document.informationuri;
+		Olap4ldUtil._log.config("Load in store: " + informationuri);
+
+		// Local stand-in directory
+		LinkedDataCache.Document localDocument = cache.getLocalDocument(informationuri);
+		if (localDocument != null) {
+			Olap4ldUtil._log.config("Load from local directory: " + localDocument.file);
+			document.statements = parse(localDocument);
+			return;
+		}
+
+		LinkedDataCache.Document cachedDocument = cache.getDocument(informationuri);
+		if (cache.isOffline()) {
+			if (cachedDocument == null) {
+				throw new IOException("Offline mode and not cached: " + informationuri);
+			}
+			document.statements = parse(cachedDocument);
+			return;
+		}
+
+		Semaphore permits = getHostPermits(informationuri.getHost());
+		permits.acquire();
+		try {
+			try {
+				document.statements = download(informationuri, cachedDocument);
+			} catch (RDFParseException e) {
+				// Since it happens often, we just log it in config
+				Olap4ldUtil._log.config("RDFParseException:" + e.getMessage());
+				if (e.getColumnNumber() != 1) {
+					throw e;
+				}
+				Olap4ldUtil._log.config("RDFParseException, but try afresh.");
+				document.statements = download(informationuri, null);
+			}
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Downloads and parses a document. If a cached version is given, it is revalidated
+	 * with a conditional request and used if not modified.
+	 * Tries rdf/xml first, then turtle, unless the format is given by the file name.
+	 * @return statements, null if the document could not be loaded
+	 */
+	private Collection<Statement> download(URL informationuri, LinkedDataCache.Document cachedDocument) throws IOException, RDFParseException, RDFHandlerException {
+		String locationstring = informationuri.toString();
+
+		// Guess file format
+		RDFFormat format = RDFFormat.forFileName(locationstring);
+		boolean negotiate = format == null;
+		if (negotiate) {
+			// Heuristics - try to get rdfXml first, then Turtle
+			format = RDFFormat.RDFXML;
+		}
+		HttpURLConnection connection = openConnection(informationuri, format, cachedDocument);
+		int responsecode = connection.getResponseCode();
+
+		if (responsecode == 406 && negotiate) {
+			// Try again with turtle get Turtle
+			connection.disconnect();
+			format = RDFFormat.TURTLE;
+			connection = openConnection(informationuri, format, cachedDocument);
+			responsecode = connection.getResponseCode();
+		}
+
+		try {
+			if (responsecode == HttpURLConnection.HTTP_NOT_MODIFIED && cachedDocument != null) {
+				Olap4ldUtil._log.config("Not modified, use cached document: " + informationuri);
+				return parse(cachedDocument);
+			}
+			// Error
+			if (responsecode >= 400) {
+				//TODO add ErrorHandling
+				Olap4ldUtil._log.config("Not able to loadInStore informationUri: " + informationuri + " ;setLoaded anyway");
+				return null;
+			}
+
+			InputStream inputstream = connection.getInputStream();
+			try {
+				LinkedDataCache.Document newDocument = cache.putDocument(informationuri, format,
+						connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"), inputstream);
+				if (newDocument != null) {
+					return parse(newDocument);
+				}
+				return parse(inputstream, locationstring, format);
+			} finally {
+				inputstream.close();
+			}
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private HttpURLConnection openConnection(URL informationuri, RDFFormat format, LinkedDataCache.Document cachedDocument) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) informationuri.openConnection();
+		connection.setConnectTimeout(CONNECTION_TIMEOUT);
+		connection.setRequestProperty("Accept", format.getDefaultMIMEType());
+		if (cachedDocument != null && cachedDocument.format.equals(format)) {
+			if (cachedDocument.etag != null) {
+				connection.setRequestProperty("If-None-Match", cachedDocument.etag);
+			}
+			if (cachedDocument.lastModified != null) {
+				connection.setRequestProperty("If-Modified-Since", cachedDocument.lastModified);
+			}
+		}
+		return connection;
+	}
+
+	private Collection<Statement> parse(LinkedDataCache.Document document) throws IOException, RDFParseException, RDFHandlerException {
+		InputStream inputstream = new FileInputStream(document.file);
+		try {
+			return parse(inputstream, document.informationuri.toString(), document.format);
+		} finally {
+			inputstream.close();
+		}
+	}
+
+	private Collection<Statement> parse(InputStream inputstream, String baseuri, RDFFormat format) throws IOException, RDFParseException, RDFHandlerException {
+		List<Statement> statements = new ArrayList<Statement>();
+		RDFParser parser = Rio.createParser(format);
+		parser.setRDFHandler(new StatementCollector(statements));
+		parser.parse(inputstream, baseuri);
+		return statements;
+	}
+
+	private Semaphore getHostPermits(String host) {
+		Semaphore permits = hostPermits.get(host);
+		if (permits == null) {
+			Semaphore newPermits = new Semaphore(maxPerHost);
+			permits = hostPermits.putIfAbsent(host, newPermits);
+			if (permits == null) {
+				permits = newPermits;
+			}
+		}
+		return permits;
+	}
+
+	/**
+	 * Fetch of an informationuri by the first task that asked for it.
+	 */
+	private static class Claim {
+		final CountDownLatch done = new CountDownLatch(1);
+		volatile boolean failed = false;
+	}
+
+	/**
+	 * Result of dereferencing a uri.
+	 */
+	static class LinkedDataDocument {
+		final URL noninformationuri;
+		final URL informationuri;
+		Collection<Statement> statements = null;
+
+		LinkedDataDocument(URL noninformationuri, URL informationuri) {
+			this.noninformationuri = noninformationuri;
+			this.informationuri = informationuri;
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package com.breucker.seo4olap.olap4ld;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -19,6 +20,9 @@ import org.semanticweb.yars.nx.Node;
 
 public class LogicalToPhysical {
 
+	// Fallback to the nested-loop join for drill-across
+	private static final boolean USE_NESTED_LOOP_DRILL_ACROSS = Boolean.getBoolean("seo4olap.drillAcross.nestedLoop");
+
 	// Input to OLAP operator
 	private List<Node[]> slicedDimensions = new ArrayList<Node[]>();
 	private List<Node[]> rollupslevels = new ArrayList<Node[]>();
@@ -28,6 +32,9 @@ public class LogicalToPhysical {
 	private List<Node[]> projectedMeasures = new ArrayList<Node[]>();
 	private OlapSesameEngine engine;
 
+	// Compiled subplans by structural key (canonical subtree and input state)
+	private Map<String, CompiledSubplan> subplans = new HashMap<String, CompiledSubplan>();
+
 	public LogicalToPhysical(OlapSesameEngine embeddedSesameEngine) {
 		this.engine = embeddedSesameEngine;
 	}
@@ -58,13 +65,157 @@ public class LogicalToPhysical {
 	 * 
 	 * This method recursively creates a physical query plan from a logical one.
 	 * 
+	 * Structurally equal subtrees are compiled once and share their iterator
+	 * (see SharedSubplanIterator). Since compiling Rollup, Slice, Dice and
+	 * Projection depends on the operator inputs collected so far, the key of a
+	 * subtree contains these inputs, too (except for BaseCube).
+	 * 
 	 * @param node
 	 * @return
 	 */
 	public PhysicalOlapIterator compile(LogicalOlapOp node) {
+		String key = canonicalize(node);
+		if (!(node instanceof BaseCubeOp)) {
+			key += " | " + canonicalizeState();
+		}
+
+		CompiledSubplan compiled = subplans.get(key);
+		if (compiled != null) {
+			// Same side effects on the operator inputs as compiling again
+			restoreState(compiled);
+			return new SharedSubplanIterator(compiled.subplan);
+		}
+
+		PhysicalOlapIterator theIterator = compileNode(node);
+		if (theIterator == null) {
+			return null;
+		}
+		SharedSubplanIterator shared;
+		if (theIterator instanceof SharedSubplanIterator) {
+			// Passed through from the input operator
+			shared = (SharedSubplanIterator) theIterator;
+		} else {
+			shared = new SharedSubplanIterator(new SharedSubplanIterator.Subplan(theIterator));
+		}
+		subplans.put(key, new CompiledSubplan(shared.subplan));
+		return shared;
+	}
+
+	/**
+	 * Canonical representation of a logical subtree, containing all parameters
+	 * of the operators (not only their names as toString()).
+	 * 
+	 * @param node
+	 * @return canonical string
+	 */
+	public static String canonicalize(LogicalOlapOp node) {
+		StringBuilder sb = new StringBuilder();
+		appendCanonical(sb, node);
+		return sb.toString();
+	}
+
+	private static void appendCanonical(StringBuilder sb, LogicalOlapOp node) {
+		if (node == null) {
+			sb.append("null");
+		} else if (node instanceof BaseCubeOp) {
+			sb.append("BaseCube(").append(((BaseCubeOp) node).dataseturi).append(")");
+		} else if (node instanceof DrillAcrossOp) {
+			DrillAcrossOp op = (DrillAcrossOp) node;
+			sb.append("DrillAcross(");
+			appendCanonical(sb, op.inputop1);
+			sb.append(",");
+			appendCanonical(sb, op.inputop2);
+			sb.append(")");
+		} else if (node instanceof ConvertCubeOp) {
+			ConvertCubeOp op = (ConvertCubeOp) node;
+			sb.append("ConvertCube(");
+			appendCanonical(sb, op.inputOp1);
+			sb.append(",");
+			appendCanonical(sb, op.inputOp2);
+			sb.append(",").append(op.conversioncorrespondence).append(")");
+		} else if (node instanceof RollupOp) {
+			RollupOp op = (RollupOp) node;
+			sb.append("Rollup(");
+			appendCanonical(sb, op.inputOp);
+			appendRows(sb.append(","), op.rollupslevels);
+			appendRows(sb.append(","), op.rollupshierarchies);
+			sb.append(")");
+		} else if (node instanceof SliceOp) {
+			SliceOp op = (SliceOp) node;
+			sb.append("Slice(");
+			appendCanonical(sb, op.inputOp);
+			appendRows(sb.append(","), op.slicedDimensions);
+			sb.append(")");
+		} else if (node instanceof DiceOp) {
+			DiceOp op = (DiceOp) node;
+			sb.append("Dice(");
+			appendCanonical(sb, op.inputOp);
+			appendRows(sb.append(","), op.hierarchysignature);
+			appendRowLists(sb.append(","), op.membercombinations);
+			sb.append(")");
+		} else if (node instanceof ProjectionOp) {
+			ProjectionOp op = (ProjectionOp) node;
+			sb.append("Projection(");
+			appendCanonical(sb, op.inputOp);
+			appendRows(sb.append(","), op.projectedMeasures);
+			sb.append(")");
+		} else {
+			sb.append(node.getClass().getName()).append("(").append(node).append(")");
+		}
+	}
+
+	private static void appendRows(StringBuilder sb, List<Node[]> rows) {
+		if (rows == null) {
+			sb.append("null");
+			return;
+		}
+		sb.append("[");
+		for (Node[] row : rows) {
+			sb.append("(");
+			for (Node node : row) {
+				sb.append(node == null ? "null" : node.toN3()).append(" ");
+			}
+			sb.append(")");
+		}
+		sb.append("]");
+	}
+
+	private static void appendRowLists(StringBuilder sb, List<List<Node[]>> rowLists) {
+		if (rowLists == null) {
+			sb.append("null");
+			return;
+		}
+		sb.append("[");
+		for (List<Node[]> rows : rowLists) {
+			appendRows(sb, rows);
+		}
+		sb.append("]");
+	}
+
+	private String canonicalizeState() {
+		StringBuilder sb = new StringBuilder();
+		appendRows(sb, slicedDimensions);
+		appendRows(sb, rollupslevels);
+		appendRows(sb, rollupshierarchies);
+		appendRowLists(sb, membercombinations);
+		appendRows(sb, hierarchysignature);
+		appendRows(sb, projectedMeasures);
+		return sb.toString();
+	}
+
+	private void restoreState(CompiledSubplan compiled) {
+		this.slicedDimensions = compiled.slicedDimensions;
+		this.rollupslevels = compiled.rollupslevels;
+		this.rollupshierarchies = compiled.rollupshierarchies;
+		this.membercombinations = compiled.membercombinations;
+		this.hierarchysignature = compiled.hierarchysignature;
+		this.projectedMeasures = compiled.projectedMeasures;
+	}
+
+	private PhysicalOlapIterator compileNode(LogicalOlapOp node) {
 		PhysicalOlapIterator theIterator = null;
 
-		// If we have Drill-Across, we recursively compile and use nested loop.
+		// If we have Drill-Across, we recursively compile and use hash join (nested loop as fallback).
 		if (node instanceof DrillAcrossOp) {
 			LogicalOlapOp inputop1 = ((DrillAcrossOp) node).inputop1;
 			LogicalOlapOp inputop2 = ((DrillAcrossOp) node).inputop2;
@@ -93,8 +244,13 @@ public class LogicalToPhysical {
 			} else {
 				iterator2 = compile(inputop2);
 			}
-			theIterator = new DrillAcrossNestedLoopJoinSesameIterator(
-					iterator1, iterator2);
+			if (USE_NESTED_LOOP_DRILL_ACROSS) {
+				theIterator = ProfilingIterator.wrap(new DrillAcrossNestedLoopJoinSesameIterator(
+						iterator1, iterator2), "Nested-Loop Drill-Across", iterator1, iterator2);
+			} else {
+				theIterator = ProfilingIterator.wrap(new DrillAcrossHashJoinSesameIterator(
+						iterator1, iterator2), "Hash-Join Drill-Across", iterator1, iterator2);
+			}
 		}
 
 		// The thing is, we may have SPARQL2OLAP over Convert-Cube or over
@@ -168,36 +324,32 @@ public class LogicalToPhysical {
 			if (so.inputOp2 == null) {
 
 				PhysicalOlapIterator iterator = compile(so.inputOp1);
-				theIterator = new ConvertSparqlDerivedDatasetIterator(engine,
-						iterator, null, so.conversioncorrespondence);
+				theIterator = ProfilingIterator.wrap(new ConvertSparqlDerivedDatasetIterator(engine,
+						iterator, null, so.conversioncorrespondence), "Convert-Cube", iterator);
 
 			} else if (so.inputOp1 == so.inputOp2) {
 				// If both operators are the same, we can reuse the iterator.
 				// Unfortunately, this does not work for further nested equal
 				// operators.
-				// If inside a logical olap query plan the same function is run
-				// on
-				// the same dataset, we
-				// still have a problem that it is run twice. we could have a
-				// hashmap storing
-				// previous operators and reusing them if needed.
+				// Structurally equal (but not identical) operators are reused
+				// by compile().
 				PhysicalOlapIterator iterator = compile(so.inputOp1);
-				theIterator = new ConvertSparqlDerivedDatasetIterator(engine,
-						iterator, iterator, so.conversioncorrespondence);
+				theIterator = ProfilingIterator.wrap(new ConvertSparqlDerivedDatasetIterator(engine,
+						iterator, iterator, so.conversioncorrespondence), "Merge-Cubes", iterator);
 			} else {
 				PhysicalOlapIterator iterator1 = compile(so.inputOp1);
 				PhysicalOlapIterator iterator2 = compile(so.inputOp2);
 
-				theIterator = new ConvertSparqlDerivedDatasetIterator(engine,
-						iterator1, iterator2, so.conversioncorrespondence);
+				theIterator = ProfilingIterator.wrap(new ConvertSparqlDerivedDatasetIterator(engine,
+						iterator1, iterator2, so.conversioncorrespondence), "Merge-Cubes", iterator1, iterator2);
 			}
 
 		}
 
 		if (node instanceof BaseCubeOp) {
 			
-			theIterator = new BaseCubeSparqlDerivedDatasetIterator(engine,
-					((BaseCubeOp) node).dataseturi);
+			theIterator = ProfilingIterator.wrap(new BaseCubeSparqlDerivedDatasetIterator(engine,
+					((BaseCubeOp) node).dataseturi), "BaseCube (" + ((BaseCubeOp) node).dataseturi + ")");
 			
 			// XXX: Not sure whether that will make problems.
 			// theIterator = createOlap2SparqlIterator(theIterator);
@@ -385,10 +537,19 @@ public class LogicalToPhysical {
 			// we
 			// only have one node.
 			// We use the OLAP-2-SPARQL algorithm.
-			theIterator = new Olap2SparqlAlgorithmSesameIterator(iterator1,
+			Olap2SparqlAlgorithmSesameIterator olap2sparql = new Olap2SparqlAlgorithmSesameIterator(iterator1,
 					this.engine, slicesrollups, levelheights, projections,
 					membercombinations, hierarchysignature);
 
+			// The columnar engine works on the base cube only, OLAP-2-SPARQL is its fallback.
+			if (engine.isUseColumnarEngine() && isBaseCube(iterator1)) {
+				theIterator = ProfilingIterator.wrap(new ColumnarCubeIterator(olap2sparql, iterator1,
+						this.engine, slicesrollups, levelheights,
+						membercombinations, hierarchysignature), "Columnar OLAP", iterator1);
+			} else {
+				theIterator = ProfilingIterator.wrap(olap2sparql, "OLAP-2-SPARQL", iterator1);
+			}
+
 		} catch (OlapException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -396,4 +557,31 @@ public class LogicalToPhysical {
 		return theIterator;
 	}
 
+	private static boolean isBaseCube(PhysicalOlapIterator iterator) {
+		return ProfilingIterator.unwrap(iterator) instanceof BaseCubeSparqlDerivedDatasetIterator;
+	}
+
+	/**
+	 * A compiled subplan and the operator inputs after compiling it.
+	 */
+	private class CompiledSubplan {
+		final SharedSubplanIterator.Subplan subplan;
+		final List<Node[]> slicedDimensions;
+		final List<Node[]> rollupslevels;
+		final List<Node[]> rollupshierarchies;
+		final List<List<Node[]>> membercombinations;
+		final List<Node[]> hierarchysignature;
+		final List<Node[]> projectedMeasures;
+
+		CompiledSubplan(SharedSubplanIterator.Subplan subplan) {
+			this.subplan = subplan;
+			this.slicedDimensions = LogicalToPhysical.this.slicedDimensions;
+			this.rollupslevels = LogicalToPhysical.this.rollupslevels;
+			this.rollupshierarchies = LogicalToPhysical.this.rollupshierarchies;
+			this.membercombinations = LogicalToPhysical.this.membercombinations;
+			this.hierarchysignature = LogicalToPhysical.this.hierarchysignature;
+			this.projectedMeasures = LogicalToPhysical.this.projectedMeasures;
+		}
+	}
+
 }
@@ -0,0 +1,113 @@
+package com.breucker.seo4olap.olap4ld;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Compressed bitmap of the observations (row ordinals of a ColumnarCube) having a certain member.
+ *
+ * Depending on the cardinality, the rows are stored either as sorted int[] (sparse members,
+ * 4 bytes per row) or as uncompressed bitmap (dense members, 1 bit per observation), whatever
+ * is smaller. Dices are evaluated as AND/OR of member bitmaps into a BitSet.
+ *
+ * @author Daniel Breucker
+ *
+ */
+public class MemberBitmap {
+
+	// A sorted array is smaller than a bitmap if less than 1 of 32 rows is contained
+	private static final int BITS_PER_ROW = 32;
+
+	private final int[] rows;
+	private final BitSet bits;
+	private final int cardinality;
+
+	/**
+	 * @param rows sorted row ordinals
+	 * @param rowCount number of rows of the cube
+	 */
+	public MemberBitmap(int[] rows, int rowCount) {
+		this.cardinality = rows.length;
+		if ((long) rows.length * BITS_PER_ROW < rowCount) {
+			this.rows = rows;
+			this.bits = null;
+		} else {
+			this.rows = null;
+			this.bits = new BitSet(rowCount);
+			for (int row : rows) {
+				bits.set(row);
+			}
+		}
+	}
+
+	public int getCardinality() {
+		return cardinality;
+	}
+
+	public boolean isSparse() {
+		return rows != null;
+	}
+
+	public boolean contains(int row) {
+		if (rows != null) {
+			return Arrays.binarySearch(rows, row) >= 0;
+		}
+		return bits.get(row);
+	}
+
+	/**
+	 * @return new BitSet of the rows
+	 */
+	public BitSet toBitSet() {
+		if (bits != null) {
+			return (BitSet) bits.clone();
+		}
+		BitSet result = new BitSet();
+		for (int row : rows) {
+			result.set(row);
+		}
+		return result;
+	}
+
+	/**
+	 * target = target AND this
+	 * @param target
+	 */
+	public void andInto(BitSet target) {
+		if (bits != null) {
+			target.and(bits);
+			return;
+		}
+		BitSet result = new BitSet();
+		for (int row : rows) {
+			if (target.get(row)) {
+				result.set(row);
+			}
+		}
+		target.and(result);
+	}
+
+	/**
+	 * target = target OR this
+	 * @param target
+	 */
+	public void orInto(BitSet target) {
+		if (bits != null) {
+			target.or(bits);
+			return;
+		}
+		for (int row : rows) {
+			target.set(row);
+		}
+	}
+
+	/**
+	 * @return estimated size in bytes
+	 */
+	public long getSizeBytes() {
+		if (rows != null) {
+			return 16 + 4L * rows.length;
+		}
+		return 16 + bits.size() / 8;
+	}
+}
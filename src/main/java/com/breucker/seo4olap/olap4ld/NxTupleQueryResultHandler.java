@@ -0,0 +1,91 @@
+package com.breucker.seo4olap.olap4ld;
+
+import java.util.List;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.TupleQueryResultHandler;
+import org.semanticweb.yars.nx.Literal;
+import org.semanticweb.yars.nx.Node;
+import org.semanticweb.yars.nx.Resource;
+import org.semanticweb.yars.nx.Variable;
+
+/**
+ * TupleQueryResultHandler that converts Sesame BindingSets directly into Node[] rows.
+ * The first row is the header with one Variable per binding name, every following row
+ * contains the values in the order of the header. Unbound values are represented as
+ * Resource "null", the same way the xml2nx.xsl transformation does.
+ *
+ * @author Daniel Breucker
+ *
+ */
+public class NxTupleQueryResultHandler implements TupleQueryResultHandler {
+
+	private static final Resource NULL_RESOURCE = new Resource("null");
+
+	private final List<Node[]> result;
+	private String[] bindingNames;
+
+	/**
+	 * Creates a handler that appends the header and all solutions to the given list.
+	 * @param result
+	 */
+	public NxTupleQueryResultHandler(List<Node[]> result){
+		this.result = result;
+	}
+
+	@Override
+	public void startQueryResult(List<String> bindingNames) {
+		this.bindingNames = bindingNames.toArray(new String[bindingNames.size()]);
+		Node[] header = new Node[this.bindingNames.length];
+		for(int i = 0; i < this.bindingNames.length; i++){
+			header[i] = new Variable(this.bindingNames[i]);
+		}
+		result.add(header);
+	}
+
+	@Override
+	public void handleSolution(BindingSet bindingSet) {
+		Node[] row = new Node[bindingNames.length];
+		for(int i = 0; i < bindingNames.length; i++){
+			row[i] = toNode(bindingSet.getValue(bindingNames[i]));
+		}
+		result.add(row);
+	}
+
+	@Override
+	public void endQueryResult() {
+	}
+
+	public void handleBoolean(boolean value) {
+	}
+
+	public void handleLinks(List<String> linkUrls) {
+	}
+
+	/**
+	 * Converts a Sesame value into the corresponding NxParser node.
+	 * Literal data is escaped the same way NxParser stores parsed literals.
+	 * @param value
+	 * @return Node
+	 */
+	public static Node toNode(Value value){
+		if(value == null){
+			return NULL_RESOURCE;
+		}
+		if(value instanceof URI){
+			return new Resource(value.stringValue());
+		}
+		if(value instanceof BNode){
+			return new org.semanticweb.yars.nx.BNode(value.stringValue());
+		}
+		org.openrdf.model.Literal literal = (org.openrdf.model.Literal) value;
+		Resource datatype = null;
+		if(literal.getDatatype() != null){
+			datatype = new Resource(literal.getDatatype().stringValue());
+		}
+		return new Literal(Literal.escapeForNx(literal.getLabel()), literal.getLanguage(), datatype);
+	}
+}
@@ -0,0 +1,120 @@
+package com.breucker.seo4olap.olap4ld;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.olap4j.driver.olap4ld.Olap4ldUtil;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.semanticweb.yars.nx.Node;
+import org.semanticweb.yars.nx.Variable;
+
+/**
+ * Iterator over an open TupleQueryResult that converts BindingSets lazily into Node[] rows.
+ * Same rows as NxTupleQueryResultHandler: the first row is the header with one Variable per
+ * binding name, unbound values are Resource "null".
+ *
+ * The result and its connection stay open until the iterator is exhausted or close() is called.
+ * Errors while evaluating end the iteration (they are logged, like in OlapSesameEngine.sparql()).
+ *
+ * @author Daniel Breucker
+ *
+ */
+public class NxTupleQueryResultIterator implements Iterator<Node[]> {
+
+	private final RepositoryConnection con;
+	private final TupleQueryResult result;
+	private final String[] bindingNames;
+	private Node[] header;
+	private boolean closed = false;
+
+	/**
+	 * @param con connection of the result, closed together with the result
+	 * @param result
+	 * @throws QueryEvaluationException
+	 */
+	public NxTupleQueryResultIterator(RepositoryConnection con, TupleQueryResult result) throws QueryEvaluationException {
+		this.con = con;
+		this.result = result;
+		List<String> names = result.getBindingNames();
+		this.bindingNames = names.toArray(new String[names.size()]);
+		this.header = new Node[bindingNames.length];
+		for(int i = 0; i < bindingNames.length; i++){
+			header[i] = new Variable(bindingNames[i]);
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if(header != null){
+			return true;
+		}
+		if(closed){
+			return false;
+		}
+		try {
+			if(result.hasNext()){
+				return true;
+			}
+		} catch (QueryEvaluationException e) {
+			Olap4ldUtil._log.warning("Error Running Sparql Request. Message: " + e.getMessage());
+		}
+		close();
+		return false;
+	}
+
+	@Override
+	public Node[] next() {
+		if(!hasNext()){
+			throw new NoSuchElementException();
+		}
+		if(header != null){
+			Node[] row = header;
+			header = null;
+			return row;
+		}
+		try {
+			BindingSet bindingSet = result.next();
+			Node[] row = new Node[bindingNames.length];
+			for(int i = 0; i < bindingNames.length; i++){
+				row[i] = NxTupleQueryResultHandler.toNode(bindingSet.getValue(bindingNames[i]));
+			}
+			return row;
+		} catch (QueryEvaluationException e) {
+			Olap4ldUtil._log.warning("Error Running Sparql Request. Message: " + e.getMessage());
+			close();
+			throw new NoSuchElementException(e.getMessage());
+		}
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Closes the result and its connection. Can be called more than once.
+	 */
+	public void close() {
+		if(closed){
+			return;
+		}
+		closed = true;
+		header = null;
+		try {
+			result.close();
+		} catch (QueryEvaluationException e) {
+			Olap4ldUtil._log.warning("Failed to close query result. Message: " + e.getMessage());
+		} finally {
+			try {
+				con.close();
+			} catch (RepositoryException e) {
+				Olap4ldUtil._log.warning("Failed to close connection. Message: " + e.getMessage());
+			}
+		}
+	}
+}
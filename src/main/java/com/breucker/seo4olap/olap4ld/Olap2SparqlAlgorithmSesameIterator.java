@@ -7,6 +7,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.olap4j.OlapException;
+import org.olap4j.driver.olap4ld.Olap4ldUtil;
 import org.olap4j.driver.olap4ld.linkeddata.LogicalOlapOperatorQueryPlanVisitor;
 import org.olap4j.driver.olap4ld.linkeddata.PhysicalOlapIterator;
 import org.olap4j.driver.olap4ld.linkeddata.QueryException;
@@ -34,7 +35,13 @@ public class Olap2SparqlAlgorithmSesameIterator implements PhysicalOlapIterator
 
 	private OlapSesameEngine engine;
 	private String query;
+	// Materialized result, only used if the iterator is initialised more than once
 	private List<Node[]> result;
+	// Open result of the first initialisation, streamed lazily
+	private NxTupleQueryResultIterator stream;
+	// Rows read from the stream so far, the result if initialised again
+	private List<Node[]> streamedRows;
+	private boolean initialised = false;
 	private Iterator<Node[]> outputiterator;
 	private HashMap<Integer, Integer> levelHeightMap;
 	private ArrayList<Node[]> newmeasures;
@@ -1035,7 +1042,7 @@ public class Olap2SparqlAlgorithmSesameIterator implements PhysicalOlapIterator
 
 	public boolean hasNext() {
 		// Init?
-		if (result == null) {
+		if (outputiterator == null) {
 			try {
 				init();
 			} catch (Exception e) {
@@ -1055,7 +1062,7 @@ public class Olap2SparqlAlgorithmSesameIterator implements PhysicalOlapIterator
 	public Object next() {
 
 		// Init?
-		if (result == null) {
+		if (outputiterator == null) {
 			try {
 				init();
 			} catch (Exception e) {
@@ -1071,20 +1078,63 @@ public class Olap2SparqlAlgorithmSesameIterator implements PhysicalOlapIterator
 		// TODO Auto-generated method stub
 	}
 
+	/**
+	 * At the first initialisation, the bindings are streamed from the open query result and
+	 * kept while read. If initialised again (e.g., as inner input of a nested loop join), the
+	 * rest of the stream is read and the rows are iterated from memory, so the query is
+	 * evaluated only once.
+	 */
 	@Override
 	public void init() throws Exception {
 		
-		if (result == null) {
+		if (!initialised) {
 
 			// We have to init also the input iterators.
 			this.inputiterator.init();
-			
-			this.result = engine.sparql(query, false);
+			initialised = true;
+
+			if (engine.isUseXmlResultPath()) {
+				this.result = engine.sparql(query, false);
+			} else {
+				try {
+					this.stream = engine.sparqlIterator(query);
+					this.streamedRows = new ArrayList<Node[]>();
+					this.outputiterator = new Iterator<Node[]>() {
+						@Override
+						public boolean hasNext() {
+							return stream.hasNext();
+						}
+
+						@Override
+						public Node[] next() {
+							Node[] row = stream.next();
+							streamedRows.add(row);
+							return row;
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+					return;
+				} catch (OlapException e) {
+					Olap4ldUtil._log.warning("Error Running Sparql Request. Message: " + e.getMessage());
+					this.result = new ArrayList<Node[]>();
+				}
+			}
 
 			// Not done, anymore.
 			// After evaluation, we do "entity-consolidation"
 			// this.result = this.engine
 			// .replaceIdentifiersWithCanonical(this.result);
+		} else if (result == null) {
+			while (stream.hasNext()) {
+				streamedRows.add(stream.next());
+			}
+			closeStream();
+			this.result = streamedRows;
+			this.streamedRows = null;
 		}
 
 		// Does not have input operators, therefore no other init necessary.
@@ -1093,9 +1143,25 @@ public class Olap2SparqlAlgorithmSesameIterator implements PhysicalOlapIterator
 
 	}
 
+	/**
+	 * Closes the open query result and the input iterator. Afterwards, the
+	 * iterator can be initialised again (compiled plans are reused).
+	 */
 	@Override
 	public void close() throws Exception {
-		;
+		closeStream();
+		this.result = null;
+		this.streamedRows = null;
+		this.outputiterator = null;
+		this.initialised = false;
+		this.inputiterator.close();
+	}
+	
+	private void closeStream() {
+		if (stream != null) {
+			stream.close();
+			stream = null;
+		}
 	}
 
 	@Override
@@ -1105,6 +1171,13 @@ public class Olap2SparqlAlgorithmSesameIterator implements PhysicalOlapIterator
 		;
 	}
 
+	/**
+	 * @return the SPARQL query of the OLAP operation (null before init)
+	 */
+	public String getQuery() {
+		return query;
+	}
+
 	/**
 	 * Returns String representation of op.
 	 */
@@ -21,8 +21,12 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
@@ -71,6 +75,19 @@ public class Olap4ldLinkedDataUtil {
 	 */
 	public static final String MEASURE_DIMENSION_NAME = "Measures";
 
+	/*
+	 * Compiled xml2nx.xsl, shared by all threads, and one Transformer per thread
+	 */
+	private static volatile Templates xml2nxTemplates = null;
+	private static final ThreadLocal<Transformer> xml2nxTransformer = new ThreadLocal<Transformer>();
+	private static final AtomicLong xml2nxCompileCount = new AtomicLong();
+	private static final AtomicLong xml2nxReuseCount = new AtomicLong();
+
+	/*
+	 * Query templates, read in once
+	 */
+	private static final ConcurrentHashMap<String, String> queryTemplates = new ConcurrentHashMap<String, String>();
+
 	/**
 	 * Elements (identifiers) used in MDX need to follow certain rules in order
 	 * to be parseable from and to MDX. In fact, having it URL encoded is not
@@ -266,7 +283,18 @@ public class Olap4ldLinkedDataUtil {
 		return decoded;
 	}
 
+	/**
+	 * Returns the query template. Templates are read in once and then kept in memory.
+	 * 
+	 * @param name
+	 *            file name in /query_templates/
+	 * @return query template, lines are concatenated without separator
+	 */
 	public static String readInQueryTemplate(String name) {
+		String querytemplate = queryTemplates.get(name);
+		if (querytemplate != null) {
+			return querytemplate;
+		}
 		try {
 			StreamSource stream = new StreamSource(
 					Olap4ldLinkedDataUtil.class.getResourceAsStream("/query_templates/" + name));
@@ -275,12 +303,14 @@ public class Olap4ldLinkedDataUtil {
 			InputStreamReader reader = new InputStreamReader(inputStream);
 			BufferedReader in = new BufferedReader(reader);
 
-			String querytemplate = "";
+			StringBuilder sb = new StringBuilder();
 			String readString;
 			while ((readString = in.readLine()) != null) {
-				querytemplate += readString;
+				sb.append(readString);
 			}
 			in.close();
+			querytemplate = sb.toString();
+			queryTemplates.putIfAbsent(name, querytemplate);
 			return querytemplate;
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
@@ -654,26 +684,10 @@ public class Olap4ldLinkedDataUtil {
 
 	public static InputStream transformSparqlXmlToNx(InputStream xml) {
 
-		javax.xml.transform.TransformerFactory tf = javax.xml.transform.TransformerFactory
-				.newInstance("net.sf.saxon.TransformerFactoryImpl", Thread
-						.currentThread().getContextClassLoader());
-
-		Transformer t;
-
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
 		try {
-			// String base = System.getProperty("RESOURCE_BASE", "");
-			// String userDir = System.getProperty("user.home");
-			// TODO: This is not very generic.
-
-			// Instead of:
-			// File xslFile = new File(
-			// "C:/Users/b-kaempgen/Documents/Workspaces/Eclipse_SLD/OLAP4LD/resources/xml2nx.xsl");
-			// t = tf.newTransformer(new StreamSource(xslFile.getPath()));
-
-			t = tf.newTransformer(new StreamSource(Olap4ldLinkedDataUtil.class
-					.getResourceAsStream("/xml2nx.xsl")));
+			Transformer t = getXml2NxTransformer();
 
 			StreamSource ssource = new StreamSource(xml);
 			StreamResult sresult = new StreamResult(baos);
@@ -694,6 +708,61 @@ public class Olap4ldLinkedDataUtil {
 		}
 	}
 
+	/**
+	 * Number of times xml2nx.xsl has been compiled into Templates. Should stay at 1 per JVM.
+	 * @return compile count
+	 */
+	public static long getXml2NxCompileCount() {
+		return xml2nxCompileCount.get();
+	}
+
+	/**
+	 * Number of transformations that reused an already created per-thread Transformer.
+	 * @return reuse count
+	 */
+	public static long getXml2NxReuseCount() {
+		return xml2nxReuseCount.get();
+	}
+
+	/**
+	 * Returns the Transformer of the current thread. Transformers are not thread-safe,
+	 * therefore each thread gets its own one, created from the process-wide compiled Templates.
+	 * 
+	 * @return Transformer for xml2nx.xsl
+	 * @throws TransformerConfigurationException
+	 */
+	private static Transformer getXml2NxTransformer() throws TransformerConfigurationException {
+		Transformer t = xml2nxTransformer.get();
+		if (t == null) {
+			t = getXml2NxTemplates().newTransformer();
+			xml2nxTransformer.set(t);
+		} else {
+			t.reset();
+			xml2nxReuseCount.incrementAndGet();
+		}
+		return t;
+	}
+
+	private static Templates getXml2NxTemplates() throws TransformerConfigurationException {
+		Templates templates = xml2nxTemplates;
+		if (templates == null) {
+			synchronized (Olap4ldLinkedDataUtil.class) {
+				templates = xml2nxTemplates;
+				if (templates == null) {
+					javax.xml.transform.TransformerFactory tf = javax.xml.transform.TransformerFactory
+							.newInstance("net.sf.saxon.TransformerFactoryImpl", Thread
+									.currentThread().getContextClassLoader());
+					templates = tf.newTemplates(new StreamSource(Olap4ldLinkedDataUtil.class
+							.getResourceAsStream("/xml2nx.xsl")));
+					xml2nxTemplates = templates;
+					Olap4ldUtil._log.info("Compiled xml2nx.xsl. Compile count: "
+							+ xml2nxCompileCount.incrementAndGet());
+				}
+			}
+		}
+		return templates;
+	}
+
 //	/**
 //	 * dump RDF graph
 //	 * 
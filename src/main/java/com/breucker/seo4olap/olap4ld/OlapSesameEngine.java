@@ -18,19 +18,30 @@
  */
 package com.breucker.seo4olap.olap4ld;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
-import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
 import org.olap4j.OlapException;
@@ -53,6 +64,7 @@ import org.openrdf.model.vocabulary.RDFS;
 import org.openrdf.model.vocabulary.XMLSchema;
 import org.openrdf.query.BooleanQuery;
 import org.openrdf.query.GraphQuery;
+import org.openrdf.query.GraphQueryResult;
 import org.openrdf.query.MalformedQueryException;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.QueryLanguage;
@@ -66,12 +78,10 @@ import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.RepositoryResult;
 import org.openrdf.repository.sail.SailRepository;
-import org.openrdf.rio.RDFFormat;
-import org.openrdf.rio.RDFHandlerException;
-import org.openrdf.rio.RDFParseException;
-import org.openrdf.rio.RDFWriter;
-import org.openrdf.rio.Rio;
+import org.openrdf.sail.Sail;
+import org.openrdf.sail.SailException;
 import org.openrdf.sail.memory.MemoryStore;
+import org.openrdf.sail.nativerdf.NativeStore;
 import org.semanticweb.yars.nx.Literal;
 import org.semanticweb.yars.nx.Node;
 import org.semanticweb.yars.nx.Resource;
@@ -90,7 +100,13 @@ import info.aduna.iteration.Iterations;
 public class OlapSesameEngine implements LinkedDataCubesEngine {
 
 	private static final Logger logger = Logger.getLogger(OlapSesameEngine.class.getName());	
-	private static final int CONNECTION_TIMEOUT = 40000;
+	private static final String PERSISTED_DATASETS_FILE = "seo4olap-datasets.txt";
+	//Concurrency of the directed crawling algorithm and number of statements per commit (also for bulk loading)
+	private static final int CRAWLER_THREADS = Integer.getInteger("seo4olap.crawler.threads", 8);
+	private static final int CRAWLER_THREADS_PER_HOST = Integer.getInteger("seo4olap.crawler.threadsPerHost", 2);
+	private static final int LOAD_BATCH_SIZE = Integer.getInteger("seo4olap.crawler.batchSize", 50000);
+	private static final long SPARQL_CACHE_BYTES = Long.getLong("seo4olap.sparql.cacheBytes", 32L * 1024 * 1024);
+	private static final int PLAN_CACHE_SIZE = Integer.getInteger("seo4olap.plan.cacheSize", 32);
 	// Meta data attributes
 	private final String TABLE_CAT = "LdCatalogSchema";
 	private final String TABLE_SCHEM = "LdCatalogSchema";
@@ -110,6 +126,10 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 	//experimental
 	List<Node[]> baseCube = null;
 	Restrictions baseRestrictions = null;
+	//Columnar representation of baseCube, built on first use by ColumnarCubeIterator
+	private ColumnarCube columnarCube = null;
+	//Evaluate OLAP operators over the base cube on its columnar representation (see LogicalToPhysical)
+	private volatile boolean useColumnarEngine = Boolean.getBoolean("seo4olap.engine.columnar");
 
 	// Each typical sparql query assumes the following prefixes.
 	private final String TYPICAL_PREFIXES = "PREFIX rdf:     <http://www.w3.org/1999/02/22-rdf-syntax-ns#> PREFIX rdfs:    <http://www.w3.org/2000/01/rdf-schema#> "
@@ -117,21 +137,104 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 			+ "PREFIX xsd:     <http://www.w3.org/2001/XMLSchema#> PREFIX owl:     <http://www.w3.org/2002/07/owl#> ";
 
 	//Map of locations that have been loaded into the embedded triple store.
-	private final HashMap<Integer, Boolean> loadedMap = new HashMap<Integer, Boolean>();
+	private final Map<Integer, Boolean> loadedMap = new ConcurrentHashMap<Integer, Boolean>();
+	
+	//Fetcher used while running the directed crawling algorithm and the factory of its threads
+	private LinkedDataFetcher fetcher = null;
+	private volatile ThreadFactory crawlerThreadFactory = Executors.defaultThreadFactory();
+	//Local cache of dereferenced documents
+	private final LinkedDataCache linkedDataCache = LinkedDataCache.fromSystemProperties();
 
 	//The Sesame repository (triple store). Gets filled when asking for cubes.	 
 	private Repository repo;
 	private PhysicalOlapQueryPlan execplan;
 	
+	//Results of sparql(query, true), invalidated on every mutation of the repository
+	private final SparqlResultCache sparqlResultCache = new SparqlResultCache(SPARQL_CACHE_BYTES);
+	
+	//Compiled physical plans not in use, keyed by canonical logical plan and store version (LRU)
+	private final Map<String, PhysicalOlapIterator> compiledPlans = new LinkedHashMap<String, PhysicalOlapIterator>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, PhysicalOlapIterator> eldest) {
+			return size() > PLAN_CACHE_SIZE;
+		}
+	};
+	//Compiled plans in use and their keys. A plan is only used by one query at a time.
+	private final Map<PhysicalOlapIterator, String> runningPlans = new WeakHashMap<PhysicalOlapIterator, String>();
+	//Profile of the plan last executed by executeOlapQuery() in the current thread (see ProfilingIterator)
+	private final ThreadLocal<OperatorProfile> lastQueryProfile = new ThreadLocal<OperatorProfile>();
+	
+	//Switch back to the SPARQL XML -> XSLT -> NxParser result path (for comparison only)
+	private boolean useXmlResultPath = Boolean.getBoolean("seo4olap.sparql.xmlResultPath");
+
+	//Backend of the repository and its data directory (null for a non-persistent MemoryStore)
+	private final StoreType storeType;
+	private final File dataDir;
+	
+	/**
+	 * Backends for the embedded triple store.
+	 * MEMORY is not persisted, PERSISTENT_MEMORY is a MemoryStore synced to its data directory,
+	 * NATIVE is a disk based NativeStore.
+	 */
+	public enum StoreType {
+		MEMORY, PERSISTENT_MEMORY, NATIVE
+	}
 
 	public OlapSesameEngine() throws OlapException {
-			try {
-				this.repo = new SailRepository(new MemoryStore());
-				repo.initialize();
-			} catch (RepositoryException e) {
-				logger.warning("Failed to initialize SailRepository. Message: " + e.getMessage().toString());
-				throw new OlapException(e);
-			}
+		this(StoreType.MEMORY, null);
+	}
+	
+	/**
+	 * Creates an engine on the given store backend. For persistent backends, datasets that have been
+	 * crawled, normalized and checked before are read from dataDir and not crawled again.
+	 * @param storeType
+	 * @param dataDir data directory of the store, ignored for StoreType.MEMORY
+	 * @throws OlapException
+	 */
+	public OlapSesameEngine(StoreType storeType, File dataDir) throws OlapException {
+		if(storeType != StoreType.MEMORY && dataDir == null){
+			throw new OlapException("A data directory is needed for store type " + storeType);
+		}
+		this.storeType = storeType;
+		this.dataDir = storeType == StoreType.MEMORY ? null : dataDir;
+		try {
+			this.repo = new SailRepository(createSail(storeType, this.dataDir));
+			repo.initialize();
+		} catch (RepositoryException e) {
+			logger.warning("Failed to initialize SailRepository. Message: " + e.getMessage().toString());
+			throw new OlapException(e);
+		}
+	}
+	
+	private static Sail createSail(StoreType storeType, File dataDir){
+		switch(storeType){
+		case NATIVE:
+			return new NativeStore(dataDir);
+		case PERSISTENT_MEMORY:
+			MemoryStore memoryStore = new MemoryStore(dataDir);
+			memoryStore.setPersist(true);
+			//synced explicitly after a dataset has been loaded
+			memoryStore.setSyncDelay(-1);
+			return memoryStore;
+		default:
+			return new MemoryStore();
+		}
+	}
+	
+	public StoreType getStoreType() {
+		return storeType;
+	}
+	
+	/**
+	 * Shuts down the repository. Persistent stores write their remaining data to disk.
+	 */
+	public void shutDown() {
+		try {
+			repo.shutDown();
+		} catch (RepositoryException e) {
+			logger.warning("Failed to shut down SailRepository. Message: " + e.getMessage());
+		}
 	}
 
 	/*#############------------####################
@@ -186,6 +289,37 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 		this.baseCube = baseCube;
 	}
 
+	/**
+	 * Returns the columnar representation of the current base cube. It is built once and rebuilt
+	 * only if the base cube is replaced.
+	 * @param dimensions dimensions of the base cube (to distinguish dimension and measure columns)
+	 * @return columnar cube or null if no base cube has been derived
+	 */
+	public synchronized ColumnarCube getColumnarCube(List<Node[]> dimensions) {
+		List<Node[]> currentBaseCube = this.baseCube;
+		if (currentBaseCube == null || currentBaseCube.isEmpty()) {
+			return null;
+		}
+		if (columnarCube == null || !columnarCube.isBuiltFrom(currentBaseCube)) {
+			columnarCube = new ColumnarCube(currentBaseCube, ColumnarCubeIterator.getDimensionVariables(dimensions));
+		}
+		return columnarCube;
+	}
+
+	/**
+	 * @return time in ms to build the member bitmaps of the columnar cube, 0 if not built
+	 */
+	public synchronized long getMemberIndexBuildTime() {
+		return columnarCube == null ? 0 : columnarCube.getIndexBuildTime();
+	}
+
+	/**
+	 * @return estimated size in bytes of the member bitmaps of the columnar cube, 0 if not built
+	 */
+	public synchronized long getMemberIndexSizeBytes() {
+		return columnarCube == null ? 0 : columnarCube.getIndexSizeBytes();
+	}
+
 	public List<Node[]> getDatasetInformation(){
 		if(this.datasetInformation != null){
 			return this.datasetInformation;
@@ -229,6 +363,22 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 		return this.execplan;
 	}
 	
+	/**
+	 * @return EXPLAIN ANALYZE tree of the physical query plan last executed by executeOlapQuery()
+	 * in the current thread, or null
+	 */
+	public OperatorProfile getLastQueryProfile() {
+		return lastQueryProfile.get();
+	}
+	
+	/**
+	 * @param resultIterator iterator returned by executeOlapQueryStreaming(), before closeIterator()
+	 * @return EXPLAIN ANALYZE tree of the rows iterated so far, or null if profiling is disabled
+	 */
+	public OperatorProfile getQueryProfile(PhysicalOlapIterator resultIterator) {
+		return ProfilingIterator.getProfile(resultIterator);
+	}
+	
 	@Override
 	public List<Node[]> getCatalogs(Restrictions restrictions) {
 		/*
@@ -403,30 +553,54 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 		return result;
 	}
 	
-	//TODO check if really needed
+	/**
+	 * Opens a loader that adds statements to the repository in transactions of
+	 * seo4olap.crawler.batchSize statements. The loader has to be closed (commits) or aborted.
+	 * @return bulk loader
+	 * @throws RepositoryException
+	 */
+	public RepositoryBulkLoader openBulkLoader() throws RepositoryException {
+		return new RepositoryBulkLoader(repo, LOAD_BATCH_SIZE, sparqlResultCache);
+	}
+	
+	public SparqlResultCache getSparqlResultCache() {
+		return sparqlResultCache;
+	}
+	
+	/**
+	 * Evaluates the construct query and adds the resulting statements to the repository.
+	 * The statements are collected before adding, since the store can not be read and
+	 * written at the same time.
+	 * @param constructquery
+	 */
 	public void executeCONSTRUCTQuery(String constructquery) {
 		// We assume one or two cubes, only.
+		RepositoryBulkLoader loader = null;
 		try {
+			List<Statement> statements = new ArrayList<Statement>();
 			RepositoryConnection con = this.repo.getConnection();
-			GraphQuery graphquery = con.prepareGraphQuery(org.openrdf.query.QueryLanguage.SPARQL, constructquery);
-
-			StringWriter stringout = new StringWriter();
-			RDFWriter w = Rio.createWriter(RDFFormat.RDFXML, stringout);
-			graphquery.evaluate(w);
-
-			String triples = stringout.toString();
+			try {
+				GraphQuery graphquery = con.prepareGraphQuery(org.openrdf.query.QueryLanguage.SPARQL, constructquery);
+				GraphQueryResult graphresult = graphquery.evaluate();
+				try {
+					while (graphresult.hasNext()) {
+						statements.add(graphresult.next());
+					}
+				} finally {
+					graphresult.close();
+				}
+			} finally {
+				con.close();
+			}
 
 			if (Olap4ldUtil._isDebug) {
-				Olap4ldUtil._log.config("Loaded triples: " + triples);
+				Olap4ldUtil._log.config("Loaded triples: " + statements);
 			}
 
-			// UTF-8 encoding seems important
-			InputStream stream = new ByteArrayInputStream(triples.getBytes("UTF-8"));
-
 			// Add to triple store
-			con.add(stream, "", RDFFormat.RDFXML);
-
-			con.close();
+			loader = openBulkLoader();
+			loader.addAll(statements);
+			loader.close();
 			
 		} catch (RepositoryException e) {
 			// TODO Auto-generated catch block
@@ -437,39 +611,144 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 		} catch (QueryEvaluationException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
-		} catch (RDFHandlerException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (UnsupportedEncodingException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (RDFParseException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		} finally {
+			if (loader != null) {
+				loader.abort();
+			}
 		}
 	}
 	
 	/**
 	 * I think, caching some sparql results would be very useful.
 	 * 
-	 * I create a map between hash value of sparql query and the Nodes.
+	 * I create a map between the normalized sparql query and the Nodes
+	 * (LRU, bounded by seo4olap.sparql.cacheBytes).
 	 * 
 	 * If the value is available, I return it.
 	 * 
-	 * However, when to empty the cache? I empty the cache if I populate a new
-	 * cube.
+	 * However, when to empty the cache? I empty the cache on every mutation
+	 * of the repository (loads, updates, derived datasets).
 	 * 
 	 * @param query
-	 * @param caching (not used)
+	 * @param caching if true, the result is taken from and put into the cache
 	 * @return
 	 */
 	public List<Node[]> sparql(String query, boolean caching) {
 
 		Olap4ldUtil._log.config("SPARQL query: " + query);
 
+		if(!caching || !sparqlResultCache.isEnabled()){
+			return evaluateSparql(query);
+		}
+		List<Node[]> result = sparqlResultCache.get(query);
+		if(result != null){
+			Olap4ldUtil._log.config("SPARQL result from cache");
+			return result;
+		}
+		long version = sparqlResultCache.getVersion();
+		result = evaluateSparql(query);
+		sparqlResultCache.put(query, result, version);
+		return result;
+	}
+	
+	private List<Node[]> evaluateSparql(String query) {
+
+		if(this.useXmlResultPath){
+			return sparqlViaXmlResult(query);
+		}
+
+		List<Node[]> myBindings = new ArrayList<Node[]>();
+
+		try {
+			RepositoryConnection con = repo.getConnection();
+			try {
+				TupleQuery tupleQuery = con.prepareTupleQuery(QueryLanguage.SPARQL, query);
+				tupleQuery.evaluate(new NxTupleQueryResultHandler(myBindings));
+			}
+			finally {
+				con.close();
+			}
+		} catch (RepositoryException e) {
+			Olap4ldUtil._log.warning("Error Running Sparql Request. Message: " + e.getMessage().toString());
+			return new ArrayList<Node[]>();
+		} catch (MalformedQueryException e) {
+			Olap4ldUtil._log.warning("Error Running Sparql Request. Message: " + e.getMessage().toString());
+			return new ArrayList<Node[]>();
+		} catch (QueryEvaluationException e) {
+			Olap4ldUtil._log.warning("Error Running Sparql Request. Message: " + e.getMessage().toString());
+			return new ArrayList<Node[]>();
+		} catch (TupleQueryResultHandlerException e) {
+			Olap4ldUtil._log.warning("Error Running Sparql Request. Message: " + e.getMessage().toString());
+			return new ArrayList<Node[]>();
+		}
+		return myBindings;
+	}
+	
+	/**
+	 * Evaluates the query and returns an iterator over the open result, starting with the header row.
+	 * The result is not cached. The iterator holds a connection until it is exhausted or closed.
+	 * @param query
+	 * @return iterator over the rows
+	 * @throws OlapException
+	 */
+	public NxTupleQueryResultIterator sparqlIterator(String query) throws OlapException {
+
+		Olap4ldUtil._log.config("SPARQL query (streamed): " + query);
+
+		try {
+			RepositoryConnection con = repo.getConnection();
+			try {
+				TupleQuery tupleQuery = con.prepareTupleQuery(QueryLanguage.SPARQL, query);
+				return new NxTupleQueryResultIterator(con, tupleQuery.evaluate());
+			} catch (MalformedQueryException e) {
+				con.close();
+				throw new OlapException("Problem with malformed query: " + e.getMessage());
+			} catch (QueryEvaluationException e) {
+				con.close();
+				throw new OlapException("Problem with query evaluation: " + e.getMessage());
+			}
+		} catch (RepositoryException e) {
+			throw new OlapException("Problem with repository: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * If true, sparql() serializes results to SPARQL XML and transforms them via xml2nx.xsl
+	 * into nx (the original olap4ld path). Only meant for comparison with the direct path.
+	 * @param useXmlResultPath
+	 */
+	public void setUseXmlResultPath(boolean useXmlResultPath) {
+		this.useXmlResultPath = useXmlResultPath;
+	}
+	
+	public boolean isUseXmlResultPath() {
+		return useXmlResultPath;
+	}
+	
+	/**
+	 * If true, OLAP operators over the base cube are evaluated on the ColumnarCube instead of by
+	 * OLAP-2-SPARQL. By default given by the system property seo4olap.engine.columnar.
+	 * @param useColumnarEngine
+	 */
+	public void setUseColumnarEngine(boolean useColumnarEngine) {
+		this.useColumnarEngine = useColumnarEngine;
+	}
+	
+	public boolean isUseColumnarEngine() {
+		return useColumnarEngine;
+	}
+	
+	/**
+	 * Sets the factory of the threads fetching resources while crawling a dataset,
+	 * by default Executors.defaultThreadFactory().
+	 * @param crawlerThreadFactory factory, null to fetch in the calling thread
+	 */
+	public void setCrawlerThreadFactory(ThreadFactory crawlerThreadFactory) {
+		this.crawlerThreadFactory = crawlerThreadFactory;
+	}
+	
+	private List<Node[]> sparqlViaXmlResult(String query) {
+
 		List<Node[]> myBindings = new ArrayList<Node[]>();
 
 		try {
@@ -612,6 +891,7 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 					+ "?slice ?comp ?value; qb:observation ?obs .}";
 			updateQueryQuery = con.prepareUpdate(QueryLanguage.SPARQL,updateQuery);
 			updateQueryQuery.execute();
+			sparqlResultCache.invalidate();
 
 			// Convert degenerated members to Skos:members
 //			updateQuery = Olap4ldLinkedDataUtil.readInQueryTemplate("sesame_member_updatequery.txt");
@@ -634,6 +914,75 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 	 * 
 	 *#############------------####################*/
 	
+	/**
+	 * Checks whether the dataset has been completely loaded (crawled, normalized, checked)
+	 * into the persistent store by a previous engine.
+	 * @param dataseturi
+	 * @return true if store is persistent and contains the dataset
+	 */
+	private boolean isPersisted(URL dataseturi) {
+		if (dataDir == null) {
+			return false;
+		}
+		File marker = new File(dataDir, PERSISTED_DATASETS_FILE);
+		if (!marker.exists()) {
+			return false;
+		}
+		BufferedReader in = null;
+		try {
+			in = new BufferedReader(new InputStreamReader(new FileInputStream(marker), "UTF-8"));
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.equals(dataseturi.toString())) {
+					return true;
+				}
+			}
+		} catch (IOException e) {
+			logger.warning("Failed to read " + marker + ". Message: " + e.getMessage());
+		} finally {
+			try {
+				if (in != null) {
+					in.close();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Syncs the persistent store and records the dataset as completely loaded.
+	 * The record is written last, so an interrupted load is crawled again on the next start.
+	 * @param dataseturi
+	 * @throws OlapException
+	 */
+	private void setPersisted(URL dataseturi) throws OlapException {
+		if (dataDir == null) {
+			return;
+		}
+		Writer out = null;
+		try {
+			if (storeType == StoreType.PERSISTENT_MEMORY) {
+				((MemoryStore) ((SailRepository) repo).getSail()).sync();
+			}
+			out = new OutputStreamWriter(new FileOutputStream(new File(dataDir, PERSISTED_DATASETS_FILE), true), "UTF-8");
+			out.write(dataseturi.toString() + "\n");
+		} catch (SailException e) {
+			throw new OlapException("Problem with syncing store: " + e.getMessage());
+		} catch (IOException e) {
+			logger.warning("Failed to record persisted dataset " + dataseturi + ". Message: " + e.getMessage());
+		} finally {
+			try {
+				if (out != null) {
+					out.close();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
 	private PhysicalOlapQueryPlan createExecplan(LogicalOlapQueryPlan queryplan) throws OlapException {
 
 		LogicalToPhysical logicaltophysical = new LogicalToPhysical(this);
@@ -666,121 +1015,121 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 	 * @throws OlapException
 	 */
 	private void loadInStore(URL noninformationuri) throws OlapException {
-		RepositoryConnection con = null;
+		loadInStore(Collections.singletonList(noninformationuri));
+	}
+	
+	/**
+	 * Loads all resources in store, that are not already loaded. The resources are
+	 * dereferenced and parsed concurrently by the fetcher and committed in batches.
+	 * Resources sharing the same document (hash uris) are only fetched once.
+	 * 
+	 * @param noninformationuris
+	 * @throws OlapException
+	 */
+	private void loadInStore(List<URL> noninformationuris) throws OlapException {
+		// uris to fetch and the uris sharing their document
+		Map<String, List<URL>> documentUris = new LinkedHashMap<String, List<URL>>();
+		List<URL> fetchUris = new ArrayList<URL>();
 		
-		if(isLoaded(noninformationuri)){
+		for (URL noninformationuri : noninformationuris) {
+			if (isLoaded(noninformationuri)) {
+				continue;
+			}
+			String hashUri;
+			try {
+				URL hashInformationUri = getHashInformationUri(noninformationuri);
+				if (isLoaded(hashInformationUri)) {
+					setLoaded(noninformationuri);
+					continue;
+				}
+				hashUri = hashInformationUri.toString();
+			} catch (MalformedURLException e1) {
+				hashUri = noninformationuri.toString();
+			}
+			List<URL> sameDocument = documentUris.get(hashUri);
+			if (sameDocument == null) {
+				sameDocument = new ArrayList<URL>();
+				documentUris.put(hashUri, sameDocument);
+				fetchUris.add(noninformationuri);
+			}
+			sameDocument.add(noninformationuri);
+		}
+		if (fetchUris.isEmpty()) {
 			return;
 		}
-		try {
-			URL hashUri = getHashInformationUri(noninformationuri);
-			if(isLoaded(hashUri)){
-				setLoaded(noninformationuri);
-				return;
-			}
-		} catch (MalformedURLException e1) {
+		
+		checkMaxLoadedTriples();
+		
+		LinkedDataFetcher fetcher = this.fetcher;
+		boolean ownFetcher = fetcher == null;
+		if (ownFetcher) {
+			fetcher = new LinkedDataFetcher(this, linkedDataCache, null, 1, 1);
 		}
 		
+		RepositoryBulkLoader loader = null;
 		try {
-			URL informationuri = Olap4ldLinkedDataUtil.askForLocation(noninformationuri);
-			if (isLoaded(informationuri)) {
-				setLoaded(noninformationuri);
-				setLoaded(informationuri);
-				// Already loaded
-				return;
-			}
+			List<Future<LinkedDataFetcher.LinkedDataDocument>> futures = fetcher.fetchAll(fetchUris);
 			
-			// Check max loaded
-			this.LOADED_TRIPLE_SIZE = this.getLoadedTripleCount();
-			Olap4ldUtil._log.config("Number of loaded triples before: "	+ this.LOADED_TRIPLE_SIZE);
-
-			if (this.LOADED_TRIPLE_SIZE > this.MAX_LOAD_TRIPLE_SIZE) {
-				Olap4ldUtil._log.warning("Warning: We have reached the maximum number of triples to load!");
-				throw new OlapException("Warning: Maximum storage capacity reached! Dataset contains too many triples.");
-			}
-
-			String locationstring = informationuri.toString();
-			Olap4ldUtil._log.config("Load in store: " + informationuri);
-
-			con = repo.getConnection();
-
-			// Guess file format
-			RDFFormat format = RDFFormat.forFileName(locationstring);
-			if (format != null) {
-				con.add(informationuri, locationstring, format);
-			} 
-			else {
-				// Heuristics - try to get rdfXml first, then Turtle
-
-				HttpURLConnection connection = (HttpURLConnection) informationuri.openConnection();
-				connection.setRequestProperty("Accept", "application/rdf+xml");
-				format = RDFFormat.RDFXML;
-				connection.setConnectTimeout(CONNECTION_TIMEOUT);
-				int responsecode = connection.getResponseCode();
-
-				if (responsecode == 406) {
-					// Try again with turtle get Turtle
-					connection.disconnect();
-					connection = (HttpURLConnection) informationuri.openConnection();
-					connection.setConnectTimeout(CONNECTION_TIMEOUT);
-					connection.setRequestProperty("Accept", "text/turtle");
-					format = RDFFormat.TURTLE;
-					responsecode = connection.getResponseCode();
+			loader = openBulkLoader();
+			
+			for (Future<LinkedDataFetcher.LinkedDataDocument> future : futures) {
+				LinkedDataFetcher.LinkedDataDocument document;
+				try {
+					document = future.get();
+				} catch (ExecutionException e) {
+					// Same handling as for a single resource: log and continue
+					Olap4ldUtil._log.config("Failed to load resource: " + e.getCause());
+					continue;
 				}
-
-				// Error
-				if (responsecode >= 400) {
-					//not working
-					//TODO add ErrorHandling
-					Olap4ldUtil._log.config("Not able to loadInStore informationUri: " + informationuri + " ;setLoaded anyway");
-				} 
-				else {
-					InputStream inputstream = null;
-					try {
-						inputstream = connection.getInputStream();
-						con.add(inputstream, locationstring, format);
-						connection.disconnect();
-
-					} catch (RDFParseException e) {
-						// Try to continue on next line?
-						// int linenumber = e.getLineNumber();
-
-						// Since it happens often, we just log it in config
-						Olap4ldUtil._log.config("RDFParseException:" + e.getMessage());
-
-						if (e.getColumnNumber() == 1) {
-							Olap4ldUtil._log.config("RDFParseException, but try afresh.");
-
-							// Try with in-built loading functionality
-							if (format == RDFFormat.RDFXML) {
-								con.add(informationuri, locationstring,	RDFFormat.RDFXML);
-							} else {
-								con.add(informationuri, locationstring,	RDFFormat.TURTLE);
-							}
-						}
-					}
-					finally{
-						inputstream.close();
-					}
+				boolean committed = false;
+				if (document.statements != null) {
+					committed = loader.addAll(document.statements);
+				}
+				
+				Olap4ldUtil._log.info("Lookup on resource: " + document.noninformationuri);
+				Olap4ldUtil._log.info("Its informationuri: " + document.informationuri);
+				
+				// Make sure we set it loaded
+				for (URL noninformationuri : documentUris.get(getHashUriString(document.noninformationuri))) {
+					setLoaded(noninformationuri);
+				}
+				setLoaded(document.informationuri);
+				
+				if (committed) {
+					checkMaxLoadedTriples();
 				}
 			}
-
-			Olap4ldUtil._log.info("Lookup on resource: " + noninformationuri);
-			Olap4ldUtil._log.info("Its informationuri: " + informationuri);
-
-			// Make sure we set it loaded
-			setLoaded(noninformationuri);
-			setLoaded(informationuri);
-
-			con.close();
-
+			loader.close();
+			
 		} catch (RepositoryException e) {
 			throw new OlapException("Problem with repository: "	+ e.getMessage());
+		} catch (InterruptedException e) {
+			throw new OlapException("Interrupted while loading resources: " + e.getMessage());
+		} finally {
+			if (ownFetcher) {
+				fetcher.shutdown();
+			}
+			if (loader != null) {
+				loader.abort();
+			}
+		}
+	}
+	
+	private String getHashUriString(URL noninformationuri) {
+		try {
+			return getHashInformationUri(noninformationuri).toString();
 		} catch (MalformedURLException e) {
-			Olap4ldUtil._log.config("MalformedURLException:" + e.getMessage());
-		} catch (IOException e) {
-			Olap4ldUtil._log.config("ConnectException:" + e.getMessage());
-		} catch (RDFParseException e) {
-			Olap4ldUtil._log.config("RDFParseException:" + e.getMessage());
+			return noninformationuri.toString();
+		}
+	}
+	
+	private void checkMaxLoadedTriples() throws OlapException {
+		this.LOADED_TRIPLE_SIZE = this.getLoadedTripleCount();
+		Olap4ldUtil._log.config("Number of loaded triples before: "	+ this.LOADED_TRIPLE_SIZE);
+
+		if (this.LOADED_TRIPLE_SIZE > this.MAX_LOAD_TRIPLE_SIZE) {
+			Olap4ldUtil._log.warning("Warning: We have reached the maximum number of triples to load!");
+			throw new OlapException("Warning: Maximum storage capacity reached! Dataset contains too many triples.");
 		}
 	}
 	
@@ -879,6 +1228,7 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 	
 	private void runDirectedCrawlingAlgorithm(URL noninformationuri) throws OlapException {
 
+		this.fetcher = new LinkedDataFetcher(this, linkedDataCache, crawlerThreadFactory, CRAWLER_THREADS, CRAWLER_THREADS_PER_HOST);
 		try {
 
 			// If we have cube uri and location is not loaded, yet, we start collecting all information
@@ -917,8 +1267,6 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 					loadInStore(dsduri);
 				}
 
-				boolean first;
-
 				// Not done. Takes too long.
 				// // If loading ds, also load seeAlso
 				// query =
@@ -945,35 +1293,14 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 				// There should be a dsd
 				// Note in spec:
 				// "Every qb:DataSet has exactly one associated qb:DataStructureDefinition."
-				first = true;
-				for (Node[] nodes : components) {
-					if (first) {
-						first = false;
-						continue;
-					}
-					if (nodes[0] instanceof Resource) {
-						URL componenturi = new URL(nodes[0].toString());
-						loadInStore(componenturi);
-					}
-				}
+				loadInStore(getResourceUris(components));
 
 				// If loading ds, also load measures
 				query = "PREFIX qb: <http://purl.org/linked-data/cube#> SELECT DISTINCT ?measure WHERE {<"
 						+ noninformationuri
 						+ "> qb:structure ?dsd. ?dsd qb:component ?comp. ?comp qb:measure ?measure}";
 				List<Node[]> measures = sparql(query, true);
-				first = true;
-				for (Node[] nodes : measures) {
-					if (first) {
-						first = false;
-						continue;
-					}
-
-					if (nodes[0] instanceof Resource) {
-						URL measureuri = new URL(nodes[0].toString());
-						loadInStore(measureuri);
-					}
-				}
+				loadInStore(getResourceUris(measures));
 
 				// If loading ds, also load dimensions
 				query = "PREFIX qb: <http://purl.org/linked-data/cube#> SELECT DISTINCT ?dimension WHERE {<"
@@ -986,19 +1313,7 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 				if (dimensions.size() <= 1) {
 					throw new OlapException("A cube should serve a dimension!");
 				} else {
-					first = true;
-					for (Node[] nodes : dimensions) {
-						if (first) {
-							first = false;
-							continue;
-						}
-
-						if (nodes[0] instanceof Resource) {
-							URL dimensionuri = new URL(nodes[0].toString());
-							
-							loadInStore(dimensionuri);
-						}
-					}
+					loadInStore(getResourceUris(dimensions));
 				}
 
 				// Extra: Not done either.
@@ -1035,19 +1350,7 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 				if (codelists.size() <= 1) {
 					;
 				} else {
-					first = true;
-					// So far, members are not crawled.
-					for (Node[] nodes : codelists) {
-						if (first) {
-							first = false;
-							continue;
-						}
-
-						if (nodes[0] instanceof Resource) {
-							URL codelisturi = new URL(nodes[0].toString());
-							loadInStore(codelisturi);
-						}
-					}
+					loadInStore(getResourceUris(codelists));
 				}
 
 //				// Loading members
@@ -1096,19 +1399,7 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 				 if (member.size() <= 1) {
 				 ;
 				 } else {
-				 first = true;
-				 // So far, members are not crawled.
-				 for (Node[] nodes : member) {
-				 if (first) {
-				 first = false;
-				 continue;
-				 }
-				
-				 if (nodes[0] instanceof Resource) {
-				 URL memberuri = new URL(nodes[0].toString());
-				 loadInStore(memberuri);
-				 }
-				 }
+					 loadInStore(getResourceUris(member));
 				 }
 
 			}
@@ -1124,8 +1415,32 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 		} catch (QueryEvaluationException e) {
 			throw new OlapException("Problem with query evalution: "
 					+ e.getMessage());
+		} finally {
+			this.fetcher.shutdown();
+			this.fetcher = null;
 		}
 	}
+	
+	/**
+	 * Returns the uris of all resources in the first column of a sparql result (without header).
+	 * @param result
+	 * @return uris
+	 * @throws MalformedURLException
+	 */
+	private List<URL> getResourceUris(List<Node[]> result) throws MalformedURLException {
+		List<URL> uris = new ArrayList<URL>();
+		boolean first = true;
+		for (Node[] nodes : result) {
+			if (first) {
+				first = false;
+				continue;
+			}
+			if (nodes[0] instanceof Resource) {
+				uris.add(new URL(nodes[0].toString()));
+			}
+		}
+		return uris;
+	}
 
 	private void checkIntegrityConstraints() throws OlapException {
 
@@ -1655,10 +1970,17 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 				return result;
 			} else {
 				noninformationuri = new URL(restrictions.cubeNamePattern.toString());
-				URL informationuri = Olap4ldLinkedDataUtil.askForLocation(noninformationuri);
-				
-				if (!isLoaded(noninformationuri) || !isLoaded(informationuri)) {
-					loadCube(noninformationuri);
+				if (isPersisted(noninformationuri)) {
+					Olap4ldUtil._log.info("Dataset already loaded and checked in persistent store: " + noninformationuri);
+					setLoaded(noninformationuri);
+				}
+				else {
+					URL informationuri = linkedDataCache.resolveLocation(noninformationuri);
+					
+					if (!isLoaded(noninformationuri) || !isLoaded(informationuri)) {
+						loadCube(noninformationuri);
+						setPersisted(noninformationuri);
+					}
 				}
 			}
 
@@ -3126,80 +3448,87 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 
 	}
 
+	/**
+	 * Creates the restrictions for the {{{FILTERS}}} placeholder of the query templates.
+	 * Restrictions on URIs are added as VALUES blocks, so that the store can look up the
+	 * bound values in its indexes instead of filtering all results. Other values (literals,
+	 * blank nodes) are filtered by their string value.
+	 * 
+	 * @param restrictions
+	 * @return VALUES blocks and filters
+	 */
 	private String createFilterForRestrictions(Restrictions restrictions) {
 
-		String filter = "";
+		StringBuilder filter = new StringBuilder();
 		// We need to create a filter for the specific restriction
-		filter += (restrictions.cubeNamePattern != null) ? " FILTER (?CUBE_NAME = <"
-				+ restrictions.cubeNamePattern + ">) "
-				: "";
+		if (restrictions.cubeNamePattern != null) {
+			if (isValuesUri(restrictions.cubeNamePattern)) {
+				appendRestriction(filter, "CUBE_NAME", restrictions.cubeNamePattern);
+			} else {
+				filter.append(" FILTER (?CUBE_NAME = <").append(restrictions.cubeNamePattern).append(">) ");
+			}
+		}
 
 		if (restrictions.dimensionUniqueName != null
 				&& !restrictions.dimensionUniqueName.toString().equals(
 						Olap4ldLinkedDataUtil.MEASURE_DIMENSION_NAME)) {
-			// filter += " filter("
-			// + createConditionConsiderEquivalences(
-			// restrictions.dimensionUniqueName, new Variable(
-			// "DIMENSION_UNIQUE_NAME")) + ") ";
-			filter += " filter(str(?DIMENSION_UNIQUE_NAME) = \""
-					+ restrictions.dimensionUniqueName + "\") ";
+			appendRestriction(filter, "DIMENSION_UNIQUE_NAME", restrictions.dimensionUniqueName);
 		}
 
+		// This we do since ranges may be blank nodes, e.g., of ical:dtend
+		// XXX: Workaround
+		boolean blankHierarchy = restrictions.hierarchyUniqueName != null
+				&& restrictions.hierarchyUniqueName.toString().startsWith("node");
+
 		if (restrictions.hierarchyUniqueName != null
 				&& !restrictions.hierarchyUniqueName.toString().equals(
-						Olap4ldLinkedDataUtil.MEASURE_DIMENSION_NAME)) {
-
-			// This we do since ranges may be blank nodes, e.g., of ical:dtend
-			// XXX: Workaround
-			if (restrictions.hierarchyUniqueName.toString().startsWith("node")) {
-				filter += "";
-			} else {
-				// filter += " filter("
-				// + createConditionConsiderEquivalences(
-				// restrictions.hierarchyUniqueName, new Variable(
-				// "HIERARCHY_UNIQUE_NAME")) + ") ";
-				filter += " filter(str(?HIERARCHY_UNIQUE_NAME) = \""
-						+ restrictions.hierarchyUniqueName + "\") ";
-			}
-
+						Olap4ldLinkedDataUtil.MEASURE_DIMENSION_NAME)
+				&& !blankHierarchy) {
+			appendRestriction(filter, "HIERARCHY_UNIQUE_NAME", restrictions.hierarchyUniqueName);
 		}
 
 		if (restrictions.levelUniqueName != null
 				&& !restrictions.levelUniqueName.toString().equals(
-						Olap4ldLinkedDataUtil.MEASURE_DIMENSION_NAME)) {
-
-			// This we do since ranges may be blank nodes, e.g., of ical:dtend
-			// XXX: Workaround
-			if (restrictions.hierarchyUniqueName != null
-					&& restrictions.hierarchyUniqueName.toString().startsWith(
-							"node")) {
-				filter += "";
-			} else {
-
-				// filter += " filter("
-				// + createConditionConsiderEquivalences(
-				// restrictions.levelUniqueName, new Variable(
-				// "LEVEL_UNIQUE_NAME")) + ") ";
-				filter += " filter(str(?LEVEL_UNIQUE_NAME) = \""
-						+ restrictions.levelUniqueName + "\") ";
-
-			}
-
+						Olap4ldLinkedDataUtil.MEASURE_DIMENSION_NAME)
+				&& !blankHierarchy) {
+			appendRestriction(filter, "LEVEL_UNIQUE_NAME", restrictions.levelUniqueName);
 		}
 
 		if (restrictions.memberUniqueName != null
 				&& !restrictions.memberUniqueName.toString().equals(
 						Olap4ldLinkedDataUtil.MEASURE_DIMENSION_NAME)) {
-
-			// filter += " filter("
-			// + createConditionConsiderEquivalences(
-			// restrictions.memberUniqueName, new Variable(
-			// "MEMBER_UNIQUE_NAME")) + ") ";
-			filter += " filter(str(?MEMBER_UNIQUE_NAME) = \""
-					+ restrictions.memberUniqueName + "\") ";
+			appendRestriction(filter, "MEMBER_UNIQUE_NAME", restrictions.memberUniqueName);
 		}
 
-		return filter;
+		return filter.toString();
+	}
+	
+	private static void appendRestriction(StringBuilder filter, String variable, Node value) {
+		if (isValuesUri(value)) {
+			filter.append(" VALUES ?").append(variable).append(" { <").append(value).append("> } ");
+		} else {
+			filter.append(" filter(str(?").append(variable).append(") = \"").append(value).append("\") ");
+		}
+	}
+	
+	/**
+	 * True if the node is a URI that can be written as &lt;uri&gt; into a query.
+	 */
+	private static boolean isValuesUri(Node value) {
+		if (!(value instanceof Resource)) {
+			return false;
+		}
+		String uri = value.toString();
+		if (uri.indexOf(':') < 0) {
+			return false;
+		}
+		for (int i = 0; i < uri.length(); i++) {
+			char c = uri.charAt(i);
+			if (c <= ' ' || "<>\"{}|^`\\".indexOf(c) >= 0) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 
@@ -3235,31 +3564,9 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 	 */
 	public List<Node[]> executeOlapQuery(LogicalOlapQueryPlan queryplan)
 			throws OlapException {
-		// Log logical query plan
-
-//		Olap4ldUtil._log.config("Logical query plan: " + queryplan.toString());
-
-		Olap4ldUtil._log
-				.info("Execute logical query plan: Generate physical query plan.");
+		PhysicalOlapIterator resultIterator = executeOlapQueryStreaming(queryplan);
 		long time = System.currentTimeMillis();
 
-		// Create physical query plan
-		this.execplan = createExecplan(queryplan);
-
-		Olap4ldUtil._log
-				.info("Execute logical query plan: Physical query plan: "
-						+ execplan.toString());
-
-		time = System.currentTimeMillis() - time;
-		Olap4ldUtil._log
-				.info("Execute logical query plan: Generate physical query plan finished in "
-						+ time + "ms.");
-
-		Olap4ldUtil._log
-				.info("Execute logical query plan: Execute physical query plan.");
-		time = System.currentTimeMillis();
-		PhysicalOlapIterator resultIterator = this.execplan.getIterator();
-
 		/*
 		 * We create our own List<Node[]> result with every item
 		 * 
@@ -3267,11 +3574,16 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 		 * metadata a member and for each measure in the measure list a value.
 		 */
 		List<Node[]> result = new ArrayList<Node[]>();
-		while (resultIterator.hasNext()) {
-			Object nextObject = resultIterator.next();
-			// Will be Node[]
-			Node[] node = (Node[]) nextObject;
-			result.add(node);
+		try {
+			while (resultIterator.hasNext()) {
+				Object nextObject = resultIterator.next();
+				// Will be Node[]
+				Node[] node = (Node[]) nextObject;
+				result.add(node);
+			}
+		} finally {
+			lastQueryProfile.set(ProfilingIterator.getProfile(resultIterator));
+			closeIterator(resultIterator);
 		}
 
 		time = System.currentTimeMillis() - time;
@@ -3281,6 +3593,98 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 
 		return result;
 	}
+	
+	/**
+	 * Creates the physical query plan and returns its iterator, so that the rows (first row is the header)
+	 * can be processed one by one without materializing the whole result.
+	 * The iterator has to be closed (see closeIterator()), it may hold an open query result.
+	 * @param queryplan
+	 * @return iterator over Node[]
+	 * @throws OlapException
+	 */
+	public PhysicalOlapIterator executeOlapQueryStreaming(LogicalOlapQueryPlan queryplan)
+			throws OlapException {
+		// Log logical query plan
+
+//		Olap4ldUtil._log.config("Logical query plan: " + queryplan.toString());
+
+		String planKey = LogicalToPhysical.canonicalize(queryplan._root) + (useColumnarEngine ? " columnar" : "")
+				+ " @" + sparqlResultCache.getVersion();
+		PhysicalOlapIterator root = checkoutPlan(planKey);
+		
+		if (root != null) {
+			Olap4ldUtil._log
+					.info("Execute logical query plan: Reuse compiled physical query plan.");
+			ProfilingIterator.reset(root);
+			this.execplan = new PhysicalOlapQueryPlan(root);
+		} else {
+			Olap4ldUtil._log
+					.info("Execute logical query plan: Generate physical query plan.");
+			long time = System.currentTimeMillis();
+
+			// Create physical query plan
+			this.execplan = createExecplan(queryplan);
+			root = this.execplan.getIterator();
+
+			Olap4ldUtil._log
+					.info("Execute logical query plan: Physical query plan: "
+							+ execplan.toString());
+
+			time = System.currentTimeMillis() - time;
+			Olap4ldUtil._log
+					.info("Execute logical query plan: Generate physical query plan finished in "
+							+ time + "ms.");
+		}
+		synchronized (compiledPlans) {
+			runningPlans.put(root, planKey);
+		}
+
+		Olap4ldUtil._log
+				.info("Execute logical query plan: Execute physical query plan.");
+		return root;
+	}
+	
+	/**
+	 * Closes an iterator returned by executeOlapQueryStreaming(). Afterwards, its
+	 * plan can be reused for the same logical query plan.
+	 * @param resultIterator
+	 */
+	public void closeIterator(PhysicalOlapIterator resultIterator) {
+		try {
+			resultIterator.close();
+		} catch (Exception e) {
+			Olap4ldUtil._log.warning("Failed to close physical query plan iterator. Message: " + e.getMessage());
+			synchronized (compiledPlans) {
+				runningPlans.remove(resultIterator);
+			}
+			return;
+		}
+		checkinPlan(resultIterator);
+	}
+	
+	/**
+	 * Takes a compiled plan out of the cache, so that no other query uses it at the same time.
+	 */
+	private PhysicalOlapIterator checkoutPlan(String planKey) {
+		synchronized (compiledPlans) {
+			return compiledPlans.remove(planKey);
+		}
+	}
+	
+	/**
+	 * Puts a closed plan back into the cache, unless the store has been mutated meanwhile.
+	 */
+	private void checkinPlan(PhysicalOlapIterator root) {
+		synchronized (compiledPlans) {
+			String planKey = runningPlans.remove(root);
+			if (planKey == null || PLAN_CACHE_SIZE <= 0 || !planKey.endsWith(" @" + sparqlResultCache.getVersion())) {
+				return;
+			}
+			if (!compiledPlans.containsKey(planKey)) {
+				compiledPlans.put(planKey, root);
+			}
+		}
+	}
 
 	/*#############------------####################
 	 * 
@@ -3319,18 +3723,21 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 		String query = "PREFIX olap4ld:<http://purl.org/olap4ld/> INSERT DATA { GRAPH <http://manually> { "
 				+ triples + " } }";
 		Olap4ldLinkedDataUtil.sparqlRepoUpdate(repo, query, false);
+		sparqlResultCache.invalidate();
 	}
 
 	private void deleteTriples(String triples) {
 		String query = "PREFIX olap4ld:<http://purl.org/olap4ld/> DELETE DATA { "
 				+ triples + " }";
 		Olap4ldLinkedDataUtil.sparqlRepoUpdate(repo, query, false);
+		sparqlResultCache.invalidate();
 	}
 
 	private void deleteTriplesWhere(String triples, String where) {
 		String query = "PREFIX olap4ld:<http://purl.org/olap4ld/> DELETE { "
 				+ triples + " } where { " + where + "}";
 		Olap4ldLinkedDataUtil.sparqlRepoUpdate(repo, query, false);
+		sparqlResultCache.invalidate();
 	}
 	
 	/**
@@ -3404,6 +3811,7 @@ public class OlapSesameEngine implements LinkedDataCubesEngine {
 			Update updateQueryQueryEqRepO = con.prepareUpdate(
 					QueryLanguage.SPARQL, updateQueryEqRepO);
 			updateQueryQueryEqRepO.execute();
+			sparqlResultCache.invalidate();
 
 			con.close();
 
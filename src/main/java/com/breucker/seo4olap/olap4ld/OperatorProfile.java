@@ -0,0 +1,111 @@
+package com.breucker.seo4olap.olap4ld;
+
+import java.util.List;
+
+/**
+ * Counters of an operator of an executed physical query plan and of its inputs (see ProfilingIterator).
+ * toString() renders the tree in the style of EXPLAIN ANALYZE.
+ *
+ * @author Daniel Breucker
+ *
+ */
+public class OperatorProfile {
+
+	private final String operator;
+	private final String sparql;
+	private final int consumers;
+	private final double initTime;
+	private final double iterateTime;
+	private final long rows;
+	private final long bytes;
+	private final List<OperatorProfile> inputs;
+
+	public OperatorProfile(String operator, String sparql, int consumers, double initTime, double iterateTime,
+			long rows, long bytes, List<OperatorProfile> inputs) {
+		this.operator = operator;
+		this.sparql = sparql;
+		this.consumers = consumers;
+		this.initTime = initTime;
+		this.iterateTime = iterateTime;
+		this.rows = rows;
+		this.bytes = bytes;
+		this.inputs = inputs;
+	}
+
+	public String getOperator() {
+		return operator;
+	}
+
+	/**
+	 * @return SPARQL query of the operator or null
+	 */
+	public String getSparql() {
+		return sparql;
+	}
+
+	/**
+	 * @return number of operators consuming the rows of this operator (shared subplan if > 1)
+	 */
+	public int getConsumers() {
+		return consumers;
+	}
+
+	/**
+	 * @return time in ms until the operator was initialized, including its inputs
+	 */
+	public double getInitTime() {
+		return initTime;
+	}
+
+	/**
+	 * @return time in ms of iterating after init, including its inputs
+	 */
+	public double getIterateTime() {
+		return iterateTime;
+	}
+
+	/**
+	 * @return rows produced, including the header
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return estimated size in bytes of the rows produced, -1 if not counted
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	public List<OperatorProfile> getInputs() {
+		return inputs;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		append(sb, "");
+		return sb.toString();
+	}
+
+	private void append(StringBuilder sb, String indent) {
+		sb.append(indent).append(indent.isEmpty() ? "" : "-> ").append(operator);
+		sb.append(String.format(" (init=%.3f ms, iterate=%.3f ms, rows=%d", initTime, iterateTime, rows));
+		if (bytes >= 0) {
+			sb.append(", bytes=").append(bytes);
+		}
+		if (consumers > 1) {
+			sb.append(", shared by ").append(consumers);
+		}
+		sb.append(")\n");
+		if (sparql != null) {
+			String sparqlIndent = indent + "      ";
+			sb.append(sparqlIndent).append("SPARQL: ")
+					.append(sparql.trim().replace("\n", "\n" + sparqlIndent + "        ")).append("\n");
+		}
+		for (OperatorProfile input : inputs) {
+			input.append(sb, indent + "   ");
+		}
+	}
+}
@@ -0,0 +1,246 @@
+package com.breucker.seo4olap.olap4ld;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.olap4j.OlapException;
+import org.olap4j.driver.olap4ld.linkeddata.LogicalOlapOperatorQueryPlanVisitor;
+import org.olap4j.driver.olap4ld.linkeddata.PhysicalOlapIterator;
+import org.olap4j.driver.olap4ld.linkeddata.QueryException;
+import org.olap4j.driver.olap4ld.linkeddata.Restrictions;
+import org.semanticweb.yars.nx.Node;
+
+/**
+ * Wraps an operator of a physical query plan and counts its init time, iteration time,
+ * rows produced and bytes materialized. Bytes are only estimated with the system property
+ * seo4olap.plan.profileBytes, since that costs a toString() of every node. Created by LogicalToPhysical for every operator;
+ * getProfile() returns the counters of the whole plan below an iterator as OperatorProfile tree
+ * (EXPLAIN ANALYZE).
+ *
+ * Times are inclusive, i.e. contain the times of the inputs. The first call of hasNext() / next()
+ * counts as init, since most operators initialize lazily.
+ *
+ * @author Daniel Breucker
+ *
+ */
+public class ProfilingIterator implements PhysicalOlapIterator {
+
+	// Profiling can be switched off, e.g. for benchmarks
+	static final boolean ENABLED = !Boolean.getBoolean("seo4olap.plan.noProfiling");
+	private static final boolean COUNT_BYTES = Boolean.getBoolean("seo4olap.plan.profileBytes");
+
+	private final PhysicalOlapIterator iterator;
+	private final String operator;
+	private final List<PhysicalOlapIterator> inputs;
+
+	private boolean initialized = false;
+	private long initNanos = 0;
+	private long iterateNanos = 0;
+	private long rows = 0;
+	private long bytes = COUNT_BYTES ? 0 : -1;
+
+	ProfilingIterator(PhysicalOlapIterator iterator, String operator, PhysicalOlapIterator... inputs) {
+		this.iterator = iterator;
+		this.operator = operator;
+		this.inputs = new ArrayList<PhysicalOlapIterator>();
+		for (PhysicalOlapIterator input : inputs) {
+			if (input != null) {
+				this.inputs.add(input);
+			}
+		}
+	}
+
+	/**
+	 * Wraps the iterator, if profiling is enabled.
+	 */
+	static PhysicalOlapIterator wrap(PhysicalOlapIterator iterator, String operator, PhysicalOlapIterator... inputs) {
+		if (!ENABLED || iterator == null) {
+			return iterator;
+		}
+		return new ProfilingIterator(iterator, operator, inputs);
+	}
+
+	/**
+	 * Removes ProfilingIterator and SharedSubplanIterator wrappers.
+	 */
+	static PhysicalOlapIterator unwrap(PhysicalOlapIterator iterator) {
+		if (iterator instanceof SharedSubplanIterator) {
+			iterator = ((SharedSubplanIterator) iterator).subplan.iterator;
+		}
+		if (iterator instanceof ProfilingIterator) {
+			iterator = ((ProfilingIterator) iterator).iterator;
+		}
+		return iterator;
+	}
+
+	private static ProfilingIterator find(PhysicalOlapIterator iterator) {
+		if (iterator instanceof SharedSubplanIterator) {
+			iterator = ((SharedSubplanIterator) iterator).subplan.iterator;
+		}
+		if (iterator instanceof ProfilingIterator) {
+			return (ProfilingIterator) iterator;
+		}
+		return null;
+	}
+
+	/**
+	 * Resets the counters of the plan below the iterator (for reuse of a compiled plan).
+	 * @param root
+	 */
+	static void reset(PhysicalOlapIterator root) {
+		ProfilingIterator profiled = find(root);
+		if (profiled == null) {
+			return;
+		}
+		profiled.initialized = false;
+		profiled.initNanos = 0;
+		profiled.iterateNanos = 0;
+		profiled.rows = 0;
+		profiled.bytes = COUNT_BYTES ? 0 : -1;
+		for (PhysicalOlapIterator input : profiled.inputs) {
+			reset(input);
+		}
+	}
+
+	/**
+	 * @param root
+	 * @return the current counters of the plan below the iterator or null, if it is not profiled
+	 */
+	public static OperatorProfile getProfile(PhysicalOlapIterator root) {
+		ProfilingIterator profiled = find(root);
+		if (profiled == null) {
+			return null;
+		}
+		List<OperatorProfile> children = new ArrayList<OperatorProfile>();
+		for (PhysicalOlapIterator input : profiled.inputs) {
+			OperatorProfile child = getProfile(input);
+			if (child != null) {
+				children.add(child);
+			}
+		}
+		int consumers = root instanceof SharedSubplanIterator ? ((SharedSubplanIterator) root).subplan.consumers : 1;
+		return new OperatorProfile(profiled.operator, getSparql(profiled.iterator), consumers,
+				profiled.initNanos / 1000000.0, profiled.iterateNanos / 1000000.0,
+				profiled.rows, profiled.bytes, children);
+	}
+
+	private static String getSparql(PhysicalOlapIterator iterator) {
+		if (iterator instanceof Olap2SparqlAlgorithmSesameIterator) {
+			return ((Olap2SparqlAlgorithmSesameIterator) iterator).getQuery();
+		}
+		if (iterator instanceof BaseCubeSparqlDerivedDatasetIterator) {
+			return ((BaseCubeSparqlDerivedDatasetIterator) iterator).getQuery();
+		}
+		if (iterator instanceof ColumnarCubeIterator) {
+			return ((ColumnarCubeIterator) iterator).getQuery();
+		}
+		return null;
+	}
+
+	/*#############------------####################
+	 *
+	 * PhysicalOlapIterator
+	 *
+	 *#############------------####################*/
+
+	@Override
+	public boolean hasNext() {
+		long time = System.nanoTime();
+		try {
+			return iterator.hasNext();
+		} finally {
+			addTime(System.nanoTime() - time);
+		}
+	}
+
+	@Override
+	public Object next() {
+		long time = System.nanoTime();
+		try {
+			Object next = iterator.next();
+			rows++;
+			if (COUNT_BYTES && next instanceof Node[]) {
+				bytes += SparqlResultCache.estimateRowSize((Node[]) next);
+			}
+			return next;
+		} finally {
+			addTime(System.nanoTime() - time);
+		}
+	}
+
+	private void addTime(long nanos) {
+		if (initialized) {
+			iterateNanos += nanos;
+		} else {
+			initNanos += nanos;
+			initialized = true;
+		}
+	}
+
+	@Override
+	public void remove() {
+		iterator.remove();
+	}
+
+	@Override
+	public void init() throws Exception {
+		long time = System.nanoTime();
+		try {
+			iterator.init();
+		} finally {
+			initNanos += System.nanoTime() - time;
+		}
+	}
+
+	@Override
+	public void close() throws Exception {
+		iterator.close();
+	}
+
+	@Override
+	public void accept(LogicalOlapOperatorQueryPlanVisitor v)
+			throws QueryException {
+		iterator.accept(v);
+	}
+
+	@Override
+	public String toString() {
+		return iterator.toString();
+	}
+
+	@Override
+	public List<Node[]> getCubes(Restrictions restrictions)
+			throws OlapException {
+		return iterator.getCubes(restrictions);
+	}
+
+	@Override
+	public List<Node[]> getDimensions(Restrictions restrictions)
+			throws OlapException {
+		return iterator.getDimensions(restrictions);
+	}
+
+	@Override
+	public List<Node[]> getMeasures(Restrictions restrictions)
+			throws OlapException {
+		return iterator.getMeasures(restrictions);
+	}
+
+	@Override
+	public List<Node[]> getHierarchies(Restrictions restrictions)
+			throws OlapException {
+		return iterator.getHierarchies(restrictions);
+	}
+
+	@Override
+	public List<Node[]> getLevels(Restrictions restrictions)
+			throws OlapException {
+		return iterator.getLevels(restrictions);
+	}
+
+	@Override
+	public List<Node[]> getMembers(Restrictions restrictions)
+			throws OlapException {
+		return iterator.getMembers(restrictions);
+	}
+}
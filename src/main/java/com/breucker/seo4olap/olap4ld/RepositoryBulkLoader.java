@@ -0,0 +1,159 @@
+package com.breucker.seo4olap.olap4ld;
+
+import org.olap4j.driver.olap4ld.Olap4ldUtil;
+import org.openrdf.model.Statement;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+/**
+ * Adds statements to a repository through a single connection inside explicit transactions.
+ * A transaction is committed every batchSize statements and on close().
+ * Can also be used as RDFHandler, e.g., for parsers.
+ *
+ * Usage:
+ * <pre>
+ * RepositoryBulkLoader loader = engine.openBulkLoader();
+ * try {
+ * 	loader.addAll(statements);
+ * 	loader.close();
+ * } finally {
+ * 	loader.abort();
+ * }
+ * </pre>
+ *
+ * @author Daniel Breucker
+ *
+ */
+public class RepositoryBulkLoader extends RDFHandlerBase {
+
+	private final RepositoryConnection con;
+	private final int batchSize;
+	private final SparqlResultCache resultCache;
+	private int uncommittedCount = 0;
+	private long addedCount = 0;
+	private int commitCount = 0;
+	private boolean closed = false;
+
+	/**
+	 * Opens a connection on the repository and starts the first transaction.
+	 * @param repo
+	 * @param batchSize number of statements per transaction
+	 * @throws RepositoryException
+	 */
+	public RepositoryBulkLoader(Repository repo, int batchSize) throws RepositoryException {
+		this(repo, batchSize, null);
+	}
+
+	/**
+	 * Opens a connection on the repository and starts the first transaction.
+	 * @param repo
+	 * @param batchSize number of statements per transaction
+	 * @param resultCache invalidated on every commit, may be null
+	 * @throws RepositoryException
+	 */
+	public RepositoryBulkLoader(Repository repo, int batchSize, SparqlResultCache resultCache) throws RepositoryException {
+		this.batchSize = Math.max(1, batchSize);
+		this.resultCache = resultCache;
+		this.con = repo.getConnection();
+		this.con.begin();
+	}
+
+	/**
+	 * Adds a statement. Commits the current transaction if the batch is full.
+	 * @param statement
+	 * @return true, if a batch has been committed
+	 * @throws RepositoryException
+	 */
+	public boolean add(Statement statement) throws RepositoryException {
+		con.add(statement);
+		addedCount++;
+		uncommittedCount++;
+		if (uncommittedCount >= batchSize) {
+			commit();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Adds all statements. Commits the current transaction whenever the batch is full.
+	 * @param statements
+	 * @return true, if at least one batch has been committed
+	 * @throws RepositoryException
+	 */
+	public boolean addAll(Iterable<? extends Statement> statements) throws RepositoryException {
+		boolean committed = false;
+		for (Statement statement : statements) {
+			committed |= add(statement);
+		}
+		return committed;
+	}
+
+	/**
+	 * Commits the current transaction and starts a new one.
+	 * @throws RepositoryException
+	 */
+	public void commit() throws RepositoryException {
+		con.commit();
+		invalidateResultCache();
+		commitCount++;
+		uncommittedCount = 0;
+		con.begin();
+	}
+
+	/**
+	 * Commits the remaining statements and closes the connection.
+	 * @throws RepositoryException
+	 */
+	public void close() throws RepositoryException {
+		if (closed) {
+			return;
+		}
+		con.commit();
+		invalidateResultCache();
+		commitCount++;
+		closed = true;
+		con.close();
+		Olap4ldUtil._log.config("Bulk loader: added " + addedCount + " statements in " + commitCount + " transactions.");
+	}
+
+	/**
+	 * Rolls back the uncommitted statements and closes the connection, if not already closed.
+	 */
+	public void abort() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (con.isActive()) {
+				con.rollback();
+			}
+			con.close();
+		} catch (RepositoryException e) {
+			Olap4ldUtil._log.warning("Bulk loader: failed to roll back. Message: " + e.getMessage());
+		}
+	}
+
+	private void invalidateResultCache() {
+		if (resultCache != null && uncommittedCount > 0) {
+			resultCache.invalidate();
+		}
+	}
+
+	public long getAddedCount() {
+		return addedCount;
+	}
+
+	@Override
+	public void handleStatement(Statement statement) throws RDFHandlerException {
+		try {
+			add(statement);
+		} catch (RepositoryException e) {
+			throw new RDFHandlerException(e);
+		}
+	}
+}
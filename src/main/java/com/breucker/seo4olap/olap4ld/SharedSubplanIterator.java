@@ -0,0 +1,180 @@
+package com.breucker.seo4olap.olap4ld;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.olap4j.OlapException;
+import org.olap4j.driver.olap4ld.linkeddata.LogicalOlapOperatorQueryPlanVisitor;
+import org.olap4j.driver.olap4ld.linkeddata.PhysicalOlapIterator;
+import org.olap4j.driver.olap4ld.linkeddata.QueryException;
+import org.olap4j.driver.olap4ld.linkeddata.Restrictions;
+import org.semanticweb.yars.nx.Node;
+
+/**
+ * Consumer of a compiled subplan. Structurally equal subtrees of a logical query plan are compiled
+ * once by LogicalToPhysical and every occurrence gets its own SharedSubplanIterator on the same subplan.
+ *
+ * With a single consumer, the iterator of the subplan is passed through (streaming). With several
+ * consumers, the rows of the subplan are materialized once and every consumer iterates over them
+ * independently. The iterator of the subplan is closed when all consumers are closed.
+ *
+ * @author Daniel Breucker
+ *
+ */
+public class SharedSubplanIterator implements PhysicalOlapIterator {
+
+	final Subplan subplan;
+	// Own position in the materialized rows (only with several consumers)
+	private Iterator<Node[]> iterator;
+
+	SharedSubplanIterator(Subplan subplan) {
+		this.subplan = subplan;
+		subplan.consumers++;
+	}
+
+	private boolean isPassThrough() {
+		return subplan.consumers == 1;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (isPassThrough()) {
+			return subplan.iterator.hasNext();
+		}
+		if (iterator == null) {
+			initRows();
+		}
+		return iterator.hasNext();
+	}
+
+	@Override
+	public Object next() {
+		if (isPassThrough()) {
+			return subplan.iterator.next();
+		}
+		if (iterator == null) {
+			initRows();
+		}
+		return iterator.next();
+	}
+
+	@Override
+	public void remove() {
+		// nothing to do
+	}
+
+	/**
+	 * Initialises the own position in the materialized rows on first access.
+	 * Failures of the subplan are propagated, since hasNext() and next() cannot throw checked exceptions.
+	 */
+	private void initRows() {
+		try {
+			init();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException("Failed to evaluate shared subplan: " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void init() throws Exception {
+		if (isPassThrough()) {
+			subplan.iterator.init();
+		} else {
+			iterator = subplan.getRows().iterator();
+		}
+	}
+
+	@Override
+	public void close() throws Exception {
+		iterator = null;
+		subplan.close();
+	}
+
+	@Override
+	public void accept(LogicalOlapOperatorQueryPlanVisitor v)
+			throws QueryException {
+		subplan.iterator.accept(v);
+	}
+
+	@Override
+	public String toString() {
+		if (isPassThrough()) {
+			return subplan.iterator.toString();
+		}
+		return "Shared (" + subplan.iterator + ")";
+	}
+
+	@Override
+	public List<Node[]> getCubes(Restrictions restrictions)
+			throws OlapException {
+		return subplan.iterator.getCubes(restrictions);
+	}
+
+	@Override
+	public List<Node[]> getDimensions(Restrictions restrictions)
+			throws OlapException {
+		return subplan.iterator.getDimensions(restrictions);
+	}
+
+	@Override
+	public List<Node[]> getMeasures(Restrictions restrictions)
+			throws OlapException {
+		return subplan.iterator.getMeasures(restrictions);
+	}
+
+	@Override
+	public List<Node[]> getHierarchies(Restrictions restrictions)
+			throws OlapException {
+		return subplan.iterator.getHierarchies(restrictions);
+	}
+
+	@Override
+	public List<Node[]> getLevels(Restrictions restrictions)
+			throws OlapException {
+		return subplan.iterator.getLevels(restrictions);
+	}
+
+	@Override
+	public List<Node[]> getMembers(Restrictions restrictions)
+			throws OlapException {
+		return subplan.iterator.getMembers(restrictions);
+	}
+
+	/**
+	 * A compiled subplan and its consumers.
+	 */
+	static class Subplan {
+		final PhysicalOlapIterator iterator;
+		int consumers = 0;
+		private int closedConsumers = 0;
+		private List<Node[]> rows;
+
+		Subplan(PhysicalOlapIterator iterator) {
+			this.iterator = iterator;
+		}
+
+		synchronized List<Node[]> getRows() throws Exception {
+			if (rows == null) {
+				iterator.init();
+				List<Node[]> newRows = new ArrayList<Node[]>();
+				while (iterator.hasNext()) {
+					newRows.add((Node[]) iterator.next());
+				}
+				rows = newRows;
+			}
+			return rows;
+		}
+
+		synchronized void close() throws Exception {
+			closedConsumers++;
+			if (closedConsumers >= consumers) {
+				closedConsumers = 0;
+				rows = null;
+				iterator.close();
+			}
+		}
+	}
+}
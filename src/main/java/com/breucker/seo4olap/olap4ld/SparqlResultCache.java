@@ -0,0 +1,214 @@
+package com.breucker.seo4olap.olap4ld;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.semanticweb.yars.nx.Node;
+
+/**
+ * LRU cache of SPARQL results (List of Node[], first row is the header), keyed by the normalized query.
+ * The cache is bounded by the estimated size of the results in bytes.
+ *
+ * Every mutation of the store has to call invalidate(). Since a query may run while the store
+ * is mutated, put() only stores results of queries started after the last invalidation
+ * (see getVersion()).
+ *
+ * @author Daniel Breucker
+ *
+ */
+public class SparqlResultCache {
+
+	//estimated bytes of an object header and a reference
+	private static final int OBJECT_OVERHEAD = 16;
+	private static final int REFERENCE_SIZE = 8;
+
+	private final long maxBytes;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private long sizeBytes = 0;
+	private long version = 0;
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long evictionCount = 0;
+	private long invalidationCount = 0;
+
+	/**
+	 * @param maxBytes maximum estimated size of all cached results, 0 or less disables the cache
+	 */
+	public SparqlResultCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	public boolean isEnabled() {
+		return maxBytes > 0;
+	}
+
+	/**
+	 * Returns a copy of the cached result or null.
+	 * @param query
+	 * @return result
+	 */
+	public synchronized List<Node[]> get(String query) {
+		if (!isEnabled()) {
+			return null;
+		}
+		Entry entry = entries.get(normalize(query));
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return new ArrayList<Node[]>(entry.result);
+	}
+
+	/**
+	 * Caches a copy of the result, unless the store has been mutated since version was read.
+	 * Results larger than the whole cache are not cached.
+	 * @param query
+	 * @param result
+	 * @param version value of getVersion() before the query was evaluated
+	 */
+	public synchronized void put(String query, List<Node[]> result, long version) {
+		if (!isEnabled() || version != this.version) {
+			return;
+		}
+		String key = normalize(query);
+		long size = estimateSize(key, result);
+		if (size > maxBytes) {
+			return;
+		}
+		Entry old = entries.put(key, new Entry(new ArrayList<Node[]>(result), size));
+		if (old != null) {
+			sizeBytes -= old.size;
+		}
+		sizeBytes += size;
+
+		// evict least recently used results
+		Iterator<Entry> it = entries.values().iterator();
+		while (sizeBytes > maxBytes && it.hasNext()) {
+			Entry eldest = it.next();
+			it.remove();
+			sizeBytes -= eldest.size;
+			evictionCount++;
+		}
+	}
+
+	/**
+	 * Removes all cached results. To be called on every mutation of the store.
+	 */
+	public synchronized void invalidate() {
+		version++;
+		if (!entries.isEmpty()) {
+			entries.clear();
+			sizeBytes = 0;
+			invalidationCount++;
+		}
+	}
+
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	public synchronized long getInvalidationCount() {
+		return invalidationCount;
+	}
+
+	public synchronized long getSizeBytes() {
+		return sizeBytes;
+	}
+
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "SparqlResultCache [entries=" + entries.size() + ", sizeBytes=" + sizeBytes + ", maxBytes=" + maxBytes
+				+ ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+				+ ", invalidations=" + invalidationCount + "]";
+	}
+
+	/**
+	 * Collapses whitespace outside of string literals, so that templates differing only in
+	 * formatting share an entry.
+	 * @param query
+	 * @return normalized query
+	 */
+	static String normalize(String query) {
+		StringBuilder sb = new StringBuilder(query.length());
+		char quote = 0;
+		boolean whitespace = false;
+		for (int i = 0; i < query.length(); i++) {
+			char c = query.charAt(i);
+			if (quote != 0) {
+				sb.append(c);
+				if (c == '\\' && i + 1 < query.length()) {
+					sb.append(query.charAt(++i));
+				} else if (c == quote) {
+					quote = 0;
+				}
+				continue;
+			}
+			if (Character.isWhitespace(c)) {
+				whitespace = true;
+				continue;
+			}
+			if (whitespace && sb.length() > 0) {
+				sb.append(' ');
+			}
+			whitespace = false;
+			if (c == '"' || c == '\'') {
+				quote = c;
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	private static long estimateSize(String key, List<Node[]> result) {
+		long size = OBJECT_OVERHEAD + 2L * key.length() + OBJECT_OVERHEAD + REFERENCE_SIZE * (long) result.size();
+		for (Node[] row : result) {
+			size += estimateRowSize(row);
+		}
+		return size;
+	}
+
+	/**
+	 * @param row
+	 * @return estimated size in bytes of a result row
+	 */
+	static long estimateRowSize(Node[] row) {
+		long size = OBJECT_OVERHEAD + REFERENCE_SIZE * row.length;
+		for (Node node : row) {
+			if (node != null) {
+				// node object and its string data
+				size += 2 * OBJECT_OVERHEAD + 2L * node.toString().length();
+			}
+		}
+		return size;
+	}
+
+	private static class Entry {
+		final List<Node[]> result;
+		final long size;
+
+		Entry(List<Node[]> result, long size) {
+			this.result = result;
+			this.size = size;
+		}
+	}
+}
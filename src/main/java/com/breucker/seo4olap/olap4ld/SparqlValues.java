@@ -0,0 +1,240 @@
+package com.breucker.seo4olap.olap4ld;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.semanticweb.yars.nx.BNode;
+import org.semanticweb.yars.nx.Literal;
+import org.semanticweb.yars.nx.Node;
+import org.semanticweb.yars.nx.Resource;
+
+/**
+ * Numeric values and ordering of nodes as evaluated by the SPARQL engine (Sesame), so that
+ * aggregates computed outside of SPARQL (ColumnarCube, AggregateLattice) produce the same
+ * literals and rows as the corresponding OLAP-2-SPARQL query.
+ *
+ * Integers and decimals are computed exactly (BigDecimal), floats and doubles as double. The
+ * result of an operation has the promoted type of its operands (integer &lt; decimal &lt; float &lt; double).
+ *
+ * @author Daniel Breucker
+ *
+ */
+public final class SparqlValues {
+
+	public static final Resource XSD_INTEGER = new Resource(Literal.XSD + "integer");
+	// Scale of inexact decimal divisions, as in Sesame
+	private static final int DIVISION_SCALE = 24;
+
+	private static final Set<String> INTEGER_DATATYPES = new HashSet<String>(Arrays.asList(
+			"integer", "long", "int", "short", "byte", "nonNegativeInteger", "positiveInteger",
+			"nonPositiveInteger", "negativeInteger", "unsignedLong", "unsignedInt", "unsignedShort",
+			"unsignedByte"));
+
+	/**
+	 * Numeric XSD types in the order of type promotion.
+	 */
+	public enum NumericType {
+		INTEGER, DECIMAL, FLOAT, DOUBLE;
+
+		/**
+		 * @param other
+		 * @return type of the result of an operation on values of this and the other type
+		 */
+		public NumericType promote(NumericType other) {
+			return other == null || other.ordinal() < ordinal() ? this : other;
+		}
+
+		/**
+		 * @return true, if values of this type are computed as double
+		 */
+		public boolean isFloatingPoint() {
+			return this == FLOAT || this == DOUBLE;
+		}
+	}
+
+	private SparqlValues() {
+	}
+
+	/**
+	 * Numeric type of a literal. Literals without datatype are typed by their label (as
+	 * the numbers of the base cube may have lost their datatype).
+	 * @param node
+	 * @return type or null, if the node is not a numeric literal
+	 */
+	public static NumericType getNumericType(Node node) {
+		if (!(node instanceof Literal)) {
+			return null;
+		}
+		Resource datatype = ((Literal) node).getDatatype();
+		if (datatype == null) {
+			String label = node.toString();
+			if (parseNumber(label) == null) {
+				return null;
+			}
+			if (label.indexOf('e') >= 0 || label.indexOf('E') >= 0) {
+				return NumericType.DOUBLE;
+			}
+			return label.indexOf('.') >= 0 ? NumericType.DECIMAL : NumericType.INTEGER;
+		}
+		String uri = datatype.toString();
+		if (!uri.startsWith(Literal.XSD)) {
+			return null;
+		}
+		String name = uri.substring(Literal.XSD.length());
+		if (INTEGER_DATATYPES.contains(name)) {
+			return NumericType.INTEGER;
+		}
+		if (name.equals("decimal")) {
+			return NumericType.DECIMAL;
+		}
+		if (name.equals("float")) {
+			return NumericType.FLOAT;
+		}
+		if (name.equals("double")) {
+			return NumericType.DOUBLE;
+		}
+		return null;
+	}
+
+	/**
+	 * @param node
+	 * @return exact value of a numeric literal or null, if the node is no number (or NaN/INF)
+	 */
+	public static BigDecimal parse(Node node) {
+		if (getNumericType(node) == null) {
+			return null;
+		}
+		return parseNumber(node.toString());
+	}
+
+	private static BigDecimal parseNumber(String label) {
+		String trimmed = label.trim();
+		if (trimmed.startsWith("+")) {
+			trimmed = trimmed.substring(1);
+		}
+		try {
+			return new BigDecimal(trimmed);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param value
+	 * @param type
+	 * @return literal of the value in the canonical form of the type
+	 */
+	public static Node toNode(BigDecimal value, NumericType type) {
+		switch (type) {
+		case INTEGER:
+			return new Literal(value.toBigInteger().toString(), XSD_INTEGER);
+		case DECIMAL:
+			return new Literal(value.toPlainString(), Literal.DECIMAL);
+		default:
+			return toNode(value.doubleValue(), type);
+		}
+	}
+
+	/**
+	 * @param value
+	 * @param type FLOAT or DOUBLE
+	 * @return literal of the value in the canonical form of the type, e.g. "3.0E-1"
+	 */
+	public static Node toNode(double value, NumericType type) {
+		Resource datatype = type == NumericType.FLOAT ? Literal.FLOAT : Literal.DOUBLE;
+		if (Double.isNaN(value)) {
+			return new Literal("NaN", datatype);
+		}
+		if (Double.isInfinite(value)) {
+			return new Literal(value > 0 ? "INF" : "-INF", datatype);
+		}
+		if (value == 0) {
+			return new Literal("0.0E0", datatype);
+		}
+		String shortest = type == NumericType.FLOAT ? Float.toString((float) value) : Double.toString(value);
+		BigDecimal decimal = new BigDecimal(shortest).stripTrailingZeros();
+		String digits = decimal.unscaledValue().abs().toString();
+		int exponent = digits.length() - decimal.scale() - 1;
+		String mantissa = digits.substring(0, 1) + "." + (digits.length() > 1 ? digits.substring(1) : "0");
+		return new Literal((decimal.signum() < 0 ? "-" : "") + mantissa + "E" + exponent, datatype);
+	}
+
+	/**
+	 * Average of a sum of integers or decimals, computed as SPARQL divides: exactly, if possible,
+	 * otherwise with a scale of 24 digits.
+	 * @param sum
+	 * @param count greater than 0
+	 * @return decimal average
+	 */
+	public static BigDecimal divide(BigDecimal sum, long count) {
+		BigDecimal divisor = BigDecimal.valueOf(count);
+		try {
+			return sum.divide(divisor);
+		} catch (ArithmeticException e) {
+			return sum.setScale(DIVISION_SCALE, RoundingMode.HALF_UP).divide(divisor, RoundingMode.HALF_UP);
+		}
+	}
+
+	/**
+	 * Compares nodes as SPARQL ORDER BY does: blank nodes before IRIs before literals, numeric
+	 * literals by value, other literals by datatype, label and language.
+	 * @param node1
+	 * @param node2
+	 * @return negative, zero or positive
+	 */
+	public static int compare(Node node1, Node node2) {
+		int kind1 = getKind(node1);
+		int kind2 = getKind(node2);
+		if (kind1 != kind2) {
+			return kind1 < kind2 ? -1 : 1;
+		}
+		if (!(node1 instanceof Literal)) {
+			return node1.toString().compareTo(node2.toString());
+		}
+		Literal literal1 = (Literal) node1;
+		Literal literal2 = (Literal) node2;
+		BigDecimal number1 = parse(literal1);
+		BigDecimal number2 = number1 == null ? null : parse(literal2);
+		if (number1 != null && number2 != null) {
+			int compared = number1.compareTo(number2);
+			if (compared != 0) {
+				return compared;
+			}
+		}
+		int compared = compareNullable(literal1.getDatatype(), literal2.getDatatype());
+		if (compared != 0) {
+			return compared;
+		}
+		compared = literal1.toString().compareTo(literal2.toString());
+		if (compared != 0) {
+			return compared;
+		}
+		return compareNullable(literal1.getLanguageTag(), literal2.getLanguageTag());
+	}
+
+	private static int getKind(Node node) {
+		if (node == null) {
+			return 0;
+		}
+		if (node instanceof BNode) {
+			return 1;
+		}
+		if (node instanceof Literal) {
+			return 3;
+		}
+		return 2;
+	}
+
+	private static int compareNullable(Object o1, Object o2) {
+		if (o1 == null) {
+			return o2 == null ? 0 : -1;
+		}
+		if (o2 == null) {
+			return 1;
+		}
+		return o1.toString().compareTo(o2.toString());
+	}
+}
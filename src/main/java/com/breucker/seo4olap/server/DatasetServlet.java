@@ -48,5 +48,6 @@ public class DatasetServlet extends HttpServlet {
 		req.setAttribute("runtimeContext", requestHandler.getRuntimeContext(false));
 		req.setAttribute("dataset", dsBean);
 		req.getRequestDispatcher("/jsps/dataset.jsp").forward(req, resp);
+		requestHandler.checkPendingWrites();
 	}
 }
@@ -2,6 +2,7 @@ package com.breucker.seo4olap.server;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -63,6 +64,9 @@ public class InitServlet extends HttpServlet {
 		if(task.equals("initDatabase")){
 			initDatabase(req, resp);
 		}
+		if(task.equals("initDatabaseGroup")){
+			initDatabaseGroup(req, resp);
+		}
     }
 	
 	private void initDataset(HttpServletRequest request, HttpServletResponse response){
@@ -84,6 +88,7 @@ public class InitServlet extends HttpServlet {
 				logger.log(Level.WARNING, "Error while reqeusting initRequest for datasetUri: " + datasetUri, e);
 				response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
 			}
+			requestHandler.checkPendingWrites();
 	}
 	
 	private void initLabelMap(HttpServletRequest req, HttpServletResponse resp){
@@ -115,4 +120,18 @@ public class InitServlet extends HttpServlet {
 		DatabaseManager dbManager = new DatabaseManager();
 		dbManager.fillDatabaseWithDatasetRequests(dsUri);
 	}
+	
+	private void initDatabaseGroup(HttpServletRequest req, HttpServletResponse resp){
+		String dsId = req.getParameter(RequestParameter.DATASET_ID);
+		String signature = req.getParameter(RequestParameter.SIGNATURE);
+		String[] requests = req.getParameterValues(RequestParameter.REQUEST);
+		URL dsUri = configManager.getDatasetUriOfId(dsId);
+		if(dsUri == null || signature == null || requests == null){
+			logger.log(Level.WARNING, "Failed to initDatabaseGroup. Id could not be found or no requests given: " + dsId);
+			return;
+		}
+		
+		DatabaseManager dbManager = new DatabaseManager();
+		dbManager.fillDatabaseWithRequestGroup(dsUri, signature, Arrays.asList(requests));
+	}
 }
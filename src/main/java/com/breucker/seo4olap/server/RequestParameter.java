@@ -13,6 +13,8 @@ public class RequestParameter {
 	public static final String DEBUG = "debug";
 	public static final String RECOMPUTE = "recompute";
 	public static final String TASK = "task";
+	public static final String SIGNATURE = "signature";
+	public static final String REQUEST = "request";
 	
 	private RequestParameter(){}
 }
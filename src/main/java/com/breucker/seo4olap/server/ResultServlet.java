@@ -56,10 +56,10 @@ public class ResultServlet extends HttpServlet {
 			return;
 		}
 				
+		RequestHandler requestHandler = new RequestHandler();
 		try {
 			OlapRequestGenerator generator = new OlapRequestGenerator(dsUri);
 			OlapRequest olapRequest = generator.generateOlapRequest(parameterMap);
-			RequestHandler requestHandler = new RequestHandler();
 			Result result = requestHandler.getOlapResult(olapRequest, recompute);
 			
 			req.setAttribute("runtimeContext", requestHandler.getRuntimeContext(false));
@@ -70,6 +70,8 @@ public class ResultServlet extends HttpServlet {
 			resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
 			req.getRequestDispatcher("/errors/default-error.html").forward(req, resp);
 			return;
+		} finally {
+			requestHandler.checkPendingWrites();
 		}
 	}
 }
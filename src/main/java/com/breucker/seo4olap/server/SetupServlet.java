@@ -54,6 +54,13 @@ public class SetupServlet extends HttpServlet {
 		if(task.equals("resetStoredData")){
 			resetStoredData(req, resp);
 		}
+		if(task.equals("clearLocalCache")){
+			new RequestHandler().clearLocalCache();
+			resp.getWriter().println("Local cache cleared" + "<br>");
+		}
+		if(task.equals("persistenceMetrics")){
+			resp.getWriter().println(new RequestHandler().getPersistenceMetrics() + "<br>");
+		}
 	}
 	
 	private void setupDebug(HttpServletRequest req, HttpServletResponse resp) throws IOException{
@@ -132,6 +139,8 @@ public class SetupServlet extends HttpServlet {
 	
 	private void resetStoredData(HttpServletRequest req, HttpServletResponse resp) throws IOException{
 		RequestHandler requestHandler = new RequestHandler();
+		requestHandler.clearLocalCache();
+		resp.getWriter().println("Local cache cleared" + "<br>");
 		for(URL datasetUri: configManager.getDatasetUris()){
 			requestHandler.getUrlRequestList(datasetUri, true, true);
 			requestHandler.getUrlRequestList(datasetUri, true, false);
@@ -141,5 +150,9 @@ public class SetupServlet extends HttpServlet {
 		resp.getWriter().println("StartSite recomputed" + "<br>");
 		requestHandler.getRuntimeContext(true);
 		resp.getWriter().println("RuntimeContext reseted" + "<br>");
+		int failedWrites = requestHandler.checkPendingWrites();
+		if(failedWrites > 0){
+			resp.getWriter().println(failedWrites + " values failed to be stored" + "<br>");
+		}
 	}
 }
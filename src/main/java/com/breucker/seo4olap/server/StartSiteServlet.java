@@ -23,5 +23,6 @@ public class StartSiteServlet extends HttpServlet {
 		req.setAttribute("runtimeContext", requestHandler.getRuntimeContext(false));
 		req.setAttribute("index", indexBean);
 		req.getRequestDispatcher("/jsps/index.jsp").forward(req, resp);
+		requestHandler.checkPendingWrites();
 	}
 }
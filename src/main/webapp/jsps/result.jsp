@@ -189,6 +189,14 @@
 						</ul>
 				      </div>
 				</div>
+				<c:if test="${not empty result.debugInformation.queryProfile}">
+					<div class="row">
+						<div class="col-md-12">
+					        <h3>QueryProfile</h3>
+					        <pre><c:out value="${result.debugInformation.queryProfile}"/></pre>
+						</div>
+					</div>
+				</c:if>
 				<div class="row">
 					<div class="col-md-12">
 				        <h3>Metadata</h3>
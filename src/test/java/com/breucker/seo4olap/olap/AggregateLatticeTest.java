@@ -0,0 +1,128 @@
+package com.breucker.seo4olap.olap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.olap4j.OlapException;
+
+import com.breucker.seo4olap.main.SyntheticCubeGenerator;
+
+/**
+ * Requests answered from the aggregate lattice have to return the same rows and literals as the OlapQuery
+ * of the request, for every cuboid of the view space and with dices (including empty ones).
+ * Requests of avg measures cannot be rolled up and have to be evaluated by their OlapQuery.
+ *
+ * @author Daniel Breucker
+ *
+ */
+public class AggregateLatticeTest {
+
+	private static final List<String> NONE = Collections.emptyList();
+
+	private static SyntheticDataset dataset;
+	private static OlapHandler olapHandler;
+
+	@BeforeClass
+	public static void setUp() throws IOException, OlapException {
+		// 15 measures of every datatype (decimal, integer, double) and aggregate function, 70% of the cells observed
+		dataset = new SyntheticDataset(new SyntheticCubeGenerator(3, 3, 15, 70, 11, true));
+		olapHandler = new OlapHandler(dataset.dsUri);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		olapHandler.release();
+		dataset.delete();
+	}
+
+	@Test
+	public void testLookup() throws OlapException {
+		List<OlapRequest> olapRequests = getRequests();
+
+		// without view space, every request is evaluated by its OlapQuery
+		Map<OlapRequest, List<String>> expected = new LinkedHashMap<OlapRequest, List<String>>();
+		for(OlapRequest olapRequest : olapRequests){
+			OlapResult result = olapHandler.getOlapResult(olapRequest);
+			assertTrue("query expected: " + olapRequest, !isLatticeLookup(result));
+			expected.put(olapRequest, SyntheticDataset.toN3(result.getRows()));
+		}
+
+		OlapHandler.configureAggregateLattice(dataset.dsUri, dataset.getDimensions(7), 3);
+		olapHandler.buildAggregateLattice();
+
+		for(OlapRequest olapRequest : olapRequests){
+			OlapResult result = olapHandler.getOlapResult(olapRequest);
+			assertEquals("lattice lookup: " + olapRequest, !hasAvgMeasure(olapRequest), isLatticeLookup(result));
+			assertEquals(olapRequest.toString(), expected.get(olapRequest), SyntheticDataset.toN3(result.getRows()));
+		}
+	}
+
+	/**
+	 * @return true, if the request projects an avg measure (all measures if none is projected)
+	 */
+	private static boolean hasAvgMeasure(OlapRequest olapRequest) {
+		for(int k = 0; k < dataset.generator.getMeasureCount(); k++){
+			if(dataset.generator.getAggregateFunction(k).equals("avg") && (olapRequest.getMeasures2project().isEmpty()
+					|| olapRequest.getMeasures2project().contains(dataset.getMeasure(k)))){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isLatticeLookup(OlapResult result) {
+		assertNotNull(result);
+		return result.getQueryProfile() != null && result.getQueryProfile().startsWith("Aggregate lattice lookup");
+	}
+
+	/**
+	 * @return every cuboid with all measures, with all but the avg measures and with single measures,
+	 * every dice of one, two and three members combined with every cuboid of the other dimensions
+	 */
+	private static List<OlapRequest> getRequests() {
+		List<OlapRequest> olapRequests = new ArrayList<OlapRequest>();
+		int dimensionCount = dataset.generator.getDimensionCount();
+		int members = dataset.generator.getMembersPerDimension();
+		List<String> measures = new ArrayList<String>();
+		for(int k = 0; k < dataset.generator.getMeasureCount(); k++){
+			if(!dataset.generator.getAggregateFunction(k).equals("avg")){
+				measures.add(dataset.getMeasure(k));
+			}
+			olapRequests.add(dataset.newRequest(NONE, dataset.getDimensions(3), Arrays.asList(dataset.getMeasure(k))));
+		}
+		for(int mask = 0; mask < 1 << dimensionCount; mask++){
+			olapRequests.add(dataset.newRequest(NONE, dataset.getDimensions(mask), NONE));
+			olapRequests.add(dataset.newRequest(NONE, dataset.getDimensions(mask), measures));
+		}
+		// dices: each dimension is either free, sliced or diced on one of its members
+		int combinations = (int) Math.pow(members + 2, dimensionCount);
+		for(int combination = 0; combination < combinations; combination++){
+			List<String> members2dice = new ArrayList<String>();
+			List<String> dimensions2keep = new ArrayList<String>();
+			for(int d = 0, rest = combination; d < dimensionCount; d++, rest /= members + 2){
+				int choice = rest % (members + 2);
+				if(choice == members){
+					dimensions2keep.add(dataset.getDimension(d));
+				} else if(choice < members){
+					members2dice.add(dataset.getMember(d, choice));
+				}
+			}
+			if(!members2dice.isEmpty()){
+				olapRequests.add(dataset.newRequest(members2dice, dimensions2keep, measures));
+			}
+		}
+		return olapRequests;
+	}
+}
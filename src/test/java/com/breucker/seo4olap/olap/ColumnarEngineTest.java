@@ -0,0 +1,143 @@
+package com.breucker.seo4olap.olap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.olap4j.OlapException;
+import org.semanticweb.yars.nx.Node;
+
+import com.breucker.seo4olap.main.SyntheticCubeGenerator;
+import com.breucker.seo4olap.olap4ld.OlapSesameEngine;
+
+/**
+ * The columnar engine (seo4olap.engine.columnar) has to return the same rows and literals as OLAP-2-SPARQL.
+ *
+ * @author Daniel Breucker
+ *
+ */
+public class ColumnarEngineTest {
+
+	private static final List<String> NONE = Collections.emptyList();
+
+	private static SyntheticDataset dataset;
+	private static OlapSesameEngine lde;
+	private static OlapHandler olapHandler;
+
+	@BeforeClass
+	public static void setUp() throws IOException, OlapException {
+		// 15 measures of every datatype (decimal, integer, double) and aggregate function, 60% of the cells observed
+		dataset = new SyntheticDataset(new SyntheticCubeGenerator(3, 4, 15, 60, 7, true));
+		lde = dataset.getEngine();
+		olapHandler = new OlapHandler(dataset.dsUri);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		olapHandler.release();
+		dataset.releaseEngine(lde);
+		dataset.delete();
+	}
+
+	@Test
+	public void testCuboids() throws OlapException {
+		for(int mask = 0; mask < 1 << dataset.generator.getDimensionCount(); mask++){
+			assertSameResult(dataset.newRequest(NONE, dataset.getDimensions(mask), NONE));
+		}
+	}
+
+	@Test
+	public void testMeasures() throws OlapException {
+		for(int k = 0; k < dataset.generator.getMeasureCount(); k++){
+			assertSameResult(dataset.newRequest(NONE, dataset.getDimensions(1), Arrays.asList(dataset.getMeasure(k))));
+		}
+	}
+
+	@Test
+	public void testDices() throws OlapException {
+		for(int d = 0; d < dataset.generator.getDimensionCount(); d++){
+			assertSameResult(dataset.newRequest(Arrays.asList(dataset.getMember(d, 1)), NONE, NONE));
+			assertSameResult(dataset.newRequest(Arrays.asList(dataset.getMember(d, 2)),
+					dataset.getDimensions(7 & ~(1 << d)), NONE));
+		}
+		assertSameResult(dataset.newRequest(Arrays.asList(dataset.getMember(0, 0), dataset.getMember(1, 3)),
+				dataset.getDimensions(4), NONE));
+	}
+
+	@Test
+	public void testEmptyDice() throws OlapException {
+		List<String> members = getUnobservedCell();
+		assertNotNull("all cells observed", members);
+		List<Node[]> rows = assertSameResult(dataset.newRequest(members, NONE, NONE));
+		assertEquals("rows of an empty dice", 1, rows.size());
+	}
+
+	/**
+	 * Evaluates the request with and without columnar engine and compares the rows.
+	 * @return rows of OLAP-2-SPARQL
+	 */
+	private List<Node[]> assertSameResult(OlapRequest olapRequest) throws OlapException {
+		List<Node[]> expected = evaluate(olapRequest, false);
+		List<Node[]> actual = evaluate(olapRequest, true);
+		assertTrue("no header: " + olapRequest, !expected.isEmpty());
+		assertEquals(olapRequest.toString(), SyntheticDataset.toN3(expected), SyntheticDataset.toN3(actual));
+		return expected;
+	}
+
+	private List<Node[]> evaluate(OlapRequest olapRequest, boolean columnar) throws OlapException {
+		lde.setUseColumnarEngine(columnar);
+		try {
+			return olapHandler.getOlapResult(olapRequest).getRows();
+		} finally {
+			lde.setUseColumnarEngine(false);
+		}
+	}
+
+	/**
+	 * @return members of a combination of all dimensions without observation, null if all are observed
+	 */
+	private List<String> getUnobservedCell() throws OlapException {
+		int dimensionCount = dataset.generator.getDimensionCount();
+		List<Node[]> rows = evaluate(dataset.newRequest(NONE, dataset.getDimensions((1 << dimensionCount) - 1), NONE), false);
+		int[] columns = new int[dimensionCount];
+		List<String> header = new ArrayList<String>();
+		for(Node node : rows.get(0)){
+			header.add(node.toString());
+		}
+		for(int d = 0; d < dimensionCount; d++){
+			columns[d] = header.indexOf(dataset.getDimension(d));
+			assertTrue("no column of " + dataset.getDimension(d), columns[d] >= 0);
+		}
+		Set<List<String>> observed = new HashSet<List<String>>();
+		for(Node[] row : rows.subList(1, rows.size())){
+			List<String> members = new ArrayList<String>();
+			for(int d = 0; d < dimensionCount; d++){
+				members.add(row[columns[d]].toString());
+			}
+			observed.add(members);
+		}
+		int members = dataset.generator.getMembersPerDimension();
+		int cells = (int) Math.pow(members, dimensionCount);
+		for(int cell = 0; cell < cells; cell++){
+			List<String> cellMembers = new ArrayList<String>();
+			for(int d = 0, rest = cell; d < dimensionCount; d++, rest /= members){
+				cellMembers.add(dataset.getMember(d, rest % members));
+			}
+			if(!observed.contains(cellMembers)){
+				return cellMembers;
+			}
+		}
+		return null;
+	}
+}
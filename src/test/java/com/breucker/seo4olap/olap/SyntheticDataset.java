@@ -0,0 +1,127 @@
+package com.breucker.seo4olap.olap;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.olap4j.OlapException;
+import org.semanticweb.yars.nx.Node;
+
+import com.breucker.seo4olap.main.SyntheticCubeGenerator;
+import com.breucker.seo4olap.olap4ld.OlapSesameEngine;
+
+/**
+ * Synthetic dataset (see SyntheticCubeGenerator) in a temporary local stand-in directory, loaded by
+ * OlapEngineFactory like a configured dataset. Used by tests comparing the results of OlapRequests
+ * evaluated on different paths.
+ *
+ * @author Daniel Breucker
+ *
+ */
+class SyntheticDataset {
+
+	private static final String LOCAL_DIR_PROPERTY = "seo4olap.ldcache.localDir";
+	private static final String OFFLINE_PROPERTY = "seo4olap.ldcache.offline";
+
+	final SyntheticCubeGenerator generator;
+	final URL dsUri;
+	private final File localDir;
+
+	/**
+	 * Writes the dataset and points the local stand-in directory of engines created afterwards to it.
+	 * @param generator
+	 * @throws IOException
+	 */
+	SyntheticDataset(SyntheticCubeGenerator generator) throws IOException {
+		this.generator = generator;
+		this.dsUri = generator.getDatasetUri();
+		this.localDir = File.createTempFile("seo4olap-test", "");
+		if(!localDir.delete() || !localDir.mkdirs()){
+			throw new IOException("Cannot create directory " + localDir);
+		}
+		generator.write(localDir);
+		System.setProperty(LOCAL_DIR_PROPERTY, localDir.getAbsolutePath());
+		System.setProperty(OFFLINE_PROPERTY, "true");
+	}
+
+	/**
+	 * @return the engine of the dataset, acquired until releaseEngine()
+	 * @throws OlapException
+	 */
+	OlapSesameEngine getEngine() throws OlapException {
+		return OlapEngineFactory.getEngine(dsUri.toString());
+	}
+
+	void releaseEngine(OlapSesameEngine lde) {
+		OlapEngineFactory.releaseEngine(dsUri.toString(), lde);
+	}
+
+	/**
+	 * Evicts the engine and deletes the dataset.
+	 */
+	void delete() {
+		OlapEngineFactory.evictEngine(dsUri.toString());
+		System.clearProperty(LOCAL_DIR_PROPERTY);
+		System.clearProperty(OFFLINE_PROPERTY);
+		delete(localDir);
+	}
+
+	String getDimension(int dimension) {
+		return generator.getDimensionUri(dimension);
+	}
+
+	String getMember(int dimension, int member) {
+		return generator.getMemberUri(dimension, member);
+	}
+
+	String getMeasure(int measure) {
+		return generator.getMeasureUri(measure);
+	}
+
+	/**
+	 * @param mask bit d set for dimension d
+	 * @return UniqueNames of the dimensions of the mask
+	 */
+	List<String> getDimensions(int mask) {
+		List<String> dimensions = new ArrayList<String>();
+		for(int d = 0; d < generator.getDimensionCount(); d++){
+			if((mask & (1 << d)) != 0){
+				dimensions.add(getDimension(d));
+			}
+		}
+		return dimensions;
+	}
+
+	OlapRequest newRequest(List<String> members2dice, List<String> dimensions2keep, List<String> measures2project) {
+		return new OlapRequest(dsUri, new ArrayList<String>(members2dice), new ArrayList<String>(dimensions2keep),
+				new ArrayList<String>(measures2project));
+	}
+
+	/**
+	 * @param rows
+	 * @return every row in N3, so that literals are compared with their datatype
+	 */
+	static List<String> toN3(List<Node[]> rows) {
+		List<String> n3 = new ArrayList<String>();
+		for(Node[] row : rows){
+			StringBuilder sb = new StringBuilder();
+			for(Node node : row){
+				sb.append(node == null ? "null" : node.toN3()).append(' ');
+			}
+			n3.add(sb.toString());
+		}
+		return n3;
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if(files != null){
+			for(File child : files){
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}